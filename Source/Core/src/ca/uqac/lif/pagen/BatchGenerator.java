@@ -0,0 +1,309 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.uqac.lif.pagen.opl.OplRelativeRenderer;
+
+/**
+ * Generates a batch of pages and writes each of them to its own file. The
+ * pages are spread over a work-stealing pool of threads. Each page is
+ * produced from a seed that only depends on the seed of the batch and on
+ * the index of the page, and by pickers that are not shared with any other
+ * page; the contents of each file are therefore the same regardless of the
+ * number of threads.
+ */
+public class BatchGenerator
+{
+	/**
+	 * The maximum number of pages handled by a task without splitting it
+	 */
+	protected static final int s_threshold = 4;
+
+	/**
+	 * The generator producing the pages
+	 */
+	/*@ non_null @*/ protected final PageGenerator m_generator;
+
+	/**
+	 * The folder where the files are written
+	 */
+	/*@ non_null @*/ protected final File m_outputDir;
+
+	/**
+	 * The type of output file (html, dot, opl)
+	 */
+	/*@ non_null @*/ protected final String m_type;
+
+	/**
+	 * Whether to output HTML as a flat set of divs
+	 */
+	protected final boolean m_flat;
+
+	/**
+	 * Whether to use relative encoding for OPL
+	 */
+	protected final boolean m_relative;
+
+	/**
+	 * Whether to print the dependency graph
+	 */
+	protected final boolean m_showDeps;
+
+	/**
+	 * The largest distance between two siblings for which an OPL model
+	 * requires them to be disjoint, or a negative value for all the pairs
+	 */
+	protected float m_margin;
+
+	/**
+	 * Whether a relative OPL model is split into one file per component
+	 */
+	protected boolean m_components;
+
+	/**
+	 * The number of threads used to generate the pages
+	 */
+	protected int m_threads;
+
+	/**
+	 * The total number of bytes written by the last call to
+	 * {@link #generate(int, int)}
+	 */
+	/*@ non_null @*/ protected final AtomicLong m_bytes;
+
+	/**
+	 * Creates a new batch generator.
+	 * @param generator The generator producing the pages
+	 * @param output_dir The folder where the files are written
+	 * @param type The type of output file (html, dot, opl)
+	 * @param flat Whether to output HTML as a flat set of divs
+	 * @param relative Whether to use relative encoding for OPL
+	 * @param show_deps Whether to print the dependency graph
+	 */
+	public BatchGenerator(/*@ non_null @*/ PageGenerator generator, /*@ non_null @*/ File output_dir, /*@ non_null @*/ String type, boolean flat, boolean relative, boolean show_deps)
+	{
+		super();
+		m_generator = generator;
+		m_outputDir = output_dir;
+		m_type = type;
+		m_flat = flat;
+		m_relative = relative;
+		m_showDeps = show_deps;
+		m_margin = -1;
+		m_components = false;
+		m_threads = Runtime.getRuntime().availableProcessors();
+		m_bytes = new AtomicLong();
+	}
+
+	/**
+	 * Sets the number of threads used to generate the pages.
+	 * @param threads The number of threads; values lower than 1 are
+	 * treated as 1
+	 * @return This batch generator
+	 */
+	public BatchGenerator setThreads(int threads)
+	{
+		m_threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * Sets the largest distance between two siblings for which an OPL model
+	 * requires them to be disjoint.
+	 * @param margin The distance, or a negative value to constrain all the
+	 * pairs of siblings
+	 * @return This batch generator
+	 */
+	public BatchGenerator setMargin(float margin)
+	{
+		m_margin = margin;
+		return this;
+	}
+
+	/**
+	 * Sets whether the relative OPL model of each page is split into
+	 * independent components, each written to its own file. The files of a
+	 * page are named after the file the page would otherwise be written
+	 * to, followed by the index of the component.
+	 * @param b Set to {@code true} to split the models
+	 * @return This batch generator
+	 * @see OplRelativeRenderer#renderComponents(Box, File, String)
+	 */
+	public BatchGenerator setComponents(boolean b)
+	{
+		m_components = b;
+		return this;
+	}
+
+	/**
+	 * Gets the total number of bytes written by the last batch.
+	 * @return The number of bytes
+	 */
+	/*@ pure @*/ public long getBytesWritten()
+	{
+		return m_bytes.get();
+	}
+
+	/**
+	 * Generates a batch of pages.
+	 * @param seed The seed of the batch, from which the seed of each page is
+	 * derived. Set to a negative value to leave the pickers unseeded.
+	 * @param count The number of pages to generate
+	 * @throws FileNotFoundException If a page cannot be written
+	 */
+	public void generate(int seed, int count) throws FileNotFoundException
+	{
+		m_outputDir.mkdirs();
+		m_bytes.set(0);
+		String pattern = "page-%0" + Integer.toString(Math.max(0, count - 1)).length() + "d." + Main.getExtension(m_type, m_relative, m_showDeps);
+		if (m_threads == 1)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				generatePage(seed, i, pattern);
+			}
+			return;
+		}
+		ForkJoinPool pool = new ForkJoinPool(m_threads);
+		try
+		{
+			pool.invoke(new PageRangeTask(seed, 0, count, pattern));
+		}
+		catch (PageWriteException e)
+		{
+			throw e.getCause();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Generates a single page of the batch and writes it to its file.
+	 * @param seed The seed of the batch
+	 * @param index The index of the page in the batch
+	 * @param pattern The pattern giving the name of the file
+	 * @throws FileNotFoundException If the page cannot be written
+	 */
+	protected void generatePage(int seed, int index, String pattern) throws FileNotFoundException
+	{
+		int page_seed = seed >= 0 ? PageGenerator.deriveSeed(seed, index) : -1;
+		Page page = m_generator.generate(page_seed);
+		BoxRenderer renderer = Main.getRenderer(page, m_type, m_flat, m_relative, m_showDeps, m_margin);
+		File f = new File(m_outputDir, String.format(pattern, index));
+		if (m_components && renderer instanceof OplRelativeRenderer)
+		{
+			String name = f.getName();
+			for (File component : ((OplRelativeRenderer) renderer).renderComponents(page.getRoot(), m_outputDir, name.substring(0, name.lastIndexOf('.'))))
+			{
+				m_bytes.addAndGet(component.length());
+			}
+			return;
+		}
+		Main.renderToFile(page.getRoot(), renderer, f.getPath());
+		m_bytes.addAndGet(f.length());
+	}
+
+	/**
+	 * A task generating the pages in an interval of indices. Intervals
+	 * larger than {@link BatchGenerator#s_threshold} are split in two halves,
+	 * which idle threads of the pool can then steal.
+	 */
+	protected class PageRangeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The seed of the batch
+		 */
+		protected final int m_seed;
+
+		/**
+		 * The index of the first page of the interval (inclusive)
+		 */
+		protected final int m_from;
+
+		/**
+		 * The index of the last page of the interval (exclusive)
+		 */
+		protected final int m_to;
+
+		/**
+		 * The pattern giving the name of each file
+		 */
+		protected final String m_pattern;
+
+		public PageRangeTask(int seed, int from, int to, String pattern)
+		{
+			super();
+			m_seed = seed;
+			m_from = from;
+			m_to = to;
+			m_pattern = pattern;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (m_to - m_from <= s_threshold)
+			{
+				for (int i = m_from; i < m_to; i++)
+				{
+					try
+					{
+						generatePage(m_seed, i, m_pattern);
+					}
+					catch (FileNotFoundException e)
+					{
+						throw new PageWriteException(e);
+					}
+				}
+				return;
+			}
+			int middle = (m_from + m_to) >>> 1;
+			invokeAll(new PageRangeTask(m_seed, m_from, middle, m_pattern), new PageRangeTask(m_seed, middle, m_to, m_pattern));
+		}
+	}
+
+	/**
+	 * Unchecked exception used to carry the failure to write a page out of
+	 * a task of the pool.
+	 */
+	protected static class PageWriteException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		public PageWriteException(FileNotFoundException cause)
+		{
+			super(cause);
+		}
+
+		@Override
+		public synchronized FileNotFoundException getCause()
+		{
+			return (FileNotFoundException) super.getCause();
+		}
+	}
+}
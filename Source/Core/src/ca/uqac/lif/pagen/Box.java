@@ -25,25 +25,45 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * A rectangular element of a page. A box holds its own position, dimensions
+ * and references to its parent and children. Descendants of this class can
+ * also present a box whose data is kept elsewhere, such as in the arrays of
+ * a {@link ColumnarPage}; such a view overrides all the accessors, and
+ * cannot be linked to the boxes of a tree.
+ * <p>
+ * Reading the position of a box does not modify it. The bounding extent
+ * returned by {@link #getMinX()} and similar methods is, however, cached
+ * and updated when read; it must not be read by several threads at once.
+ */
 public class Box implements Comparable<Box>
 {
 	/**
-	 * A counter to give IDs to boxes
+	 * The context used by boxes that are created without one. This context is
+	 * shared by the whole program: it is not thread-safe, and the box
+	 * properties it keeps are never freed.
 	 */
-	private static int s_idCount = 0;
+	protected static final PageContext s_defaultContext = new PageContext();
+	
+	/**
+	 * The context of the page this box belongs to
+	 */
+	/*@ non_null @*/ protected final PageContext m_context;
 	
 	/**
 	 * A unique ID for this box
 	 */
-	protected int m_id;
+	protected final int m_id;
 	
 	/**
-	 * The <i>x</i> position of the top-left corner of this box
+	 * The <i>x</i> position of the top-left corner of this box, relative to
+	 * the position of its parent (or absolute if the box has no parent)
 	 */
 	protected float m_x;
 	
 	/**
-	 * The <i>y</i> position of the top-left corner of this box
+	 * The <i>y</i> position of the top-left corner of this box, relative to
+	 * the position of its parent (or absolute if the box has no parent)
 	 */
 	protected float m_y;
 	
@@ -69,9 +89,10 @@ public class Box implements Comparable<Box>
 	protected boolean m_altered = false;
 	
 	/**
-	 * The list of children for this node
+	 * The list of children for this node, or {@code null} if the box is a
+	 * view on data kept elsewhere
 	 */
-	/*@ non_null @*/ protected final List<Box> m_children;
+	/*@ null @*/ protected final List<Box> m_children;
 	
 	/**
 	 * The parent of a given box
@@ -79,43 +100,76 @@ public class Box implements Comparable<Box>
 	protected Box m_parent;
 	
 	/**
-	 * Resets the ID counter used for boxes to zero. This is useful when
-	 * generating multiple trees, each with their own numbering. 
+	 * The number of boxes in the tree rooted at this box, kept up to date by
+	 * {@link #addChild(Box)}
 	 */
-	public static void resetIds()
+	protected int m_size;
+	
+	/**
+	 * The depth of the tree rooted at this box, kept up to date by
+	 * {@link #addChild(Box)}
+	 */
+	protected int m_depth;
+	
+	/**
+	 * The bounding extent of this box and all its descendants, relative to
+	 * the top-left corner of the box: minimum <i>x</i>, minimum <i>y</i>,
+	 * maximum <i>x</i> and maximum <i>y</i>. It is only recomputed when
+	 * queried after a change. It is {@code null} if the box is a view on data
+	 * kept elsewhere.
+	 */
+	/*@ null @*/ protected final float[] m_extent;
+	
+	/**
+	 * Whether {@link #m_extent} is out of date. If a box is marked, all its
+	 * ancestors are also marked.
+	 */
+	protected boolean m_extentDirty;
+	
+	/**
+	 * Creates a new box with given position and dimensions. The box belongs
+	 * to a default context shared by all the boxes created this way; this
+	 * context is not thread-safe, and never releases the box properties
+	 * created for its boxes.
+	 * @param x The <i>x</i> position of the top-left corner of this box
+	 * @param y The <i>y</i> position of the top-left corner of this box
+	 * @param w The width of this box
+	 * @param h The height of this box
+	 * @deprecated Use {@link #Box(PageContext, float, float, float, float)}
+	 * with the context of the page instead
+	 */
+	@Deprecated
+	public Box(float x, float y, float w, float h)
 	{
-		s_idCount = 0;
+		this(s_defaultContext, x, y, w, h);
 	}
 	
 	/**
 	 * Creates a new box with given position and dimensions.
+	 * @param context The context of the page this box belongs to
 	 * @param x The <i>x</i> position of the top-left corner of this box
 	 * @param y The <i>y</i> position of the top-left corner of this box
 	 * @param w The width of this box
 	 * @param h The height of this box
 	 */
-	public Box(float x, float y, float w, float h)
+	public Box(/*@ non_null @*/ PageContext context, float x, float y, float w, float h)
 	{
-		super();
-		m_id = s_idCount++;
-		m_x = x;
-		m_y = y;
-		m_width = w;
-		m_height = h;
-		m_children = new ArrayList<Box>();
-		m_padding = 0;
+		this(context, context.nextId(), x, y, w, h);
 	}
 	
 	/**
-	 * Creates a new box with given position and dimensions.
+	 * Creates a new box with given ID, position and dimensions.
+	 * @param context The context of the page this box belongs to
+	 * @param id The ID of the box
 	 * @param x The <i>x</i> position of the top-left corner of this box
 	 * @param y The <i>y</i> position of the top-left corner of this box
 	 * @param w The width of this box
 	 * @param h The height of this box
 	 */
-	private Box(int id, float x, float y, float w, float h)
+	protected Box(/*@ non_null @*/ PageContext context, int id, float x, float y, float w, float h)
 	{
 		super();
+		m_context = context;
 		m_id = id;
 		m_x = x;
 		m_y = y;
@@ -123,6 +177,39 @@ public class Box implements Comparable<Box>
 		m_height = h;
 		m_children = new ArrayList<Box>();
 		m_padding = 0;
+		m_size = 1;
+		m_depth = 1;
+		m_extent = new float[4];
+		m_extentDirty = true;
+	}
+	
+	/**
+	 * Creates a box that is a view on data kept elsewhere. Descendants using
+	 * this constructor must override all the methods that read or modify the
+	 * position, dimensions and links of the box.
+	 * @param context The context of the page this box belongs to
+	 * @param id The ID of the box
+	 */
+	protected Box(/*@ non_null @*/ PageContext context, int id)
+	{
+		super();
+		m_context = context;
+		m_id = id;
+		m_children = null;
+		m_extent = null;
+	}
+	
+	/**
+	 * Resets the ID counter used for boxes created without a context to zero.
+	 * Boxes created in a {@link PageContext} are numbered by their context
+	 * instead.
+	 * @deprecated Create boxes in a {@link PageContext}, and reset the IDs of
+	 * that context with {@link PageContext#resetIds()}
+	 */
+	@Deprecated
+	public static void resetIds()
+	{
+		s_defaultContext.resetIds();
 	}
 
 	/**
@@ -141,6 +228,14 @@ public class Box implements Comparable<Box>
 	{
 		return m_altered;
 	}
+	/**
+	 * Gets the context of the page this box belongs to
+	 * @return The context
+	 */
+	/*@ pure non_null @*/ public PageContext getContext()
+	{
+		return m_context;
+	}
 	
 	/**
 	 * Gets the unique ID given to this box
@@ -151,57 +246,126 @@ public class Box implements Comparable<Box>
 		return m_id;
 	}
 	
+	
 	/**
 	 * Gets the size of this tree.
 	 * @return The total number of nodes in the tree
 	 */
 	public int getSize()
 	{
-		int count = 1;
-		for (Box b_c : m_children)
-		{
-			count += b_c.getSize();
-		}
-		return count;
+		return m_size;
 	}
 	
+	/**
+	 * Sets the padding associated to this box
+	 * @param p The padding
+	 */
 	public void setPadding(float p)
 	{
 		m_padding = p;
 	}
 	
+	/**
+	 * Shifts this box, and hence all its descendants, horizontally. Since the
+	 * position of a box is stored relative to its parent, this takes constant
+	 * time.
+	 * @param s The amount to shift
+	 */
 	public void shiftX(float s)
 	{
 		m_x += s;
-		for (Box b : m_children)
+		if (m_parent != null)
 		{
-			b.shiftX(s);
+			m_parent.invalidateExtent();
 		}
+		m_context.moved(this);
 	}
 	
+	/**
+	 * Shifts this box, and hence all its descendants, vertically. Since the
+	 * position of a box is stored relative to its parent, this takes constant
+	 * time.
+	 * @param s The amount to shift
+	 */
 	public void shiftY(float s)
 	{
 		m_y += s;
-		for (Box b : m_children)
+		if (m_parent != null)
 		{
-			b.shiftY(s);
+			m_parent.invalidateExtent();
 		}
+		m_context.moved(this);
 	}
 	
 	/**
-	 * Gets the x position of this box
+	 * Gets the absolute x position of this box. The relative positions of
+	 * the box and its ancestors are added from the root down. Reading the
+	 * position does not modify the box, so that several threads can read
+	 * the positions of a tree that is not being modified.
 	 * @return The x position
 	 */
 	public float getX()
 	{
-		return m_x;
+		Box[] path = getPath();
+		float x = path[path.length - 1].m_x;
+		for (int i = path.length - 2; i >= 0; i--)
+		{
+			x += path[i].m_x;
+		}
+		return x;
 	}
 	
 	/**
-	 * Gets the y position of this box
+	 * Gets the absolute y position of this box. The relative positions of
+	 * the box and its ancestors are added from the root down.
 	 * @return The y position
 	 */
 	public float getY()
+	{
+		Box[] path = getPath();
+		float y = path[path.length - 1].m_y;
+		for (int i = path.length - 2; i >= 0; i--)
+		{
+			y += path[i].m_y;
+		}
+		return y;
+	}
+	
+	/**
+	 * Gets this box and its ancestors.
+	 * @return An array starting with this box and ending with the root of
+	 * its tree
+	 */
+	/*@ pure non_null @*/ protected Box[] getPath()
+	{
+		int depth = 0;
+		for (Box b = this; b != null; b = b.m_parent)
+		{
+			depth++;
+		}
+		Box[] path = new Box[depth];
+		depth = 0;
+		for (Box b = this; b != null; b = b.m_parent)
+		{
+			path[depth++] = b;
+		}
+		return path;
+	}
+	
+	/**
+	 * Gets the x position of this box relative to its parent.
+	 * @return The relative x position
+	 */
+	public float getRelativeX()
+	{
+		return m_x;
+	}
+	
+	/**
+	 * Gets the y position of this box relative to its parent.
+	 * @return The relative y position
+	 */
+	public float getRelativeY()
 	{
 		return m_y;
 	}
@@ -240,6 +404,8 @@ public class Box implements Comparable<Box>
 	public void setWidth(float w)
 	{
 		m_width = w;
+		invalidateExtent();
+		m_context.resized(this);
 	}
 	
 	/**
@@ -249,6 +415,8 @@ public class Box implements Comparable<Box>
 	public void setHeight(float h)
 	{
 		m_height = h;
+		invalidateExtent();
+		m_context.resized(this);
 	}
 	
 	/**
@@ -257,12 +425,108 @@ public class Box implements Comparable<Box>
 	 */
 	public int getDepth()
 	{
-		int max_depth = 0;
-		for (Box b : m_children)
+		return m_depth;
+	}
+	
+	/**
+	 * Gets the smallest <i>x</i> position covered by this box or any of its
+	 * descendants. Contrary to the width of the box, this takes into account
+	 * the descendants that overflow it.
+	 * @return The absolute <i>x</i> position
+	 */
+	public float getMinX()
+	{
+		updateExtent();
+		return getX() + m_extent[0];
+	}
+	
+	/**
+	 * Gets the smallest <i>y</i> position covered by this box or any of its
+	 * descendants.
+	 * @return The absolute <i>y</i> position
+	 */
+	public float getMinY()
+	{
+		updateExtent();
+		return getY() + m_extent[1];
+	}
+	
+	/**
+	 * Gets the largest <i>x</i> position covered by this box or any of its
+	 * descendants.
+	 * @return The absolute <i>x</i> position
+	 */
+	public float getMaxX()
+	{
+		updateExtent();
+		return getX() + m_extent[2];
+	}
+	
+	/**
+	 * Gets the largest <i>y</i> position covered by this box or any of its
+	 * descendants.
+	 * @return The absolute <i>y</i> position
+	 */
+	public float getMaxY()
+	{
+		updateExtent();
+		return getY() + m_extent[3];
+	}
+	
+	/**
+	 * Marks the bounding extent of this box, and hence of all its ancestors,
+	 * as out of date. The walk up the tree stops at the first ancestor that
+	 * is already marked, since all its own ancestors are marked as well.
+	 */
+	protected void invalidateExtent()
+	{
+		for (Box b = this; b != null && !b.m_extentDirty; b = b.m_parent)
+		{
+			b.m_extentDirty = true;
+		}
+	}
+	
+	/**
+	 * Recomputes the bounding extent of this box if it is out of date. Only
+	 * the descendants whose extent is out of date are visited; they are
+	 * updated children first, without recursion.
+	 */
+	protected void updateExtent()
+	{
+		if (!m_extentDirty)
 		{
-			max_depth = Math.max(max_depth, b.getDepth());
+			return;
+		}
+		List<Box> to_update = new ArrayList<Box>();
+		to_update.add(this);
+		for (int i = 0; i < to_update.size(); i++)
+		{
+			for (Box b_c : to_update.get(i).m_children)
+			{
+				if (b_c.m_extentDirty)
+				{
+					to_update.add(b_c);
+				}
+			}
+		}
+		for (int i = to_update.size() - 1; i >= 0; i--)
+		{
+			Box b = to_update.get(i);
+			float[] e = b.m_extent;
+			e[0] = 0;
+			e[1] = 0;
+			e[2] = b.m_width;
+			e[3] = b.m_height;
+			for (Box b_c : b.m_children)
+			{
+				float[] c_e = b_c.m_extent;
+				e[0] = Math.min(e[0], b_c.m_x + c_e[0]);
+				e[1] = Math.min(e[1], b_c.m_y + c_e[1]);
+				e[2] = Math.max(e[2], b_c.m_x + c_e[2]);
+				e[3] = Math.max(e[3], b_c.m_y + c_e[3]);
+			}
+			b.m_extentDirty = false;
 		}
-		return max_depth + 1;
 	}
 	
 	/*@ non_null @*/ public List<Box> getChildren()
@@ -275,17 +539,60 @@ public class Box implements Comparable<Box>
 		return m_parent;
 	}
 	
+	/**
+	 * Sets the parent of this box. The absolute position of the box is
+	 * preserved.
+	 * @param parent The parent, or {@code null} to detach the box
+	 */
 	public void setParent(Box parent)
 	{
+		checkLinkable(parent);
+		float x = getX(), y = getY();
 		m_parent = parent;
+		if (parent != null)
+		{
+			x -= parent.getX();
+			y -= parent.getY();
+			parent.invalidateExtent();
+		}
+		m_x = x;
+		m_y = y;
 	}
 	
 	public void addChild(/*@ non_null @*/ Box r)
 	{
+		checkLinkable(r);
+		float r_x = r.getX(), r_y = r.getY();
 		m_children.add(r);
 		r.setParent(this);
-		m_width = Math.max(m_width, Math.max(0, r.getX() + r.getWidth()));
-		m_height = Math.max(m_height, Math.max(0, r.getY() + r.getHeight()));
+		m_width = Math.max(m_width, Math.max(0, r_x + r.m_width));
+		m_height = Math.max(m_height, Math.max(0, r_y + r.m_height));
+		int depth = r.m_depth + 1;
+		for (Box b = this; b != null; b = b.m_parent)
+		{
+			b.m_size += r.m_size;
+			if (depth > b.m_depth)
+			{
+				b.m_depth = depth;
+			}
+			depth = b.m_depth + 1;
+		}
+		invalidateExtent();
+		m_context.resized(this);
+	}
+	
+	/**
+	 * Checks that a box can be linked to the boxes of a tree, which is not
+	 * the case of a box that is a view on data kept elsewhere.
+	 * @param b The box
+	 * @throws IllegalArgumentException If the box is a view
+	 */
+	protected static void checkLinkable(/*@ null @*/ Box b)
+	{
+		if (b != null && b.m_children == null)
+		{
+			throw new IllegalArgumentException("Box " + b.getId() + " cannot be linked to a tree");
+		}
 	}
 	
 	public void addChildren(/*@ non_null @*/ Collection<Box> c)
@@ -306,9 +613,9 @@ public class Box implements Comparable<Box>
 	
 	protected void toString(StringBuilder out, String indent)
 	{
-		out.append(indent).append("id: ").append(m_id).append(", x: ").append(m_x).append(", y: ").append(m_y).append(", w: ").append(m_width).append(", h: ").append(m_height).append("\n");
+		out.append(indent).append("id: ").append(m_id).append(", x: ").append(getX()).append(", y: ").append(getY()).append(", w: ").append(getWidth()).append(", h: ").append(getHeight()).append("\n");
 		indent += " ";
-		for (Box b : m_children)
+		for (Box b : getChildren())
 		{
 			b.toString(out, indent);
 		}
@@ -324,7 +631,7 @@ public class Box implements Comparable<Box>
 	protected void flatten(Map<Integer,Box> map)
 	{
 		map.put(m_id, this);
-		for (Box b : m_children)
+		for (Box b : getChildren())
 		{
 			b.flatten(map);
 		}
@@ -343,7 +650,8 @@ public class Box implements Comparable<Box>
 		{
 			return false;
 		}
-		return m_id == ((Box) o).getId();
+		Box b = (Box) o;
+		return m_id == b.m_id && m_context == b.m_context;
 	}
 
 	@Override
@@ -392,7 +700,7 @@ public class Box implements Comparable<Box>
 		{
 			return null;
 		}
-		Box current_copy = new Box(current.getId(), current.getX(), current.getY(), current.getWidth(), current.getHeight());
+		Box current_copy = new Box(current.m_context, current.getId(), current.getX(), current.getY(), current.getWidth(), current.getHeight());
 		current_copy.setPadding(current.getPadding());
 		if (current.isAltered())
 		{
@@ -60,7 +60,7 @@ public class BoxDependency
 	@Override
 	public int hashCode()
 	{
-		return m_property.hashCode() + m_influencedBy.hashCode();
+		return 65599 * m_property.hashCode() + m_influencedBy.hashCode();
 	}
 	
 	@Override
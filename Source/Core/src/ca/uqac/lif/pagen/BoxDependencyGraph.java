@@ -18,15 +18,21 @@
 package ca.uqac.lif.pagen;
 
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 
 import ca.uqac.lif.pagen.BoxProperty.Property;
 
-public class BoxDependencyGraph
+/**
+ * A mutable graph of dependencies between box properties, stored in hash
+ * maps.
+ */
+public class BoxDependencyGraph implements DependencyGraph
 {
 	/**
 	 * A map that associates box properties to the downstream dependencies
@@ -40,6 +46,27 @@ public class BoxDependencyGraph
 	 */
 	protected Map<BoxProperty,Set<BoxDependency>> m_influences;
 
+	/**
+	 * The closures already computed by {@link #getTransitiveClosure(Set)},
+	 * which {@link #add(BoxProperty, BoxProperty)} keeps up to date. A set
+	 * in this map is never modified once it has been returned; it is
+	 * replaced by an extended copy instead.
+	 */
+	/*@ non_null @*/ protected Map<BoxProperty,Set<BoxProperty>> m_closures;
+
+	/**
+	 * Whether the graph has nodes standing for a delta property. The
+	 * closures of such graphs are not kept, since adding an edge can also
+	 * remove nodes from a closure.
+	 */
+	protected boolean m_hasDeltas;
+
+	/**
+	 * The number of closures missing from {@link #m_closures} above which
+	 * they are computed all at once by a {@link TransitiveClosure}
+	 */
+	protected static final int s_bulkThreshold = 64;
+
 	/**
 	 * Creates a new empty box dependency graph.
 	 */
@@ -48,6 +75,8 @@ public class BoxDependencyGraph
 		super();
 		m_influencedBy = new HashMap<BoxProperty,Set<BoxDependency>>();
 		m_influences = new HashMap<BoxProperty,Set<BoxDependency>>();
+		m_closures = new HashMap<BoxProperty,Set<BoxProperty>>();
+		m_hasDeltas = false;
 	}
 
 	/**
@@ -68,6 +97,7 @@ public class BoxDependencyGraph
 	 * Gets the set of all box properties represented in this graph.
 	 * @return The set of properties
 	 */
+	@Override
 	public Set<BoxProperty> getNodes()
 	{
 		return m_influencedBy.keySet();
@@ -77,6 +107,8 @@ public class BoxDependencyGraph
 	 * Adds a dependency between two box properties to the graph. Conceptually,
 	 * this corresponds to the creation of an edge between two nodes,
 	 * stating that the first property <em>is influenced by</em> the second.
+	 * The closures already computed that reach the first property are
+	 * extended with the nodes that become reachable through the new edge.
 	 * @param bp1 The first box property (the one that is influenced)
 	 * @param bp2 The second box property (the one that influences)
 	 * @return This graph
@@ -84,6 +116,15 @@ public class BoxDependencyGraph
 	public BoxDependencyGraph add(BoxProperty bp1, BoxProperty bp2)
 	{
 		BoxDependency bd = new BoxDependency(bp1, bp2);
+		if (m_influencedBy.containsKey(bp1) && m_influencedBy.get(bp1).contains(bd))
+		{
+			return this;
+		}
+		if (!m_hasDeltas && (bp1.getAbsolute() != bp1 || bp2.getAbsolute() != bp2))
+		{
+			m_hasDeltas = true;
+			m_closures.clear();
+		}
 		{
 			Set<BoxDependency> deps = null;
 			if (m_influencedBy.containsKey(bp1))
@@ -118,9 +159,51 @@ public class BoxDependencyGraph
 				m_influences.put(bp1, new HashSet<BoxDependency>());
 			}
 		}
+		if (!m_closures.isEmpty())
+		{
+			updateClosures(bp1, bp2);
+		}
 		return this;
 	}
 
+	/**
+	 * Extends the closures kept in {@link #m_closures} after the addition of
+	 * an edge. Only the nodes that depend on the first property, directly
+	 * or not, can have a closure that reaches it; these nodes are found by
+	 * following the edges of the graph backwards from this property.
+	 * @param bp1 The property that is influenced
+	 * @param bp2 The property that influences
+	 */
+	protected void updateClosures(BoxProperty bp1, BoxProperty bp2)
+	{
+		BoxProperty delta = bp1.getDelta();
+		Set<BoxProperty> visited = new HashSet<BoxProperty>();
+		Queue<BoxProperty> to_visit = new ArrayDeque<BoxProperty>();
+		visited.add(bp1);
+		to_visit.add(bp1);
+		while (!to_visit.isEmpty())
+		{
+			BoxProperty bp = to_visit.remove();
+			Set<BoxProperty> closure = m_closures.get(bp);
+			if (closure != null && closure.contains(delta) && !bp.getBox().equals(bp2.getBox()) && !closure.contains(bp2.getDelta()))
+			{
+				Set<BoxProperty> extended = new HashSet<BoxProperty>(closure);
+				extended.add(bp2.getDelta());
+				Queue<BoxProperty> to_explore = new ArrayDeque<BoxProperty>();
+				to_explore.add(bp2);
+				explore(bp, extended, to_explore);
+				m_closures.put(bp, extended);
+			}
+			for (BoxDependency bd : m_influences.get(bp))
+			{
+				if (visited.add(bd.getProperty()))
+				{
+					to_visit.add(bd.getProperty());
+				}
+			}
+		}
+	}
+
 	/**
 	 * Adds a dependency between two box properties to the graph. Conceptually,
 	 * this corresponds to the creation of an edge between two nodes,
@@ -136,7 +219,107 @@ public class BoxDependencyGraph
 		return add(BoxProperty.get(b1, p1), BoxProperty.get(b2, p2));
 	}
 
-	/*@ pure non_null @*/ public Map<BoxProperty,Set<BoxProperty>> getTransitiveClosure(Set<BoxProperty> start_list)
+	/**
+	 * Computes the transitive closure of a set of box properties. Each
+	 * property is associated with the delta properties of the nodes it
+	 * depends on, directly or not, without going through the other
+	 * properties of its own box. The closures are kept and updated as
+	 * edges are added, so that asking again for the closure of a property
+	 * does not explore the graph. When many closures are missing, they are
+	 * computed by a {@link TransitiveClosure} on a compact copy of the graph.
+	 * The sets returned cannot be modified.
+	 * @param start_list The box properties
+	 * @return The closure of each property
+	 */
+	@Override
+	/*@ non_null @*/ public Map<BoxProperty,Set<BoxProperty>> getTransitiveClosure(Set<BoxProperty> start_list)
+	{
+		return getTransitiveClosure(start_list, 1);
+	}
+
+	/**
+	 * Computes the transitive closure of a set of box properties with
+	 * multiple threads. The result is the same as that of
+	 * {@link #getTransitiveClosure(Set)}.
+	 * @param start_list The box properties
+	 * @param threads The number of threads
+	 * @return The closure of each property
+	 * @see TransitiveClosure#getTransitiveClosure(Set, int)
+	 */
+	@Override
+	/*@ non_null @*/ public Map<BoxProperty,Set<BoxProperty>> getTransitiveClosure(Set<BoxProperty> start_list, int threads)
+	{
+		if (m_hasDeltas)
+		{
+			return scanTransitiveClosure(start_list);
+		}
+		Set<BoxProperty> missing = new LinkedHashSet<BoxProperty>();
+		for (BoxProperty start : start_list)
+		{
+			if (!m_closures.containsKey(start))
+			{
+				missing.add(start);
+			}
+		}
+		if (missing.size() > s_bulkThreshold && hasSingleContext())
+		{
+			m_closures.putAll(CompactDependencyGraph.of(this).getTransitiveClosure(missing, threads));
+		}
+		else
+		{
+			for (BoxProperty start : missing)
+			{
+				Set<BoxProperty> deps = new HashSet<BoxProperty>();
+				deps.add(start.getDelta());
+				Queue<BoxProperty> to_explore = new ArrayDeque<BoxProperty>();
+				to_explore.add(start);
+				explore(start, deps, to_explore);
+				m_closures.put(start, deps);
+			}
+		}
+		Map<BoxProperty,Set<BoxProperty>> mapping = new HashMap<BoxProperty,Set<BoxProperty>>();
+		for (BoxProperty start : start_list)
+		{
+			mapping.put(start, Collections.unmodifiableSet(m_closures.get(start)));
+		}
+		return mapping;
+	}
+
+	/**
+	 * Adds to the closure of a box property the nodes reachable from a
+	 * queue of nodes, without going through the other properties of its
+	 * box.
+	 * @param start The box property
+	 * @param deps The delta properties of the nodes already in the closure,
+	 * including those of the nodes in the queue
+	 * @param to_explore The nodes to explore from
+	 */
+	protected void explore(BoxProperty start, Set<BoxProperty> deps, Queue<BoxProperty> to_explore)
+	{
+		while (!to_explore.isEmpty())
+		{
+			BoxProperty bp = to_explore.remove();
+			for (BoxDependency bd : getInfluencedBy(bp))
+			{
+				BoxProperty child_bp = bd.getInfluencedBy();
+				if (!start.getBox().equals(child_bp.getBox()) && deps.add(child_bp.getDelta()))
+				{
+					to_explore.add(child_bp);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the transitive closure of a set of box properties by
+	 * exploring the graph from each property in turn. This gives the same
+	 * result as {@link #getTransitiveClosure(Set)}, without keeping the
+	 * closures; it is used for graphs that have nodes standing for a delta
+	 * property.
+	 * @param start_list The box properties
+	 * @return The closure of each property
+	 */
+	/*@ pure non_null @*/ protected Map<BoxProperty,Set<BoxProperty>> scanTransitiveClosure(Set<BoxProperty> start_list)
 	{
 		Map<BoxProperty,Set<BoxProperty>> mapping = new HashMap<BoxProperty,Set<BoxProperty>>();
 		for (BoxProperty start : start_list)
@@ -173,7 +356,27 @@ public class BoxDependencyGraph
 		return mapping;
 	}
 
-	/*@ pure non_null @*/ public Map<BoxProperty,Set<BoxProperty>> getTransitiveClosure(BoxProperty ... starting_points)
+	/**
+	 * Determines if all the boxes of the graph belong to the same context.
+	 * @return {@code true} if they do, {@code false} otherwise
+	 */
+	/*@ pure @*/ protected boolean hasSingleContext()
+	{
+		PageContext context = null;
+		for (BoxProperty bp : m_influencedBy.keySet())
+		{
+			PageContext c = bp.getBox().getContext();
+			if (context != null && c != context)
+			{
+				return false;
+			}
+			context = c;
+		}
+		return true;
+	}
+
+	@Override
+	/*@ non_null @*/ public Map<BoxProperty,Set<BoxProperty>> getTransitiveClosure(BoxProperty ... starting_points)
 	{
 		Set<BoxProperty> start_list = new HashSet<BoxProperty>();
 		if (starting_points.length == 0)
@@ -194,6 +397,7 @@ public class BoxDependencyGraph
 	 * @param p The property
 	 * @return The set of other box dependencies
 	 */
+	@Override
 	/*@ pure non_null @*/ public Set<BoxDependency> getDependencies(Box b, BoxProperty.Property p)
 	{
 		return getInfluencedBy(BoxProperty.get(b, p));
@@ -204,6 +408,7 @@ public class BoxDependencyGraph
 	 * @param b The box property
 	 * @return The set of other box dependencies
 	 */
+	@Override
 	public Set<BoxDependency> getInfluencedBy(BoxProperty bp)
 	{
 		return getInfluencedBy(bp, false);
@@ -215,6 +420,7 @@ public class BoxDependencyGraph
 	 * @param b2 The second box
 	 * @return {@code true} if b1 influences b2, {@code false} otherwise
 	 */
+	@Override
 	public boolean influences(Box b1, Box b2)
 	{
 		BoxProperty bp1 = BoxProperty.get(b1, Property.X);
@@ -243,6 +449,7 @@ public class BoxDependencyGraph
 	 * @param transitive Set to {@code true} to perform a transitive scan
 	 * @return The set of other box properties
 	 */
+	@Override
 	public Set<BoxDependency> getInfluencedBy(BoxProperty bp, boolean transitive)
 	{
 		if (!transitive)
@@ -283,6 +490,7 @@ public class BoxDependencyGraph
 	 * @param b The box property
 	 * @return The set of other box dependencies
 	 */
+	@Override
 	public Set<BoxDependency> getInfluences(BoxProperty bp)
 	{
 		return getInfluences(bp, false);
@@ -295,6 +503,7 @@ public class BoxDependencyGraph
 	 * @param transitive Set to {@code true} to perform a transitive scan
 	 * @return The set of other box properties
 	 */
+	@Override
 	public Set<BoxDependency> getInfluences(BoxProperty bp, boolean transitive)
 	{
 		if (!transitive)
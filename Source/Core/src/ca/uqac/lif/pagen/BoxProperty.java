@@ -17,9 +17,6 @@
  */
 package ca.uqac.lif.pagen;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class BoxProperty implements Comparable<BoxProperty>
 {
 	/**
@@ -27,6 +24,11 @@ public class BoxProperty implements Comparable<BoxProperty>
 	 */
 	public static enum Property {X, Y, W, H, DX, DY, DW, DH}
 	
+	/**
+	 * The number of properties that can be modeled about a box.
+	 */
+	public static final int s_numProperties = Property.values().length;
+	
 	/**
 	 * The box whose property is being considered.
 	 */
@@ -38,29 +40,14 @@ public class BoxProperty implements Comparable<BoxProperty>
 	protected Property m_property;
 	
 	/**
-	 * A map used to store references to already instantiated box properties. Its
-	 * goal is to avoid creating multiple instances of {@link BoxProperty}
-	 * objects referring to the same box and the same property.
-	 */
-	protected static final Map<BoxProperty,BoxProperty> s_propertyPool = new HashMap<BoxProperty,BoxProperty>();
-	
-	/**
-	 * Gets an instance of a box property.
+	 * Gets an instance of a box property. The instance is unique within the
+	 * {@link PageContext} of the box.
 	 * @param b The box whose property is being considered
 	 * @param p The property of the box
 	 */
 	public static BoxProperty get(Box b, Property p)
 	{
-		BoxProperty bp = new BoxProperty(b, p);
-		if (s_propertyPool.containsKey(bp))
-		{
-			bp = s_propertyPool.get(bp);
-		}
-		else
-		{
-			s_propertyPool.put(bp, bp);
-		}
-		return bp;
+		return b.getContext().getProperty(b, p);
 	}
 	
 	/**
@@ -128,12 +115,16 @@ public class BoxProperty implements Comparable<BoxProperty>
 	@Override
 	public int hashCode()
 	{
-		return m_box.getId();
+		return m_box.getId() * s_numProperties + m_property.ordinal();
 	}
 	
 	@Override
 	public boolean equals(Object o)
 	{
+		if (o == this)
+		{
+			return true;
+		}
 		if (o == null || !(o instanceof BoxProperty))
 		{
 			return false;
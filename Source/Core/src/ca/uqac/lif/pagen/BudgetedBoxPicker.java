@@ -0,0 +1,338 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.synthia.Picker;
+
+/**
+ * Picks trees of boxes having exactly a given number of boxes. Instead of
+ * picking the depth of each subtree, the picker hands out a budget of
+ * boxes from the top down: each box keeps one unit of the budget it is
+ * given and splits the rest among its children. The number of children of
+ * a box is still picked from a picker, and the dimensions and layouts are
+ * picked as in {@link RandomBoxPicker}; only the shape of the tree is
+ * dictated by the budget.
+ * <p>
+ * The depth of the trees can optionally be bounded. When a maximum depth
+ * is set, a box whose budget cannot fit under it with the number of
+ * children picked gets more children, so that the boxes do not pile up on
+ * the last level. When a minimum depth is set, the root and then its
+ * first descendants down to that depth get enough of the budget to reach
+ * it.
+ * <p>
+ * Since the shape of a subtree depends on the budget it is given, and not
+ * only on its seed, a budgeted picker cannot split its random streams
+ * among subtrees.
+ */
+public class BudgetedBoxPicker extends RandomBoxPicker
+{
+	/**
+	 * The number of boxes in each tree
+	 */
+	protected int m_size;
+
+	/**
+	 * The minimum depth of the trees, counted as in {@link Box#getDepth()}
+	 */
+	protected int m_minDepth;
+
+	/**
+	 * The maximum depth of the trees, or 0 if the depth is not bounded
+	 */
+	protected int m_maxDepth;
+
+	/**
+	 * A picker giving the weights used to split a budget among the children
+	 * of a box
+	 */
+	/*@ non_null @*/ protected Picker<Float> m_split;
+
+	/**
+	 * For each level of the stack used by {@link #pick()}, the budget given
+	 * to each child of the box being built
+	 */
+	/*@ non_null @*/ protected final List<int[]> m_budgets;
+
+	/**
+	 * For each level of the stack used by {@link #pick()}, the number of
+	 * children of the box being built
+	 */
+	/*@ non_null @*/ protected int[] m_numBudgets;
+
+	/**
+	 * For each level of the stack used by {@link #pick()}, the minimum depth
+	 * of the subtree of the box being built
+	 */
+	/*@ non_null @*/ protected int[] m_need;
+
+	/**
+	 * A scratch array holding the weights of the children of a box
+	 */
+	/*@ non_null @*/ protected float[] m_weights;
+
+	/**
+	 * Creates a new budgeted box picker.
+	 * @param context The context in which the boxes are created
+	 * @param size The number of boxes in each tree
+	 * @param children A picker giving the number of children of a box
+	 * @param split A picker giving the weights used to split a budget among
+	 * the children of a box; it should produce non-negative values
+	 * @param layout A picker giving the layout manager of a box
+	 * @param width A picker giving the width of a leaf
+	 * @param height A picker giving the height of a leaf
+	 */
+	public BudgetedBoxPicker(/*@ non_null @*/ PageContext context, int size, Picker<Integer> children, Picker<Float> split, Picker<LayoutManager> layout, Picker<Float> width, Picker<Float> height)
+	{
+		super(context, children, null, layout, width, height);
+		if (size < 1)
+		{
+			throw new IllegalArgumentException("A tree must have at least one box");
+		}
+		m_size = size;
+		m_split = split;
+		m_minDepth = 0;
+		m_maxDepth = 0;
+		m_budgets = new ArrayList<int[]>();
+		m_numBudgets = new int[16];
+		m_need = new int[16];
+		m_weights = new float[16];
+	}
+
+	/**
+	 * Sets the range of depths of the trees.
+	 * @param min_depth The minimum depth
+	 * @param max_depth The maximum depth, or 0 to leave it unbounded
+	 * @return This picker
+	 */
+	public BudgetedBoxPicker setDepth(int min_depth, int max_depth)
+	{
+		if (max_depth > 0 && max_depth < min_depth)
+		{
+			throw new IllegalArgumentException("The maximum depth is lower than the minimum depth");
+		}
+		if (m_size < Math.max(1, min_depth))
+		{
+			throw new IllegalArgumentException("A tree of " + m_size + " boxes cannot have a depth of " + min_depth);
+		}
+		if (max_depth == 1 && m_size > 1)
+		{
+			throw new IllegalArgumentException("A tree of depth 1 can only have one box");
+		}
+		m_minDepth = min_depth;
+		m_maxDepth = max_depth;
+		return this;
+	}
+
+	/**
+	 * Rejects random streams, which cannot be split among subtrees whose
+	 * shape depends on their budget.
+	 * @param streams The set of pickers; only {@code null} is accepted
+	 * @param seed The seed of the root of the trees
+	 * @return This picker
+	 */
+	@Override
+	public BudgetedBoxPicker setStreams(/*@ null @*/ RandomStreams streams, int seed)
+	{
+		if (streams != null)
+		{
+			throw new IllegalArgumentException("Random streams cannot be split among subtrees of a given size");
+		}
+		super.setStreams(null, seed);
+		return this;
+	}
+
+	@Override
+	public BudgetedBoxPicker duplicate(boolean with_state)
+	{
+		Map<Picker<?>,Picker<?>> copies = new IdentityHashMap<Picker<?>,Picker<?>>();
+		Picker<LayoutManager> layout;
+		if (m_layout instanceof LayoutPicker)
+		{
+			layout = ((LayoutPicker) m_layout).duplicate(with_state, copies);
+		}
+		else
+		{
+			layout = FlowLayout.duplicate(m_layout, with_state, copies);
+		}
+		BudgetedBoxPicker copy = new BudgetedBoxPicker(new PageContext(), m_size, FlowLayout.duplicate(m_numChildren, with_state, copies), FlowLayout.duplicate(m_split, with_state, copies), layout, FlowLayout.duplicate(m_width, with_state, copies), FlowLayout.duplicate(m_height, with_state, copies));
+		copy.m_minDepth = m_minDepth;
+		copy.m_maxDepth = m_maxDepth;
+		return copy;
+	}
+
+	/**
+	 * Picks a new tree of boxes. As in {@link RandomBoxPicker#pick()}, the
+	 * tree is built with an explicit stack, and a box is created after all
+	 * its descendants.
+	 */
+	@Override
+	public Box pick()
+	{
+		int level = 0;
+		if (m_listener != null)
+		{
+			m_listener.beginBox(0);
+		}
+		pushBudget(0, m_size, m_minDepth);
+		while (true)
+		{
+			if (m_remaining[level] > 0)
+			{
+				int index = m_numBudgets[level] - m_remaining[level];
+				int budget = m_budgets.get(level)[index];
+				m_remaining[level]--;
+				if (m_listener != null)
+				{
+					m_listener.beginBox(level + 1);
+				}
+				if (budget == 1)
+				{
+					Box b = newLeaf();
+					m_children.get(level).add(b);
+					if (m_listener != null)
+					{
+						m_listener.endBox(b, level + 1);
+					}
+				}
+				else
+				{
+					int need = index == 0 ? m_need[level] - 1 : 0;
+					level++;
+					pushBudget(level, budget, need);
+				}
+				continue;
+			}
+			List<Box> children = m_children.get(level);
+			Box parent = newBox(0, 0);
+			parent.setPadding(2);
+			LayoutManager layout = m_layout.pick();
+			layout.arrange(parent, children);
+			children.clear();
+			if (m_listener != null)
+			{
+				m_listener.endBox(parent, level);
+			}
+			if (level == 0)
+			{
+				return parent;
+			}
+			level--;
+			m_children.get(level).add(parent);
+		}
+	}
+
+	/**
+	 * Starts the construction of a new box at a given level of the stack,
+	 * and splits its budget among its children.
+	 * @param level The level
+	 * @param budget The number of boxes in the subtree of the box, including
+	 * the box itself
+	 * @param need The minimum depth of the subtree of the box; the budget
+	 * must be at least this value
+	 */
+	protected void pushBudget(int level, int budget, int need)
+	{
+		if (level == m_remaining.length)
+		{
+			m_remaining = Arrays.copyOf(m_remaining, level * 2);
+			m_numBudgets = Arrays.copyOf(m_numBudgets, level * 2);
+			m_need = Arrays.copyOf(m_need, level * 2);
+		}
+		if (level == m_children.size())
+		{
+			m_children.add(new ArrayList<Box>());
+			m_budgets.add(new int[4]);
+		}
+		int rest = budget - 1;
+		int num_children = 0;
+		if (rest > 0)
+		{
+			num_children = Math.max(1, Math.min(rest, m_numChildren.pick()));
+			if (m_maxDepth > 0)
+			{
+				// Enough children for the rest of the budget to fit in the levels below
+				int levels_below = m_maxDepth - 1 - level;
+				int min_children = levels_below <= 1 ? rest : (int) Math.ceil(Math.pow(rest, 1d / levels_below));
+				num_children = Math.max(num_children, Math.min(rest, min_children));
+			}
+			int first = Math.max(1, need - 1);
+			num_children = Math.min(num_children, rest - first + 1);
+			int[] budgets = m_budgets.get(level);
+			if (budgets.length < num_children)
+			{
+				budgets = new int[Math.max(num_children, budgets.length * 2)];
+				m_budgets.set(level, budgets);
+			}
+			split(budgets, num_children, rest, first);
+		}
+		m_remaining[level] = num_children;
+		m_numBudgets[level] = num_children;
+		m_need[level] = need;
+	}
+
+	/**
+	 * Splits a budget among the children of a box. Each child gets one box,
+	 * the first child gets a given minimum, and the rest is divided in
+	 * proportion to weights picked from {@link #m_split}.
+	 * @param budgets The array where the budget of each child is written
+	 * @param num_children The number of children
+	 * @param rest The budget to split
+	 * @param first The minimum budget of the first child
+	 */
+	protected void split(int[] budgets, int num_children, int rest, int first)
+	{
+		if (m_weights.length < num_children)
+		{
+			m_weights = new float[Math.max(num_children, m_weights.length * 2)];
+		}
+		float total = 0;
+		for (int i = 0; i < num_children; i++)
+		{
+			m_weights[i] = m_split.pick();
+			total += m_weights[i];
+		}
+		int extra = rest - first - (num_children - 1);
+		int given = 0;
+		for (int i = 0; i < num_children; i++)
+		{
+			int share = total > 0 ? (int) (extra * (m_weights[i] / total)) : 0;
+			share = Math.min(share, extra - given);
+			budgets[i] = (i == 0 ? first : 1) + share;
+			given += share;
+		}
+		for (int i = 0; given < extra; i = (i + 1) % num_children)
+		{
+			budgets[i]++;
+			given++;
+		}
+	}
+
+	@Override
+	public void reset()
+	{
+		m_context.resetIds();
+		m_numChildren.reset();
+		m_split.reset();
+	}
+}
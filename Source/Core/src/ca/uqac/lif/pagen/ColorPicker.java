@@ -51,10 +51,12 @@ public class ColorPicker implements Picker<String>
 	
 	
 	@Override
-	public Picker<String> duplicate(boolean arg0)
+	public ColorPicker duplicate(boolean with_state)
 	{
-		// TODO Auto-generated method stub
-		return null;
+		Picker<Integer> r = m_r.duplicate(with_state);
+		Picker<Integer> g = m_g == m_r ? r : m_g.duplicate(with_state);
+		Picker<Integer> b = m_b == m_r ? r : (m_b == m_g ? g : m_b.duplicate(with_state));
+		return new ColorPicker(r, g, b);
 	}
 
 	@Override
@@ -0,0 +1,836 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A tree of boxes stored column by column. Instead of one object per box,
+ * the page keeps one array per attribute, indexed by the ID of the box:
+ * the position relative to the parent, the dimensions and the padding of
+ * each box, the links to its parent, first child, last child and next
+ * sibling, the number of children, the size and the depth of the subtree
+ * rooted at each box, and a bit set telling which boxes are altered. This
+ * takes about 48 bytes per box.
+ * <p>
+ * The boxes of the page can be manipulated through {@link Box} objects
+ * obtained from {@link #getBox(int)}. These views hold no state of their
+ * own besides the ID of the box; they can be passed to the renderers, the
+ * layout managers and the layout constraints, and discarded afterwards.
+ * Two views of the same box are equal. Views can only be linked to views
+ * of the same page.
+ */
+public class ColumnarPage
+{
+	/**
+	 * The value of a link that points to no box
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * The context that gives IDs to the boxes of this page
+	 */
+	/*@ non_null @*/ protected final PageContext m_context;
+
+	/**
+	 * One more than the largest ID of a box in this page
+	 */
+	protected int m_size;
+
+	/**
+	 * The <i>x</i> position of each box, relative to its parent
+	 */
+	/*@ non_null @*/ protected float[] m_xColumn;
+
+	/**
+	 * The <i>y</i> position of each box, relative to its parent
+	 */
+	/*@ non_null @*/ protected float[] m_yColumn;
+
+	/**
+	 * The width of each box
+	 */
+	/*@ non_null @*/ protected float[] m_widthColumn;
+
+	/**
+	 * The height of each box
+	 */
+	/*@ non_null @*/ protected float[] m_heightColumn;
+
+	/**
+	 * The padding of each box
+	 */
+	/*@ non_null @*/ protected float[] m_paddingColumn;
+
+	/**
+	 * The ID of the parent of each box
+	 */
+	/*@ non_null @*/ protected int[] m_parentColumn;
+
+	/**
+	 * The ID of the first child of each box
+	 */
+	/*@ non_null @*/ protected int[] m_firstChildColumn;
+
+	/**
+	 * The ID of the last child of each box
+	 */
+	/*@ non_null @*/ protected int[] m_lastChildColumn;
+
+	/**
+	 * The ID of the next sibling of each box
+	 */
+	/*@ non_null @*/ protected int[] m_nextSiblingColumn;
+
+	/**
+	 * The number of children of each box
+	 */
+	/*@ non_null @*/ protected int[] m_childCountColumn;
+
+	/**
+	 * The number of boxes in the subtree rooted at each box
+	 */
+	/*@ non_null @*/ protected int[] m_subtreeSizeColumn;
+
+	/**
+	 * The depth of the subtree rooted at each box
+	 */
+	/*@ non_null @*/ protected int[] m_depthColumn;
+
+	/**
+	 * The IDs of the boxes that are altered
+	 */
+	/*@ non_null @*/ protected final BitSet m_alteredColumn;
+
+	/**
+	 * Creates a new empty page with its own context.
+	 */
+	public ColumnarPage()
+	{
+		this(new PageContext(), 16);
+	}
+
+	/**
+	 * Creates a new empty page.
+	 * @param context The context that gives IDs to the boxes of this page
+	 * @param capacity The number of boxes for which to reserve space
+	 */
+	public ColumnarPage(/*@ non_null @*/ PageContext context, int capacity)
+	{
+		super();
+		m_context = context;
+		m_size = 0;
+		capacity = Math.max(1, capacity);
+		m_xColumn = new float[capacity];
+		m_yColumn = new float[capacity];
+		m_widthColumn = new float[capacity];
+		m_heightColumn = new float[capacity];
+		m_paddingColumn = new float[capacity];
+		m_parentColumn = newLinks(capacity);
+		m_firstChildColumn = newLinks(capacity);
+		m_lastChildColumn = newLinks(capacity);
+		m_nextSiblingColumn = newLinks(capacity);
+		m_childCountColumn = new int[capacity];
+		m_subtreeSizeColumn = new int[capacity];
+		m_depthColumn = new int[capacity];
+		m_alteredColumn = new BitSet(capacity);
+	}
+
+	/**
+	 * Copies a tree of boxes into a new columnar page. The boxes keep their
+	 * ID and their context, so that a view of a box in the page is equal to
+	 * the original box.
+	 * @param root The root of the tree
+	 * @return The page
+	 */
+	/*@ non_null @*/ public static ColumnarPage of(/*@ non_null @*/ Box root)
+	{
+		ColumnarPage page = new ColumnarPage(root.getContext(), root.getSize());
+		Deque<Box> to_visit = new ArrayDeque<Box>();
+		to_visit.push(root);
+		while (!to_visit.isEmpty())
+		{
+			Box b = to_visit.pop();
+			int id = b.getId();
+			page.ensureCapacity(id + 1);
+			page.m_xColumn[id] = b == root ? b.getX() : b.getRelativeX();
+			page.m_yColumn[id] = b == root ? b.getY() : b.getRelativeY();
+			page.m_widthColumn[id] = b.getWidth();
+			page.m_heightColumn[id] = b.getHeight();
+			page.m_paddingColumn[id] = b.getPadding();
+			page.m_subtreeSizeColumn[id] = b.getSize();
+			page.m_depthColumn[id] = b.getDepth();
+			if (b.isAltered())
+			{
+				page.m_alteredColumn.set(id);
+			}
+			if (b != root)
+			{
+				page.link(b.getParent().getId(), id);
+			}
+			List<Box> children = b.getChildren();
+			for (int i = children.size() - 1; i >= 0; i--)
+			{
+				to_visit.push(children.get(i));
+			}
+		}
+		return page;
+	}
+
+	/**
+	 * Gets the context that gives IDs to the boxes of this page.
+	 * @return The context
+	 */
+	/*@ pure non_null @*/ public PageContext getContext()
+	{
+		return m_context;
+	}
+
+	/**
+	 * Gets one more than the largest ID of a box in this page.
+	 * @return The size
+	 */
+	/*@ pure @*/ public int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Adds a new box with no parent to this page.
+	 * @param x The <i>x</i> position of the top-left corner of the box
+	 * @param y The <i>y</i> position of the top-left corner of the box
+	 * @param w The width of the box
+	 * @param h The height of the box
+	 * @return The ID of the new box
+	 */
+	public int addBox(float x, float y, float w, float h)
+	{
+		int id = m_context.nextId();
+		ensureCapacity(id + 1);
+		m_xColumn[id] = x;
+		m_yColumn[id] = y;
+		m_widthColumn[id] = w;
+		m_heightColumn[id] = h;
+		m_subtreeSizeColumn[id] = 1;
+		m_depthColumn[id] = 1;
+		return id;
+	}
+
+	/**
+	 * Adds a new box with no parent to this page, and returns a view of it.
+	 * @param x The <i>x</i> position of the top-left corner of the box
+	 * @param y The <i>y</i> position of the top-left corner of the box
+	 * @param w The width of the box
+	 * @param h The height of the box
+	 * @return The box
+	 */
+	/*@ non_null @*/ public Box newBox(float x, float y, float w, float h)
+	{
+		return getBox(addBox(x, y, w, h));
+	}
+
+	/**
+	 * Gets a view of a box of this page.
+	 * @param id The ID of the box
+	 * @return The box
+	 */
+	/*@ non_null @*/ public Box getBox(int id)
+	{
+		return new ColumnarBox(id);
+	}
+
+	/**
+	 * Gets the absolute <i>x</i> position of a box. The relative positions
+	 * of the box and its ancestors are added from the root down, in the same
+	 * order as in {@link Box#getX()}. Since the page keeps no absolute
+	 * position, this walks up the tree; code that visits all the boxes should
+	 * rather carry the position of the parent along, as
+	 * {@link #getExtent(int)} does.
+	 * @param id The ID of the box
+	 * @return The position
+	 */
+	public float getX(int id)
+	{
+		return getPosition(id, m_xColumn);
+	}
+
+	/**
+	 * Gets the absolute <i>y</i> position of a box.
+	 * @param id The ID of the box
+	 * @return The position
+	 */
+	public float getY(int id)
+	{
+		return getPosition(id, m_yColumn);
+	}
+
+	/**
+	 * Adds the relative positions of a box and its ancestors from the root
+	 * down.
+	 * @param id The ID of the box
+	 * @param column The column of relative positions
+	 * @return The absolute position
+	 */
+	protected float getPosition(int id, /*@ non_null @*/ float[] column)
+	{
+		int depth = 0;
+		for (int p = id; p != NONE; p = m_parentColumn[p])
+		{
+			depth++;
+		}
+		int[] path = new int[depth];
+		depth = 0;
+		for (int p = id; p != NONE; p = m_parentColumn[p])
+		{
+			path[depth++] = p;
+		}
+		float pos = column[path[depth - 1]];
+		for (int i = depth - 2; i >= 0; i--)
+		{
+			pos += column[path[i]];
+		}
+		return pos;
+	}
+
+	/**
+	 * Makes a box the last child of another box.
+	 * @param parent The ID of the parent
+	 * @param child The ID of the child
+	 */
+	protected void link(int parent, int child)
+	{
+		m_parentColumn[child] = parent;
+		if (m_lastChildColumn[parent] == NONE)
+		{
+			m_firstChildColumn[parent] = child;
+		}
+		else
+		{
+			m_nextSiblingColumn[m_lastChildColumn[parent]] = child;
+		}
+		m_lastChildColumn[parent] = child;
+		m_childCountColumn[parent]++;
+	}
+
+	/**
+	 * Makes a box that has no parent the last child of another box. The
+	 * absolute position of the box is preserved, and the size and depth of
+	 * the subtrees rooted at its new ancestors are updated.
+	 * @param parent The ID of the parent
+	 * @param child The ID of the child
+	 */
+	protected void attach(int parent, int child)
+	{
+		m_xColumn[child] -= getX(parent);
+		m_yColumn[child] -= getY(parent);
+		link(parent, child);
+		int depth = m_depthColumn[child] + 1;
+		for (int p = parent; p != NONE; p = m_parentColumn[p])
+		{
+			m_subtreeSizeColumn[p] += m_subtreeSizeColumn[child];
+			if (depth > m_depthColumn[p])
+			{
+				m_depthColumn[p] = depth;
+			}
+			depth = m_depthColumn[p] + 1;
+		}
+	}
+
+	/**
+	 * Removes a box from the children of its parent. The absolute position
+	 * of the box is preserved, and the size and depth of the subtrees rooted
+	 * at its former ancestors are updated.
+	 * @param child The ID of the child
+	 */
+	protected void detach(int child)
+	{
+		int parent = m_parentColumn[child];
+		m_xColumn[child] = getX(child);
+		m_yColumn[child] = getY(child);
+		int previous = NONE;
+		for (int n = m_firstChildColumn[parent]; n != child; n = m_nextSiblingColumn[n])
+		{
+			previous = n;
+		}
+		if (previous == NONE)
+		{
+			m_firstChildColumn[parent] = m_nextSiblingColumn[child];
+		}
+		else
+		{
+			m_nextSiblingColumn[previous] = m_nextSiblingColumn[child];
+		}
+		if (m_lastChildColumn[parent] == child)
+		{
+			m_lastChildColumn[parent] = previous;
+		}
+		m_nextSiblingColumn[child] = NONE;
+		m_parentColumn[child] = NONE;
+		m_childCountColumn[parent]--;
+		for (int p = parent; p != NONE; p = m_parentColumn[p])
+		{
+			m_subtreeSizeColumn[p] -= m_subtreeSizeColumn[child];
+			int depth = 1;
+			for (int c = m_firstChildColumn[p]; c != NONE; c = m_nextSiblingColumn[c])
+			{
+				depth = Math.max(depth, m_depthColumn[c] + 1);
+			}
+			m_depthColumn[p] = depth;
+		}
+	}
+
+	/**
+	 * Computes the bounding extent of a box and all its descendants. The
+	 * subtree is traversed depth first, and the absolute position of each
+	 * box is obtained from the one of its parent on the current path, rather
+	 * than by walking up the tree again.
+	 * @param id The ID of the box
+	 * @return The minimum <i>x</i>, minimum <i>y</i>, maximum <i>x</i> and
+	 * maximum <i>y</i> of the extent
+	 */
+	/*@ non_null @*/ protected float[] getExtent(int id)
+	{
+		float[] e = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+		int[] path = new int[m_depthColumn[id]];
+		float[] path_x = new float[path.length], path_y = new float[path.length];
+		int d = 0;
+		path[0] = id;
+		path_x[0] = getX(id);
+		path_y[0] = getY(id);
+		while (d >= 0)
+		{
+			int n = path[d];
+			e[0] = Math.min(e[0], path_x[d]);
+			e[1] = Math.min(e[1], path_y[d]);
+			e[2] = Math.max(e[2], path_x[d] + m_widthColumn[n]);
+			e[3] = Math.max(e[3], path_y[d] + m_heightColumn[n]);
+			int next = m_firstChildColumn[n];
+			if (next != NONE)
+			{
+				d++;
+			}
+			else
+			{
+				while (d > 0 && m_nextSiblingColumn[path[d]] == NONE)
+				{
+					d--;
+				}
+				next = d > 0 ? m_nextSiblingColumn[path[d]] : NONE;
+			}
+			if (next == NONE)
+			{
+				break;
+			}
+			path[d] = next;
+			path_x[d] = path_x[d - 1] + m_xColumn[next];
+			path_y[d] = path_y[d - 1] + m_yColumn[next];
+		}
+		return e;
+	}
+
+	/**
+	 * Makes sure the arrays can hold a given number of boxes, and updates
+	 * the size of the page.
+	 * @param size The number of boxes
+	 */
+	protected void ensureCapacity(int size)
+	{
+		if (size > m_xColumn.length)
+		{
+			int capacity = Math.max(size, m_xColumn.length * 2);
+			m_xColumn = Arrays.copyOf(m_xColumn, capacity);
+			m_yColumn = Arrays.copyOf(m_yColumn, capacity);
+			m_widthColumn = Arrays.copyOf(m_widthColumn, capacity);
+			m_heightColumn = Arrays.copyOf(m_heightColumn, capacity);
+			m_paddingColumn = Arrays.copyOf(m_paddingColumn, capacity);
+			m_parentColumn = growLinks(m_parentColumn, capacity);
+			m_firstChildColumn = growLinks(m_firstChildColumn, capacity);
+			m_lastChildColumn = growLinks(m_lastChildColumn, capacity);
+			m_nextSiblingColumn = growLinks(m_nextSiblingColumn, capacity);
+			m_childCountColumn = Arrays.copyOf(m_childCountColumn, capacity);
+			m_subtreeSizeColumn = Arrays.copyOf(m_subtreeSizeColumn, capacity);
+			m_depthColumn = Arrays.copyOf(m_depthColumn, capacity);
+		}
+		m_size = Math.max(m_size, size);
+	}
+
+	protected static int[] newLinks(int capacity)
+	{
+		int[] links = new int[capacity];
+		Arrays.fill(links, NONE);
+		return links;
+	}
+
+	protected static int[] growLinks(int[] links, int capacity)
+	{
+		int[] new_links = Arrays.copyOf(links, capacity);
+		Arrays.fill(new_links, links.length, capacity, NONE);
+		return new_links;
+	}
+
+	/**
+	 * Gets the ID of the box that follows a box in a pre-order traversal of
+	 * the subtree rooted at another box.
+	 * @param root The ID of the root of the subtree
+	 * @param id The ID of the current box
+	 * @return The ID of the next box, or {@link #NONE} at the end of the
+	 * traversal
+	 */
+	protected int nextInSubtree(int root, int id)
+	{
+		if (m_firstChildColumn[id] != NONE)
+		{
+			return m_firstChildColumn[id];
+		}
+		while (id != root && m_nextSiblingColumn[id] == NONE)
+		{
+			id = m_parentColumn[id];
+		}
+		return id == root ? NONE : m_nextSiblingColumn[id];
+	}
+
+	/**
+	 * A view of a box of the page. It holds nothing but the ID of the box;
+	 * all its methods read and write the arrays of the page.
+	 */
+	protected class ColumnarBox extends Box
+	{
+		public ColumnarBox(int id)
+		{
+			super(ColumnarPage.this.m_context, id);
+		}
+
+		/**
+		 * Gets the page this box belongs to.
+		 * @return The page
+		 */
+		/*@ pure non_null @*/ public ColumnarPage getPage()
+		{
+			return ColumnarPage.this;
+		}
+
+		@Override
+		public void alter()
+		{
+			m_alteredColumn.set(m_id);
+		}
+
+		@Override
+		public boolean isAltered()
+		{
+			return m_alteredColumn.get(m_id);
+		}
+
+		@Override
+		public int getSize()
+		{
+			return m_subtreeSizeColumn[m_id];
+		}
+
+		@Override
+		public int getDepth()
+		{
+			return m_depthColumn[m_id];
+		}
+
+		@Override
+		public void setPadding(float p)
+		{
+			m_paddingColumn[m_id] = p;
+		}
+
+		@Override
+		public float getPadding()
+		{
+			return m_paddingColumn[m_id];
+		}
+
+		@Override
+		public void shiftX(float s)
+		{
+			m_xColumn[m_id] += s;
+			m_context.moved(this);
+		}
+
+		@Override
+		public void shiftY(float s)
+		{
+			m_yColumn[m_id] += s;
+			m_context.moved(this);
+		}
+
+		@Override
+		public float getX()
+		{
+			return ColumnarPage.this.getX(m_id);
+		}
+
+		@Override
+		public float getY()
+		{
+			return ColumnarPage.this.getY(m_id);
+		}
+
+		@Override
+		public float getRelativeX()
+		{
+			return m_xColumn[m_id];
+		}
+
+		@Override
+		public float getRelativeY()
+		{
+			return m_yColumn[m_id];
+		}
+
+		@Override
+		public float getWidth()
+		{
+			return m_widthColumn[m_id];
+		}
+
+		@Override
+		public float getHeight()
+		{
+			return m_heightColumn[m_id];
+		}
+
+		@Override
+		public void setWidth(float w)
+		{
+			m_widthColumn[m_id] = w;
+			m_context.resized(this);
+		}
+
+		@Override
+		public void setHeight(float h)
+		{
+			m_heightColumn[m_id] = h;
+			m_context.resized(this);
+		}
+
+		@Override
+		public float getMinX()
+		{
+			return getExtent(m_id)[0];
+		}
+
+		@Override
+		public float getMinY()
+		{
+			return getExtent(m_id)[1];
+		}
+
+		@Override
+		public float getMaxX()
+		{
+			return getExtent(m_id)[2];
+		}
+
+		@Override
+		public float getMaxY()
+		{
+			return getExtent(m_id)[3];
+		}
+
+		@Override
+		public List<Box> getChildren()
+		{
+			return new ChildList(m_id);
+		}
+
+		@Override
+		public Box getParent()
+		{
+			int p = m_parentColumn[m_id];
+			return p == NONE ? null : new ColumnarBox(p);
+		}
+
+		/**
+		 * Sets the parent of this box. The box is removed from the children
+		 * of its former parent, and becomes the last child of the new one.
+		 * The absolute position of the box is preserved.
+		 * @param parent The parent, or {@code null} to detach the box
+		 */
+		@Override
+		public void setParent(Box parent)
+		{
+			if (parent != null)
+			{
+				checkPage(parent);
+			}
+			if (m_parentColumn[m_id] != NONE)
+			{
+				detach(m_id);
+			}
+			if (parent != null)
+			{
+				attach(parent.getId(), m_id);
+			}
+		}
+
+		/**
+		 * Adds a box at the end of the children of this box.
+		 * @param r The box to add, which must not have a parent
+		 * @throws IllegalArgumentException If the box does not belong to the
+		 * same page, or already has a parent
+		 */
+		@Override
+		public void addChild(Box r)
+		{
+			checkPage(r);
+			int child = r.getId();
+			if (m_parentColumn[child] != NONE)
+			{
+				throw new IllegalArgumentException("Box " + child + " already has a parent");
+			}
+			float r_x = m_xColumn[child], r_y = m_yColumn[child];
+			attach(m_id, child);
+			m_widthColumn[m_id] = Math.max(m_widthColumn[m_id], Math.max(0, r_x + m_widthColumn[child]));
+			m_heightColumn[m_id] = Math.max(m_heightColumn[m_id], Math.max(0, r_y + m_heightColumn[child]));
+			m_context.resized(this);
+		}
+
+		/**
+		 * Checks that a box is a view of the same page as this box.
+		 * @param b The box
+		 * @throws IllegalArgumentException If the box belongs to another page
+		 */
+		protected void checkPage(/*@ non_null @*/ Box b)
+		{
+			if (!(b instanceof ColumnarBox) || ((ColumnarBox) b).getPage() != ColumnarPage.this)
+			{
+				throw new IllegalArgumentException("Box " + b.getId() + " does not belong to this page");
+			}
+		}
+
+		@Override
+		protected void toString(StringBuilder out, String indent)
+		{
+			out.append(indent).append("id: ").append(m_id).append(", x: ").append(getX()).append(", y: ").append(getY()).append(", w: ").append(getWidth()).append(", h: ").append(getHeight()).append("\n");
+			indent += " ";
+			for (Box b : getChildren())
+			{
+				((ColumnarBox) b).toString(out, indent);
+			}
+		}
+
+		@Override
+		protected void flatten(Map<Integer,Box> map)
+		{
+			for (int n = m_id; n != NONE; n = nextInSubtree(m_id, n))
+			{
+				map.put(n, new ColumnarBox(n));
+			}
+		}
+	}
+
+	/**
+	 * The list of children of a box, read from the sibling links of the page.
+	 * Iterating over the list follows the links; the IDs of the children are
+	 * only copied into an array the first time the list is accessed by
+	 * index, so that each later access takes constant time.
+	 */
+	protected class ChildList extends AbstractList<Box>
+	{
+		/**
+		 * The ID of the parent box
+		 */
+		protected final int m_id;
+
+		/**
+		 * The IDs of the children, or {@code null} if they have not been
+		 * copied yet
+		 */
+		/*@ null @*/ protected int[] m_childIds;
+
+		public ChildList(int id)
+		{
+			super();
+			m_id = id;
+			m_childIds = null;
+		}
+
+		@Override
+		public Box get(int index)
+		{
+			int count = m_childCountColumn[m_id];
+			if (index < 0 || index >= count)
+			{
+				throw new IndexOutOfBoundsException("Index: " + index);
+			}
+			if (m_childIds == null || m_childIds.length != count)
+			{
+				m_childIds = new int[count];
+				int i = 0;
+				for (int n = m_firstChildColumn[m_id]; n != NONE; n = m_nextSiblingColumn[n])
+				{
+					m_childIds[i++] = n;
+				}
+			}
+			return new ColumnarBox(m_childIds[index]);
+		}
+
+		@Override
+		public int size()
+		{
+			return m_childCountColumn[m_id];
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			return m_firstChildColumn[m_id] == NONE;
+		}
+
+		@Override
+		public Iterator<Box> iterator()
+		{
+			return new Iterator<Box>()
+			{
+				int m_next = m_firstChildColumn[m_id];
+
+				@Override
+				public boolean hasNext()
+				{
+					return m_next != NONE;
+				}
+
+				@Override
+				public Box next()
+				{
+					if (m_next == NONE)
+					{
+						throw new NoSuchElementException();
+					}
+					Box b = new ColumnarBox(m_next);
+					m_next = m_nextSiblingColumn[m_next];
+					return b;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,676 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ca.uqac.lif.pagen.BoxProperty.Property;
+
+/**
+ * An immutable box dependency graph stored in compressed sparse row form.
+ * Each box property of the graph is given an integer ID, and the edges
+ * leaving each node are stored as a contiguous range of an array of
+ * integers, once for each direction. This takes a few integers per edge,
+ * instead of two {@link BoxDependency} objects and two hash set entries
+ * in {@link BoxDependencyGraph}.
+ * <p>
+ * The graph answers the same {@link DependencyGraph queries} as
+ * {@link BoxDependencyGraph}, but has no method to add edges; the sets of
+ * {@link BoxDependency} objects it returns are created on demand.
+ * The nodes are numbered in the order of the ID of their box, and then of
+ * their property. All the boxes of the graph must belong to the same
+ * {@link PageContext}.
+ */
+public class CompactDependencyGraph implements DependencyGraph
+{
+	/**
+	 * The box property corresponding to each node ID
+	 */
+	/*@ non_null @*/ protected final BoxProperty[] m_nodes;
+
+	/**
+	 * The ID of the node of each box property, indexed by box ID times
+	 * {@link BoxProperty#s_numProperties} plus property, or -1 if the
+	 * property is not a node of the graph
+	 */
+	/*@ non_null @*/ protected final int[] m_nodeIds;
+
+	/**
+	 * For each node, the index in {@link #m_influencedByTargets} of the
+	 * first node it is influenced by; the array has one more element
+	 * marking the end of the last range
+	 */
+	/*@ non_null @*/ protected final int[] m_influencedByOffsets;
+
+	/**
+	 * The nodes each node is influenced by, sorted within each range
+	 */
+	/*@ non_null @*/ protected final int[] m_influencedByTargets;
+
+	/**
+	 * For each node, the index in {@link #m_influencesTargets} of the first
+	 * node it influences; the array has one more element marking the end
+	 * of the last range
+	 */
+	/*@ non_null @*/ protected final int[] m_influencesOffsets;
+
+	/**
+	 * The nodes each node influences, sorted within each range
+	 */
+	/*@ non_null @*/ protected final int[] m_influencesTargets;
+
+	/**
+	 * The transitive closure of the graph, computed on demand
+	 */
+	/*@ null @*/ protected TransitiveClosure m_closure;
+
+	/**
+	 * The reachability index of the graph, built on demand
+	 */
+	/*@ null @*/ protected ReachabilityIndex m_index;
+
+	/**
+	 * The tree influence oracle of the graph, built on demand
+	 */
+	/*@ null @*/ protected TreeInfluenceOracle m_oracle;
+
+	/**
+	 * Creates a compact graph from the dependencies produced by layout
+	 * managers.
+	 * @param layouts The layout managers
+	 * @return The graph
+	 */
+	/*@ non_null @*/ public static CompactDependencyGraph of(Iterable<? extends LayoutManager> layouts)
+	{
+		List<Set<BoxDependency>> sets = new ArrayList<Set<BoxDependency>>();
+		for (LayoutManager lm : layouts)
+		{
+			sets.add(lm.getDependencies());
+		}
+		return new CompactDependencyGraph(sets);
+	}
+
+	/**
+	 * Creates a compact graph with the same nodes and edges as another
+	 * dependency graph.
+	 * @param g The graph
+	 * @return The compact graph
+	 */
+	/*@ non_null @*/ public static CompactDependencyGraph of(/*@ non_null @*/ DependencyGraph g)
+	{
+		Set<BoxDependency> deps = new HashSet<BoxDependency>();
+		for (BoxProperty bp : g.getNodes())
+		{
+			deps.addAll(g.getInfluencedBy(bp));
+		}
+		return new CompactDependencyGraph(deps);
+	}
+
+	/**
+	 * Creates a compact graph from the union of sets of dependencies.
+	 * @param dependencies The sets of dependencies
+	 */
+	@SafeVarargs
+	@SuppressWarnings("varargs")
+	public CompactDependencyGraph(Set<BoxDependency> ... dependencies)
+	{
+		this(Arrays.asList(dependencies));
+	}
+
+	/**
+	 * Creates a compact graph from the union of sets of dependencies.
+	 * @param dependencies The sets of dependencies
+	 */
+	public CompactDependencyGraph(/*@ non_null @*/ Iterable<? extends Set<BoxDependency>> dependencies)
+	{
+		super();
+		// First pass: find the nodes and number them by box and property
+		int max_slot = -1;
+		int num_edges = 0;
+		PageContext context = null;
+		for (Set<BoxDependency> set : dependencies)
+		{
+			for (BoxDependency bd : set)
+			{
+				context = checkContext(context, bd.getProperty());
+				context = checkContext(context, bd.getInfluencedBy());
+				max_slot = Math.max(max_slot, Math.max(getSlot(bd.getProperty()), getSlot(bd.getInfluencedBy())));
+				num_edges++;
+			}
+		}
+		BitSet present = new BitSet(max_slot + 1);
+		BoxProperty[] by_slot = new BoxProperty[max_slot + 1];
+		for (Set<BoxDependency> set : dependencies)
+		{
+			for (BoxDependency bd : set)
+			{
+				by_slot[getSlot(bd.getProperty())] = bd.getProperty();
+				by_slot[getSlot(bd.getInfluencedBy())] = bd.getInfluencedBy();
+				present.set(getSlot(bd.getProperty()));
+				present.set(getSlot(bd.getInfluencedBy()));
+			}
+		}
+		m_nodeIds = new int[max_slot + 1];
+		Arrays.fill(m_nodeIds, -1);
+		m_nodes = new BoxProperty[present.cardinality()];
+		int num_nodes = 0;
+		for (int slot = present.nextSetBit(0); slot >= 0; slot = present.nextSetBit(slot + 1))
+		{
+			m_nodeIds[slot] = num_nodes;
+			m_nodes[num_nodes++] = by_slot[slot];
+		}
+		by_slot = null;
+		// Second pass: list the edges and sort them by source
+		int[] sources = new int[num_edges];
+		int[] targets = new int[num_edges];
+		num_edges = 0;
+		for (Set<BoxDependency> set : dependencies)
+		{
+			for (BoxDependency bd : set)
+			{
+				sources[num_edges] = m_nodeIds[getSlot(bd.getProperty())];
+				targets[num_edges] = m_nodeIds[getSlot(bd.getInfluencedBy())];
+				num_edges++;
+			}
+		}
+		int[] offsets = new int[num_nodes + 1];
+		int[] sorted = bucket(sources, targets, num_edges, offsets);
+		// Sort each range and remove the edges found in more than one set
+		int length = 0;
+		for (int n = 0; n < num_nodes; n++)
+		{
+			int start = offsets[n], end = offsets[n + 1];
+			Arrays.sort(sorted, start, end);
+			offsets[n] = length;
+			for (int i = start; i < end; i++)
+			{
+				if (i == start || sorted[i] != sorted[i - 1])
+				{
+					sorted[length++] = sorted[i];
+				}
+			}
+		}
+		offsets[num_nodes] = length;
+		m_influencedByOffsets = offsets;
+		m_influencedByTargets = Arrays.copyOf(sorted, length);
+		// Reverse the edges; ranges come out sorted since sources are visited in order
+		for (int n = 0, i = 0; n < num_nodes; n++)
+		{
+			for (; i < offsets[n + 1]; i++)
+			{
+				sources[i] = n;
+			}
+		}
+		m_influencesOffsets = new int[num_nodes + 1];
+		m_influencesTargets = bucket(m_influencedByTargets, sources, length, m_influencesOffsets);
+	}
+
+	/**
+	 * Distributes edges in the ranges of their source node, keeping the
+	 * relative order of the edges with the same source.
+	 * @param sources The source of each edge
+	 * @param targets The target of each edge
+	 * @param num_edges The number of edges
+	 * @param offsets An array where the start of the range of each node is
+	 * written, followed by the end of the last range
+	 * @return The targets of the edges, sorted by source
+	 */
+	protected static int[] bucket(int[] sources, int[] targets, int num_edges, int[] offsets)
+	{
+		int num_nodes = offsets.length - 1;
+		for (int i = 0; i < num_edges; i++)
+		{
+			offsets[sources[i] + 1]++;
+		}
+		for (int n = 0; n < num_nodes; n++)
+		{
+			offsets[n + 1] += offsets[n];
+		}
+		int[] next = Arrays.copyOf(offsets, num_nodes);
+		int[] sorted = new int[num_edges];
+		for (int i = 0; i < num_edges; i++)
+		{
+			sorted[next[sources[i]]++] = targets[i];
+		}
+		return sorted;
+	}
+
+	protected static PageContext checkContext(/*@ null @*/ PageContext context, /*@ non_null @*/ BoxProperty bp)
+	{
+		PageContext c = bp.getBox().getContext();
+		if (context != null && context != c)
+		{
+			throw new IllegalArgumentException("All the boxes of the graph must belong to the same context");
+		}
+		return c;
+	}
+
+	protected static int getSlot(/*@ non_null @*/ BoxProperty bp)
+	{
+		return bp.getBox().getId() * BoxProperty.s_numProperties + bp.getProperty().ordinal();
+	}
+
+	/**
+	 * Gets the number of nodes in the graph.
+	 * @return The number of nodes
+	 */
+	/*@ pure @*/ public int getNodeCount()
+	{
+		return m_nodes.length;
+	}
+
+	/**
+	 * Gets the number of edges in the graph.
+	 * @return The number of edges
+	 */
+	/*@ pure @*/ public int getEdgeCount()
+	{
+		return m_influencedByTargets.length;
+	}
+
+	/**
+	 * Gets the ID of the node corresponding to a box property.
+	 * @param bp The box property
+	 * @return The ID, or -1 if the property is not a node of the graph
+	 */
+	/*@ pure @*/ public int getNodeId(/*@ non_null @*/ BoxProperty bp)
+	{
+		int slot = getSlot(bp);
+		if (slot < 0 || slot >= m_nodeIds.length)
+		{
+			return -1;
+		}
+		return m_nodeIds[slot];
+	}
+
+	/**
+	 * Gets the box property corresponding to a node ID.
+	 * @param id The ID
+	 * @return The box property
+	 */
+	/*@ pure non_null @*/ public BoxProperty getNode(int id)
+	{
+		return m_nodes[id];
+	}
+
+	/**
+	 * Gets the start of the range of each node in
+	 * {@link #getInfluencedByTargets()}. The array is not copied and must
+	 * not be modified.
+	 * @return The offsets, followed by the end of the last range
+	 */
+	/*@ pure non_null @*/ public int[] getInfluencedByOffsets()
+	{
+		return m_influencedByOffsets;
+	}
+
+	/**
+	 * Gets the nodes each node is influenced by. The array is not copied
+	 * and must not be modified.
+	 * @return The nodes
+	 */
+	/*@ pure non_null @*/ public int[] getInfluencedByTargets()
+	{
+		return m_influencedByTargets;
+	}
+
+	/**
+	 * Gets the start of the range of each node in
+	 * {@link #getInfluencesTargets()}. The array is not copied and must not
+	 * be modified.
+	 * @return The offsets, followed by the end of the last range
+	 */
+	/*@ pure non_null @*/ public int[] getInfluencesOffsets()
+	{
+		return m_influencesOffsets;
+	}
+
+	/**
+	 * Gets the nodes each node influences. The array is not copied and must
+	 * not be modified.
+	 * @return The nodes
+	 */
+	/*@ pure non_null @*/ public int[] getInfluencesTargets()
+	{
+		return m_influencesTargets;
+	}
+
+	@Override
+	public Set<BoxProperty> getNodes()
+	{
+		return new NodeSet();
+	}
+
+	/**
+	 * Gets the transitive closure of this graph. It is computed the first
+	 * time it is asked for, and then kept for the next calls.
+	 * @return The closure
+	 */
+	/*@ non_null @*/ public synchronized TransitiveClosure getClosure()
+	{
+		if (m_closure == null)
+		{
+			m_closure = new TransitiveClosure(this);
+		}
+		return m_closure;
+	}
+
+	@Override
+	/*@ pure non_null @*/ public Map<BoxProperty,Set<BoxProperty>> getTransitiveClosure(Set<BoxProperty> start_list)
+	{
+		return getClosure().getTransitiveClosure(start_list);
+	}
+
+	@Override
+	/*@ pure non_null @*/ public Map<BoxProperty,Set<BoxProperty>> getTransitiveClosure(Set<BoxProperty> start_list, int threads)
+	{
+		return getClosure().getTransitiveClosure(start_list, threads);
+	}
+
+	@Override
+	/*@ pure non_null @*/ public Map<BoxProperty,Set<BoxProperty>> getTransitiveClosure(BoxProperty ... starting_points)
+	{
+		if (starting_points.length == 0)
+		{
+			return getTransitiveClosure(getNodes());
+		}
+		return getTransitiveClosure(new HashSet<BoxProperty>(Arrays.asList(starting_points)));
+	}
+
+	/**
+	 * Determines if box b1 influences box b2. The query is answered by the
+	 * {@link TreeInfluenceOracle} of the graph, which consults the graph
+	 * itself only for edges that do not follow the pattern of the flow
+	 * layouts.
+	 * @param b1 The first box
+	 * @param b2 The second box
+	 * @return {@code true} if b1 influences b2, {@code false} otherwise
+	 */
+	@Override
+	public boolean influences(Box b1, Box b2)
+	{
+		return getTreeOracle().influences(b1, b2);
+	}
+
+	/**
+	 * Determines if box b1 influences box b2. The query is answered by the
+	 * {@link ReachabilityIndex} of the graph. Since the index ignores the
+	 * restriction of {@link BoxDependencyGraph#influences(Box, Box)} on
+	 * paths going through the properties of b1, the graph is scanned
+	 * instead when such paths exist.
+	 * @param b1 The first box
+	 * @param b2 The second box
+	 * @return {@code true} if b1 influences b2, {@code false} otherwise
+	 */
+	public boolean indexInfluences(Box b1, Box b2)
+	{
+		int n = getNodeId(BoxProperty.get(b1, Property.X));
+		if (n < 0)
+		{
+			return false;
+		}
+		if (b1.equals(b2))
+		{
+			return scanInfluences(n, b2);
+		}
+		ReachabilityIndex index = getReachabilityIndex();
+		boolean reached = false;
+		for (Property p : Property.values())
+		{
+			int m = getNodeId(BoxProperty.get(b2, p));
+			if (m >= 0 && index.reaches(m, n))
+			{
+				reached = true;
+				break;
+			}
+		}
+		if (!reached)
+		{
+			return false;
+		}
+		for (Property p : Property.values())
+		{
+			int m = p == Property.X ? -1 : getNodeId(BoxProperty.get(b1, p));
+			if (m >= 0 && index.reaches(m, n))
+			{
+				// Paths through another property of b1 could be the only ones
+				return scanInfluences(n, b2);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the tree influence oracle of this graph. It is built the first
+	 * time it is asked for, and then kept for the next calls.
+	 * @return The oracle
+	 */
+	/*@ non_null @*/ public synchronized TreeInfluenceOracle getTreeOracle()
+	{
+		if (m_oracle == null)
+		{
+			m_oracle = new TreeInfluenceOracle(this);
+		}
+		return m_oracle;
+	}
+
+	/**
+	 * Gets the reachability index of this graph. It is built the first time
+	 * it is asked for, and then kept for the next calls.
+	 * @return The index
+	 */
+	/*@ non_null @*/ public synchronized ReachabilityIndex getReachabilityIndex()
+	{
+		if (m_index == null)
+		{
+			m_index = new ReachabilityIndex(getClosure());
+		}
+		return m_index;
+	}
+
+	/**
+	 * Determines if a box is influenced by a node through a transitive scan
+	 * that does not go through the other properties of the box of the node.
+	 * @param n The ID of the node
+	 * @param b2 The box
+	 * @return {@code true} if a property of the box is reached
+	 */
+	protected boolean scanInfluences(int n, Box b2)
+	{
+		BitSet expanded = getExpanded(n, m_influencesOffsets, m_influencesTargets);
+		for (int current = expanded.nextSetBit(0); current >= 0; current = expanded.nextSetBit(current + 1))
+		{
+			for (int i = m_influencesOffsets[current]; i < m_influencesOffsets[current + 1]; i++)
+			{
+				if (m_nodes[m_influencesTargets[i]].getBox().equals(b2))
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Set<BoxDependency> getDependencies(Box b, Property p)
+	{
+		return getInfluencedBy(BoxProperty.get(b, p));
+	}
+
+	@Override
+	public Set<BoxDependency> getInfluencedBy(BoxProperty bp)
+	{
+		return getInfluencedBy(bp, false);
+	}
+
+	@Override
+	public Set<BoxDependency> getInfluences(BoxProperty bp)
+	{
+		return getInfluences(bp, false);
+	}
+
+	@Override
+	public Set<BoxDependency> getInfluencedBy(BoxProperty bp, boolean transitive)
+	{
+		return getDependencies(bp, transitive, m_influencedByOffsets, m_influencedByTargets, false);
+	}
+
+	@Override
+	public Set<BoxDependency> getInfluences(BoxProperty bp, boolean transitive)
+	{
+		return getDependencies(bp, transitive, m_influencesOffsets, m_influencesTargets, true);
+	}
+
+	/**
+	 * Gets the set of dependencies leaving a node in one direction of the
+	 * graph.
+	 * @param bp The box property of the node
+	 * @param transitive Set to {@code true} to perform a transitive scan
+	 * @param offsets The offsets of the ranges in this direction
+	 * @param targets The targets of the edges in this direction
+	 * @param reverse Set to {@code true} if the edges in this direction go
+	 * from a property to the properties it influences
+	 * @return The set of dependencies
+	 */
+	protected Set<BoxDependency> getDependencies(BoxProperty bp, boolean transitive, int[] offsets, int[] targets, boolean reverse)
+	{
+		Set<BoxDependency> out = new HashSet<BoxDependency>();
+		int n = getNodeId(bp);
+		if (n < 0)
+		{
+			return out;
+		}
+		if (!transitive)
+		{
+			addDependencies(out, n, offsets, targets, reverse);
+			return out;
+		}
+		BitSet expanded = getExpanded(n, offsets, targets);
+		for (int current = expanded.nextSetBit(0); current >= 0; current = expanded.nextSetBit(current + 1))
+		{
+			addDependencies(out, current, offsets, targets, reverse);
+		}
+		return out;
+	}
+
+	protected void addDependencies(Set<BoxDependency> out, int n, int[] offsets, int[] targets, boolean reverse)
+	{
+		for (int i = offsets[n]; i < offsets[n + 1]; i++)
+		{
+			if (reverse)
+			{
+				out.add(new BoxDependency(m_nodes[targets[i]], m_nodes[n]));
+			}
+			else
+			{
+				out.add(new BoxDependency(m_nodes[n], m_nodes[targets[i]]));
+			}
+		}
+	}
+
+	/**
+	 * Gets the nodes whose edges are part of a transitive scan from a node:
+	 * the node itself, and all the nodes reached from it without going
+	 * through a property of the same box.
+	 * @param n The node where the scan starts
+	 * @param offsets The offsets of the ranges in the direction of the scan
+	 * @param targets The targets of the edges in the direction of the scan
+	 * @return The set of nodes
+	 */
+	protected BitSet getExpanded(int n, int[] offsets, int[] targets)
+	{
+		int start_box = m_nodes[n].getBox().getId();
+		BitSet expanded = new BitSet(m_nodes.length);
+		int[] queue = new int[16];
+		int head = 0, tail = 0;
+		expanded.set(n);
+		queue[tail++] = n;
+		while (head < tail)
+		{
+			int current = queue[head++];
+			for (int i = offsets[current]; i < offsets[current + 1]; i++)
+			{
+				int target = targets[i];
+				if (expanded.get(target) || m_nodes[target].getBox().getId() == start_box)
+				{
+					continue;
+				}
+				expanded.set(target);
+				if (tail == queue.length)
+				{
+					queue = Arrays.copyOf(queue, tail * 2);
+				}
+				queue[tail++] = target;
+			}
+		}
+		return expanded;
+	}
+
+	/**
+	 * An unmodifiable view of the nodes of the graph, in the order of their
+	 * ID.
+	 */
+	protected class NodeSet extends AbstractSet<BoxProperty>
+	{
+		@Override
+		public boolean contains(Object o)
+		{
+			return o instanceof BoxProperty && getNodeId((BoxProperty) o) >= 0 && m_nodes[getNodeId((BoxProperty) o)].equals(o);
+		}
+
+		@Override
+		public int size()
+		{
+			return m_nodes.length;
+		}
+
+		@Override
+		public Iterator<BoxProperty> iterator()
+		{
+			return new Iterator<BoxProperty>()
+			{
+				protected int m_next = 0;
+
+				@Override
+				public boolean hasNext()
+				{
+					return m_next < m_nodes.length;
+				}
+
+				@Override
+				public BoxProperty next()
+				{
+					if (m_next >= m_nodes.length)
+					{
+						throw new NoSuchElementException();
+					}
+					return m_nodes[m_next++];
+				}
+			};
+		}
+	}
+}
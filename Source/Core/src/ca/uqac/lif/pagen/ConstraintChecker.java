@@ -0,0 +1,627 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import ca.uqac.lif.pagen.LayoutConstraint.BinaryLayoutConstraint;
+import ca.uqac.lif.pagen.LayoutConstraint.Contained;
+import ca.uqac.lif.pagen.LayoutConstraint.Disjoint;
+import ca.uqac.lif.pagen.LayoutConstraint.MultiLayoutConstraint;
+import ca.uqac.lif.pagen.LayoutConstraint.SameX;
+import ca.uqac.lif.pagen.LayoutConstraint.SameY;
+
+/**
+ * Evaluates all the constraints of a page on several threads. The absolute
+ * position and the size of every box are first copied into arrays indexed
+ * by box ID, so that the constraints of the known types are evaluated by
+ * reading these arrays instead of walking up the tree for each box. The
+ * constraints are then grouped by type and split into intervals, along
+ * with the boxes owning the constraints of each {@link ConstraintFamily},
+ * and the intervals are evaluated by the threads of a pool.
+ * <p>
+ * The constraints are evaluated afresh, and give the same verdicts as
+ * {@link LayoutConstraint#getVerdict()} on a constraint that has not been
+ * evaluated before; the verdicts are not stored in the constraints. The
+ * boxes must not be modified during a check.
+ */
+public class ConstraintChecker
+{
+	/**
+	 * The maximum number of constraints or boxes handled by a task without
+	 * splitting it
+	 */
+	protected static final int s_threshold = 2048;
+
+	/**
+	 * The number of threads used to evaluate the constraints
+	 */
+	protected int m_threads;
+
+	/**
+	 * Creates a new checker using as many threads as there are processors.
+	 */
+	public ConstraintChecker()
+	{
+		super();
+		m_threads = Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Sets the number of threads used to evaluate the constraints.
+	 * @param threads The number of threads; values lower than 2 evaluate
+	 * the constraints in the calling thread
+	 * @return This checker
+	 */
+	public ConstraintChecker setThreads(int threads)
+	{
+		m_threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * Evaluates the constraints of the layouts of a page, along with the
+	 * containment and disjointness constraints of its tree.
+	 * @param page The page
+	 * @return The result of the check
+	 */
+	/*@ non_null @*/ public Result check(/*@ non_null @*/ Page page)
+	{
+		List<FlowLayout> layouts = page.getLayouts();
+		List<Set<LayoutConstraint>> constraints = new ArrayList<Set<LayoutConstraint>>(layouts.size() + 2);
+		for (FlowLayout layout : layouts)
+		{
+			constraints.add(layout.getConstraints());
+		}
+		Box root = page.getRoot();
+		constraints.add(Contained.getFamily(root));
+		constraints.add(Disjoint.getFamily(root));
+		return check(root, constraints);
+	}
+
+	/**
+	 * Evaluates sets of constraints over the boxes of a tree.
+	 * @param root The root of the tree
+	 * @param constraints The sets of constraints. The constraints of a
+	 * {@link ConstraintFamily} are created by the threads as they are
+	 * evaluated.
+	 * @return The result of the check
+	 * @throws IllegalArgumentException If a family is not over the same
+	 * tree
+	 */
+	/*@ non_null @*/ public Result check(/*@ non_null @*/ Box root, /*@ non_null @*/ List<? extends Set<LayoutConstraint>> constraints)
+	{
+		// Group the constraints by type, so that each task mostly sees one
+		Map<Class<?>,List<LayoutConstraint>> by_type = new LinkedHashMap<Class<?>,List<LayoutConstraint>>();
+		List<ConstraintFamily> families = new ArrayList<ConstraintFamily>();
+		for (Set<LayoutConstraint> set : constraints)
+		{
+			if (set instanceof ConstraintFamily)
+			{
+				if (!((ConstraintFamily) set).getRoot().equals(root))
+				{
+					throw new IllegalArgumentException("The family is not over the tree rooted at box " + root.getId());
+				}
+				families.add((ConstraintFamily) set);
+				continue;
+			}
+			for (LayoutConstraint c : set)
+			{
+				List<LayoutConstraint> list = by_type.get(c.getClass());
+				if (list == null)
+				{
+					list = new ArrayList<LayoutConstraint>();
+					by_type.put(c.getClass(), list);
+				}
+				list.add(c);
+			}
+		}
+		List<LayoutConstraint> all = new ArrayList<LayoutConstraint>();
+		for (List<LayoutConstraint> list : by_type.values())
+		{
+			all.addAll(list);
+		}
+		Snapshot snapshot = new Snapshot(root);
+		ForkJoinPool pool = m_threads > 1 ? new ForkJoinPool(m_threads) : null;
+		try
+		{
+			CheckTask check = new CheckTask(snapshot, all.toArray(new LayoutConstraint[all.size()]), families.toArray(new ConstraintFamily[families.size()]), 0, all.size() + families.size() * snapshot.m_boxes.length);
+			if (pool == null)
+			{
+				return check.compute();
+			}
+			return pool.invoke(check);
+		}
+		finally
+		{
+			if (pool != null)
+			{
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * The outcome of a check: the constraints that are violated, and the
+	 * number of constraints of each type that were evaluated and violated.
+	 */
+	public static class Result
+	{
+		/**
+		 * The violated constraints
+		 */
+		/*@ non_null @*/ protected final Set<LayoutConstraint> m_violated;
+
+		/**
+		 * For each type of constraint, the number of constraints evaluated
+		 * and the number of them that are violated
+		 */
+		/*@ non_null @*/ protected final Map<Class<?>,int[]> m_counts;
+
+		/**
+		 * The type of the last constraint recorded, which is usually the type
+		 * of the next one
+		 */
+		/*@ null @*/ protected Class<?> m_lastType;
+
+		/**
+		 * The counts of {@link #m_lastType}
+		 */
+		/*@ null @*/ protected int[] m_lastCounts;
+
+		public Result()
+		{
+			super();
+			m_violated = new HashSet<LayoutConstraint>();
+			m_counts = new HashMap<Class<?>,int[]>();
+		}
+
+		/**
+		 * Gets the counts of a type of constraint.
+		 * @param type The type
+		 * @return An array with the number of constraints evaluated and the
+		 * number of them that are violated
+		 */
+		/*@ non_null @*/ protected int[] getCounts(/*@ non_null @*/ Class<?> type)
+		{
+			if (type != m_lastType)
+			{
+				int[] counts = m_counts.get(type);
+				if (counts == null)
+				{
+					counts = new int[2];
+					m_counts.put(type, counts);
+				}
+				m_lastType = type;
+				m_lastCounts = counts;
+			}
+			return m_lastCounts;
+		}
+
+		/**
+		 * Records the verdict of a constraint.
+		 * @param c The constraint
+		 * @param verdict The verdict
+		 */
+		protected void add(/*@ non_null @*/ LayoutConstraint c, boolean verdict)
+		{
+			int[] counts = getCounts(c.getClass());
+			counts[0]++;
+			if (!verdict)
+			{
+				counts[1]++;
+				m_violated.add(c);
+			}
+		}
+
+		/**
+		 * Adds the verdicts recorded by another result to this one.
+		 * @param r The other result
+		 * @return This result
+		 */
+		protected Result merge(/*@ non_null @*/ Result r)
+		{
+			m_violated.addAll(r.m_violated);
+			for (Map.Entry<Class<?>,int[]> e : r.m_counts.entrySet())
+			{
+				int[] counts = m_counts.get(e.getKey());
+				if (counts == null)
+				{
+					m_counts.put(e.getKey(), e.getValue());
+				}
+				else
+				{
+					counts[0] += e.getValue()[0];
+					counts[1] += e.getValue()[1];
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Gets the constraints that are violated.
+		 * @return The constraints
+		 */
+		/*@ pure non_null @*/ public Set<LayoutConstraint> getViolated()
+		{
+			return Collections.unmodifiableSet(m_violated);
+		}
+
+		/**
+		 * Gets the types of the constraints that were evaluated.
+		 * @return The types
+		 */
+		/*@ pure non_null @*/ public Set<Class<?>> getTypes()
+		{
+			return Collections.unmodifiableSet(m_counts.keySet());
+		}
+
+		/**
+		 * Gets the number of constraints of a type that were evaluated.
+		 * @param type The type of constraint
+		 * @return The number of constraints
+		 */
+		/*@ pure @*/ public int getCheckedCount(/*@ non_null @*/ Class<?> type)
+		{
+			int[] counts = m_counts.get(type);
+			return counts == null ? 0 : counts[0];
+		}
+
+		/**
+		 * Gets the number of constraints of a type that are violated.
+		 * @param type The type of constraint
+		 * @return The number of constraints
+		 */
+		/*@ pure @*/ public int getViolatedCount(/*@ non_null @*/ Class<?> type)
+		{
+			int[] counts = m_counts.get(type);
+			return counts == null ? 0 : counts[1];
+		}
+	}
+
+	/**
+	 * The geometry of the boxes of a tree, stored in arrays indexed by box
+	 * ID.
+	 */
+	protected static class Snapshot
+	{
+		/**
+		 * The boxes, in the order of a depth-first traversal of the tree
+		 */
+		/*@ non_null @*/ protected final Box[] m_boxes;
+
+		/**
+		 * The IDs of the children of the boxes, listed box after box in the
+		 * order of {@link #m_boxes}
+		 */
+		/*@ non_null @*/ protected final int[] m_children;
+
+		/**
+		 * The position in {@link #m_children} of the first child of each box
+		 * of {@link #m_boxes}, followed by the number of children
+		 */
+		/*@ non_null @*/ protected final int[] m_firstChild;
+
+		/**
+		 * The box with each ID, or {@code null} for IDs of boxes outside the
+		 * tree
+		 */
+		/*@ non_null @*/ protected final Box[] m_byId;
+
+		/**
+		 * The absolute position of each box
+		 */
+		/*@ non_null @*/ protected final float[] m_x, m_y;
+
+		/**
+		 * The size of each box
+		 */
+		/*@ non_null @*/ protected final float[] m_w, m_h;
+
+		/**
+		 * Copies the position and the size of every box of a tree. Since the
+		 * boxes are listed parents first, the absolute position of each box
+		 * is obtained in a single pass, by adding its relative position to
+		 * the one of its parent.
+		 * @param root The root of the tree
+		 */
+		public Snapshot(/*@ non_null @*/ Box root)
+		{
+			super();
+			List<Box> boxes = new ArrayList<Box>();
+			int max_id = 0;
+			int[] children = new int[16];
+			int[] first_child = new int[16];
+			int num_children = 0;
+			List<Box> stack = new ArrayList<Box>();
+			stack.add(root);
+			while (!stack.isEmpty())
+			{
+				Box b = stack.remove(stack.size() - 1);
+				if (boxes.size() + 1 >= first_child.length)
+				{
+					first_child = Arrays.copyOf(first_child, first_child.length * 2);
+				}
+				first_child[boxes.size()] = num_children;
+				boxes.add(b);
+				max_id = Math.max(max_id, b.getId());
+				for (Box child : b.getChildren())
+				{
+					if (num_children == children.length)
+					{
+						children = Arrays.copyOf(children, children.length * 2);
+					}
+					children[num_children++] = child.getId();
+					stack.add(child);
+				}
+			}
+			first_child[boxes.size()] = num_children;
+			m_children = children;
+			m_firstChild = first_child;
+			m_boxes = boxes.toArray(new Box[boxes.size()]);
+			m_byId = new Box[max_id + 1];
+			m_x = new float[max_id + 1];
+			m_y = new float[max_id + 1];
+			m_w = new float[max_id + 1];
+			m_h = new float[max_id + 1];
+			for (Box b : m_boxes)
+			{
+				int id = b.getId();
+				m_byId[id] = b;
+				m_w[id] = b.getWidth();
+				m_h[id] = b.getHeight();
+			}
+			m_x[root.getId()] = root.getX();
+			m_y[root.getId()] = root.getY();
+			for (int i = 0; i < m_boxes.length; i++)
+			{
+				int id = m_boxes[i].getId();
+				for (int j = m_firstChild[i]; j < m_firstChild[i + 1]; j++)
+				{
+					int c_id = m_children[j];
+					Box child = m_byId[c_id];
+					m_x[c_id] = m_x[id] + child.getRelativeX();
+					m_y[c_id] = m_y[id] + child.getRelativeY();
+				}
+			}
+		}
+
+		/**
+		 * Gets the ID of a box, if it is part of the snapshot.
+		 * @param b The box
+		 * @return The ID, or -1 if the box is not in the tree
+		 */
+		protected int getId(/*@ non_null @*/ Box b)
+		{
+			int id = b.getId();
+			return id < m_byId.length && (b == m_byId[id] || b.equals(m_byId[id])) ? id : -1;
+		}
+
+		/**
+		 * Determines if two boxes of the snapshot are disjoint, as
+		 * {@link Disjoint#evaluate()} does.
+		 * @param b1 The ID of the first box
+		 * @param b2 The ID of the second box
+		 * @return {@code true} if the boxes are disjoint
+		 */
+		protected boolean isDisjoint(int b1, int b2)
+		{
+			return m_x[b1] + m_w[b1] <= m_x[b2] || m_x[b2] + m_w[b2] <= m_x[b1]
+					|| m_y[b1] + m_h[b1] <= m_y[b2] || m_y[b2] + m_h[b2] <= m_y[b1];
+		}
+
+		/**
+		 * Determines if a box of the snapshot contains another, as
+		 * {@link Contained#evaluate()} does.
+		 * @param b1 The ID of the containing box
+		 * @param b2 The ID of the contained box
+		 * @return {@code true} if the first box contains the second
+		 */
+		protected boolean isContained(int b1, int b2)
+		{
+			return m_y[b1] <= m_y[b2] && m_y[b1] + m_h[b1] >= m_y[b2] + m_h[b2] && m_x[b1] <= m_x[b2] && m_x[b1] + m_w[b1] >= m_x[b2] + m_w[b2];
+		}
+
+		/**
+		 * Evaluates the constraints of a family owned by a box. The
+		 * containment and disjointness families over all the pairs of
+		 * children are evaluated from the arrays, and a constraint is only
+		 * created if it is violated.
+		 * @param family The family
+		 * @param i The index of the box in {@link #m_boxes}
+		 * @param r The result where the verdicts are recorded
+		 */
+		protected void check(/*@ non_null @*/ ConstraintFamily family, int i, /*@ non_null @*/ Result r)
+		{
+			Box parent = m_boxes[i];
+			int from = m_firstChild[i], to = m_firstChild[i + 1];
+			if (family instanceof Contained.Family)
+			{
+				int[] counts = r.getCounts(Contained.class);
+				for (int k = from; k < to; k++)
+				{
+					if (isContained(parent.getId(), m_children[k]))
+					{
+						counts[0]++;
+					}
+					else
+					{
+						r.add(new Contained(parent, m_byId[m_children[k]]), false);
+					}
+				}
+				return;
+			}
+			if (family instanceof Disjoint.Family && ((Disjoint.Family) family).m_margin < 0)
+			{
+				int[] counts = r.getCounts(Disjoint.class);
+				for (int k = from; k < to; k++)
+				{
+					for (int l = k + 1; l < to; l++)
+					{
+						if (isDisjoint(m_children[k], m_children[l]))
+						{
+							counts[0]++;
+						}
+						else
+						{
+							r.add(new Disjoint(m_byId[m_children[k]], m_byId[m_children[l]]), false);
+						}
+					}
+				}
+				return;
+			}
+			Iterator<LayoutConstraint> it = family.iterator(parent);
+			while (it.hasNext())
+			{
+				LayoutConstraint c = it.next();
+				r.add(c, evaluate(c));
+			}
+		}
+
+		/**
+		 * Evaluates a constraint from the geometry of its boxes. The
+		 * constraints of an unknown type, or involving a box outside the
+		 * tree, are evaluated by the constraint itself.
+		 * @param c The constraint
+		 * @return The verdict
+		 */
+		protected boolean evaluate(/*@ non_null @*/ LayoutConstraint c)
+		{
+			if (c instanceof Disjoint || c instanceof Contained)
+			{
+				BinaryLayoutConstraint blc = (BinaryLayoutConstraint) c;
+				int b1 = getId(blc.m_box1), b2 = getId(blc.m_box2);
+				if (b1 < 0 || b2 < 0)
+				{
+					return c.evaluate();
+				}
+				return c instanceof Disjoint ? isDisjoint(b1, b2) : isContained(b1, b2);
+			}
+			if (c instanceof SameX || c instanceof SameY)
+			{
+				float[] coordinates = c instanceof SameX ? m_x : m_y;
+				int first = -1;
+				for (Box b : ((MultiLayoutConstraint) c).m_boxes)
+				{
+					int id = getId(b);
+					if (id < 0)
+					{
+						return c.evaluate();
+					}
+					if (first < 0)
+					{
+						first = id;
+					}
+					else if (coordinates[first] != coordinates[id])
+					{
+						return false;
+					}
+				}
+				return true;
+			}
+			return c.evaluate();
+		}
+	}
+
+	/**
+	 * A task evaluating an interval of work units. The first units are the
+	 * constraints of an array; each following unit is a family and a box
+	 * of the snapshot, and stands for the constraints of the family owned
+	 * by the box. Intervals larger than {@link ConstraintChecker#s_threshold}
+	 * are split in two halves, which idle threads of the pool can then
+	 * steal, and the results of the halves are merged.
+	 */
+	protected static class CheckTask extends RecursiveTask<Result>
+	{
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The snapshot
+		 */
+		/*@ non_null @*/ protected final Snapshot m_snapshot;
+
+		/**
+		 * The constraints that are not part of a family
+		 */
+		/*@ non_null @*/ protected final LayoutConstraint[] m_constraints;
+
+		/**
+		 * The families of constraints
+		 */
+		/*@ non_null @*/ protected final ConstraintFamily[] m_families;
+
+		/**
+		 * The index of the first unit of the interval (inclusive)
+		 */
+		protected final int m_from;
+
+		/**
+		 * The index of the last unit of the interval (exclusive)
+		 */
+		protected final int m_to;
+
+		public CheckTask(/*@ non_null @*/ Snapshot snapshot, /*@ non_null @*/ LayoutConstraint[] constraints, /*@ non_null @*/ ConstraintFamily[] families, int from, int to)
+		{
+			super();
+			m_snapshot = snapshot;
+			m_constraints = constraints;
+			m_families = families;
+			m_from = from;
+			m_to = to;
+		}
+
+		@Override
+		protected Result compute()
+		{
+			if (m_to - m_from > s_threshold)
+			{
+				int middle = (m_from + m_to) >>> 1;
+				CheckTask left = new CheckTask(m_snapshot, m_constraints, m_families, m_from, middle);
+				CheckTask right = new CheckTask(m_snapshot, m_constraints, m_families, middle, m_to);
+				left.fork();
+				Result r = right.compute();
+				return left.join().merge(r);
+			}
+			Result r = new Result();
+			int num_boxes = m_snapshot.m_boxes.length;
+			for (int u = m_from; u < m_to; u++)
+			{
+				if (u < m_constraints.length)
+				{
+					LayoutConstraint c = m_constraints[u];
+					r.add(c, m_snapshot.evaluate(c));
+					continue;
+				}
+				int f = (u - m_constraints.length) / num_boxes;
+				m_snapshot.check(m_families[f], (u - m_constraints.length) % num_boxes, r);
+			}
+			return r;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of layout constraints defined by the structure of a tree of boxes,
+ * such as the containment of each box in its parent. The constraints are
+ * not stored: they are created as the set is iterated, and the ones
+ * involving a given box are found from the neighbors of the box in the
+ * tree. Each box of the tree owns the constraints between its children.
+ * The set cannot be modified.
+ */
+public abstract class ConstraintFamily extends AbstractSet<LayoutConstraint>
+{
+	/**
+	 * The root of the tree
+	 */
+	/*@ non_null @*/ protected final Box m_root;
+
+	/**
+	 * Creates a family of constraints over a tree of boxes.
+	 * @param root The root of the tree
+	 */
+	public ConstraintFamily(/*@ non_null @*/ Box root)
+	{
+		super();
+		m_root = root;
+	}
+
+	/**
+	 * Gets the root of the tree.
+	 * @return The root
+	 */
+	/*@ pure non_null @*/ public Box getRoot()
+	{
+		return m_root;
+	}
+
+	/**
+	 * Gets the constraints of the family that involve a box.
+	 * @param b The box
+	 * @return The constraints, created by this call
+	 */
+	/*@ non_null @*/ public abstract List<LayoutConstraint> getConstraints(/*@ non_null @*/ Box b);
+
+	/**
+	 * Gets the number of constraints owned by a box.
+	 * @param parent The box
+	 * @return The number of constraints
+	 */
+	protected abstract int count(/*@ non_null @*/ Box parent);
+
+	/**
+	 * Creates the constraints owned by a box, one at a time.
+	 * @param parent The box
+	 * @return An iterator over the constraints
+	 */
+	/*@ non_null @*/ protected abstract Iterator<LayoutConstraint> iterator(/*@ non_null @*/ Box parent);
+
+	@Override
+	public int size()
+	{
+		int size = 0;
+		List<Box> stack = new ArrayList<Box>();
+		stack.add(m_root);
+		while (!stack.isEmpty())
+		{
+			Box b = stack.remove(stack.size() - 1);
+			size += count(b);
+			stack.addAll(b.getChildren());
+		}
+		return size;
+	}
+
+	@Override
+	public Iterator<LayoutConstraint> iterator()
+	{
+		return new FamilyIterator();
+	}
+
+	/**
+	 * Determines if a box is part of the tree.
+	 * @param b The box
+	 * @return {@code true} if the box is the root or one of its descendants
+	 */
+	/*@ pure @*/ protected boolean isInTree(/*@ null @*/ Box b)
+	{
+		while (b != null)
+		{
+			if (b.equals(m_root))
+			{
+				return true;
+			}
+			b = b.getParent();
+		}
+		return false;
+	}
+
+	/**
+	 * Iterates over the constraints of the family by visiting the boxes of
+	 * the tree in pre-order.
+	 */
+	protected class FamilyIterator implements Iterator<LayoutConstraint>
+	{
+		/**
+		 * The boxes left to visit
+		 */
+		/*@ non_null @*/ protected final List<Box> m_stack;
+
+		/**
+		 * The constraints of the box being visited
+		 */
+		/*@ non_null @*/ protected Iterator<LayoutConstraint> m_current;
+
+		public FamilyIterator()
+		{
+			super();
+			m_stack = new ArrayList<Box>();
+			m_stack.add(m_root);
+			m_current = new ArrayList<LayoutConstraint>(0).iterator();
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			while (!m_current.hasNext())
+			{
+				if (m_stack.isEmpty())
+				{
+					return false;
+				}
+				Box b = m_stack.remove(m_stack.size() - 1);
+				List<Box> children = b.getChildren();
+				for (int i = children.size() - 1; i >= 0; i--)
+				{
+					m_stack.add(children.get(i));
+				}
+				m_current = iterator(b);
+			}
+			return true;
+		}
+
+		@Override
+		public LayoutConstraint next()
+		{
+			if (!hasNext())
+			{
+				throw new NoSuchElementException();
+			}
+			return m_current.next();
+		}
+	}
+}
@@ -0,0 +1,259 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the verdicts of a set of layout constraints up to date as the boxes
+ * of a page are modified. The tracker listens to the {@link PageContext} of
+ * the page and records the boxes that are moved or resized; a call to
+ * {@link #check()} then evaluates again only the constraints that involve
+ * these boxes, or the descendants of a box that has moved, and updates the
+ * set of violated constraints accordingly.
+ * <p>
+ * The constraints of a {@link ConstraintFamily} are not indexed: those
+ * involving a modified box are asked to the family when checking. Between
+ * two calls to {@link #check()}, the verdict of a constraint given by
+ * {@link LayoutConstraint#getVerdict()} may be out of date.
+ */
+public class ConstraintTracker implements PageContext.ChangeListener
+{
+	/**
+	 * The constraints that are not part of a family, indexed by the boxes
+	 * they involve
+	 */
+	/*@ non_null @*/ protected final Map<Box,List<LayoutConstraint>> m_index;
+
+	/**
+	 * The families of constraints
+	 */
+	/*@ non_null @*/ protected final List<ConstraintFamily> m_families;
+
+	/**
+	 * The boxes moved since the last check
+	 */
+	/*@ non_null @*/ protected final Set<Box> m_moved;
+
+	/**
+	 * The boxes resized since the last check
+	 */
+	/*@ non_null @*/ protected final Set<Box> m_resized;
+
+	/**
+	 * The constraints found to be violated by the last check
+	 */
+	/*@ non_null @*/ protected final Set<LayoutConstraint> m_violated;
+
+	/**
+	 * Whether all the constraints have been evaluated at least once
+	 */
+	protected boolean m_checked;
+
+	/**
+	 * The number of constraints evaluated by the last check
+	 */
+	protected int m_evaluated;
+
+	/**
+	 * Creates a new tracker.
+	 * @param constraints The sets of constraints to track
+	 */
+	@SafeVarargs
+	public ConstraintTracker(Set<LayoutConstraint> ... constraints)
+	{
+		super();
+		m_index = new HashMap<Box,List<LayoutConstraint>>();
+		m_families = new ArrayList<ConstraintFamily>();
+		m_moved = new HashSet<Box>();
+		m_resized = new HashSet<Box>();
+		m_violated = new HashSet<LayoutConstraint>();
+		m_checked = false;
+		m_evaluated = 0;
+		for (Set<LayoutConstraint> c : constraints)
+		{
+			addConstraints(c);
+		}
+	}
+
+	/**
+	 * Adds a set of constraints to track. A {@link ConstraintFamily} is kept
+	 * as is instead of being indexed. The next check evaluates all the
+	 * constraints.
+	 * @param constraints The set of constraints
+	 * @return This tracker
+	 */
+	public ConstraintTracker addConstraints(/*@ non_null @*/ Set<LayoutConstraint> constraints)
+	{
+		if (constraints instanceof ConstraintFamily)
+		{
+			m_families.add((ConstraintFamily) constraints);
+		}
+		else
+		{
+			for (LayoutConstraint c : constraints)
+			{
+				for (Box b : c.getBoxes())
+				{
+					List<LayoutConstraint> list = m_index.get(b);
+					if (list == null)
+					{
+						list = new ArrayList<LayoutConstraint>();
+						m_index.put(b, list);
+					}
+					list.add(c);
+				}
+			}
+		}
+		m_checked = false;
+		return this;
+	}
+
+	/**
+	 * Starts receiving the changes made to the boxes of a page.
+	 * @param root The root of the page
+	 * @return This tracker
+	 */
+	public ConstraintTracker watch(/*@ non_null @*/ Box root)
+	{
+		root.getContext().setListener(this);
+		return this;
+	}
+
+	@Override
+	public void boxMoved(Box b)
+	{
+		m_moved.add(b);
+	}
+
+	@Override
+	public void boxResized(Box b)
+	{
+		m_resized.add(b);
+	}
+
+	/**
+	 * Evaluates the constraints involving the boxes modified since the last
+	 * check, or all of them the first time.
+	 * @return The constraints that are violated
+	 */
+	/*@ non_null @*/ public Set<LayoutConstraint> check()
+	{
+		Set<LayoutConstraint> dirty = new HashSet<LayoutConstraint>();
+		if (!m_checked)
+		{
+			for (List<LayoutConstraint> list : m_index.values())
+			{
+				dirty.addAll(list);
+			}
+			for (ConstraintFamily family : m_families)
+			{
+				dirty.addAll(family);
+			}
+			m_violated.clear();
+			m_checked = true;
+		}
+		else
+		{
+			// A box that moves also moves its descendants
+			Set<Box> boxes = new HashSet<Box>(m_resized);
+			Set<Box> visited = new HashSet<Box>();
+			List<Box> to_visit = new ArrayList<Box>(m_moved);
+			while (!to_visit.isEmpty())
+			{
+				Box b = to_visit.remove(to_visit.size() - 1);
+				if (visited.add(b))
+				{
+					boxes.add(b);
+					to_visit.addAll(b.getChildren());
+				}
+			}
+			for (Box b : boxes)
+			{
+				addConstraints(b, dirty);
+			}
+			// A family may no longer list a violated constraint whose boxes
+			// have moved apart
+			for (LayoutConstraint c : m_violated)
+			{
+				if (!Collections.disjoint(c.getBoxes(), boxes))
+				{
+					dirty.add(c);
+				}
+			}
+		}
+		m_moved.clear();
+		m_resized.clear();
+		for (LayoutConstraint c : dirty)
+		{
+			c.invalidate();
+			if (c.getVerdict())
+			{
+				m_violated.remove(c);
+			}
+			else
+			{
+				m_violated.add(c);
+			}
+		}
+		m_evaluated = dirty.size();
+		return getViolated();
+	}
+
+	/**
+	 * Gets the constraints found to be violated by the last check.
+	 * @return The constraints
+	 */
+	/*@ pure non_null @*/ public Set<LayoutConstraint> getViolated()
+	{
+		return Collections.unmodifiableSet(m_violated);
+	}
+
+	/**
+	 * Gets the number of constraints evaluated by the last check.
+	 * @return The number of constraints
+	 */
+	/*@ pure @*/ public int getEvaluatedCount()
+	{
+		return m_evaluated;
+	}
+
+	/**
+	 * Adds the tracked constraints that involve a box to a set.
+	 * @param b The box
+	 * @param set The set
+	 */
+	protected void addConstraints(/*@ non_null @*/ Box b, /*@ non_null @*/ Set<LayoutConstraint> set)
+	{
+		List<LayoutConstraint> list = m_index.get(b);
+		if (list != null)
+		{
+			set.addAll(list);
+		}
+		for (ConstraintFamily family : m_families)
+		{
+			set.addAll(family.getConstraints(b));
+		}
+	}
+}
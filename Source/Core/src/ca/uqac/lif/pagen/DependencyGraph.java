@@ -0,0 +1,112 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The queries that can be asked to a graph of dependencies between box
+ * properties. The interface has no method to add edges: a graph handed
+ * out under this type, such as a {@link CompactDependencyGraph}, may be
+ * immutable. Edges are added through {@link BoxDependencyGraph}.
+ */
+public interface DependencyGraph
+{
+	/**
+	 * Gets the set of all box properties represented in this graph.
+	 * @return The set of properties
+	 */
+	public Set<BoxProperty> getNodes();
+	
+	/**
+	 * Gets the set of dependencies that influence a given box property.
+	 * @param bp The box property
+	 * @return The set of other box dependencies
+	 */
+	public Set<BoxDependency> getInfluencedBy(BoxProperty bp);
+	
+	/**
+	 * Gets the set of dependencies that influence a given box property.
+	 * @param bp The box property
+	 * @param transitive Set to {@code true} to perform a transitive scan
+	 * @return The set of other box dependencies
+	 */
+	public Set<BoxDependency> getInfluencedBy(BoxProperty bp, boolean transitive);
+	
+	/**
+	 * Gets the set of dependencies that are influenced by a given box
+	 * property.
+	 * @param bp The box property
+	 * @return The set of other box dependencies
+	 */
+	public Set<BoxDependency> getInfluences(BoxProperty bp);
+	
+	/**
+	 * Gets the set of dependencies that are influenced by a given box
+	 * property.
+	 * @param bp The box property
+	 * @param transitive Set to {@code true} to perform a transitive scan
+	 * @return The set of other box dependencies
+	 */
+	public Set<BoxDependency> getInfluences(BoxProperty bp, boolean transitive);
+	
+	/**
+	 * Gets the set of downstream dependencies for a given box and a given
+	 * property.
+	 * @param b The box
+	 * @param p The property
+	 * @return The set of other box dependencies
+	 */
+	public Set<BoxDependency> getDependencies(Box b, BoxProperty.Property p);
+	
+	/**
+	 * Determines if box b1 influences box b2
+	 * @param b1 The first box
+	 * @param b2 The second box
+	 * @return {@code true} if b1 influences b2, {@code false} otherwise
+	 */
+	public boolean influences(Box b1, Box b2);
+	
+	/**
+	 * Computes the transitive closure of a set of box properties. Each
+	 * property is associated with the delta properties of the nodes it
+	 * depends on, directly or not, without going through the other
+	 * properties of its own box.
+	 * @param start_list The box properties
+	 * @return The closure of each property
+	 */
+	public Map<BoxProperty,Set<BoxProperty>> getTransitiveClosure(Set<BoxProperty> start_list);
+	
+	/**
+	 * Computes the transitive closure of a set of box properties with
+	 * multiple threads.
+	 * @param start_list The box properties
+	 * @param threads The number of threads
+	 * @return The closure of each property
+	 */
+	public Map<BoxProperty,Set<BoxProperty>> getTransitiveClosure(Set<BoxProperty> start_list, int threads);
+	
+	/**
+	 * Computes the transitive closure of some box properties, or of all the
+	 * nodes of the graph if none is given.
+	 * @param starting_points The box properties
+	 * @return The closure of each property
+	 */
+	public Map<BoxProperty,Set<BoxProperty>> getTransitiveClosure(BoxProperty ... starting_points);
+}
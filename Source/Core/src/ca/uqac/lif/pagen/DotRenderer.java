@@ -28,10 +28,28 @@ public class DotRenderer extends BoxRenderer
 	
 	@Override
 	public void render(PrintStream ps, Box b)
+	{
+		printHeader(ps);
+		render(ps, b, -1);
+		printFooter(ps);
+	}
+	
+	/**
+	 * Prints the beginning of the graph, up to the first edge.
+	 * @param ps The print stream to print to
+	 */
+	protected static void printHeader(PrintStream ps)
 	{
 		ps.println("digraph G {");
 		ps.println("node [shape=\"circle\",fillstyle=\"solid\"]");
-		render(ps, b, -1);
+	}
+	
+	/**
+	 * Prints the end of the graph, after the last edge.
+	 * @param ps The print stream to print to
+	 */
+	protected static void printFooter(PrintStream ps)
+	{
 		ps.println("}");
 	}
 	
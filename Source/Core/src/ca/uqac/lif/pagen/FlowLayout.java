@@ -18,6 +18,8 @@
 package ca.uqac.lif.pagen;
 
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import ca.uqac.lif.synthia.Picker;
@@ -97,6 +99,12 @@ public abstract class FlowLayout implements LayoutManager
 	 */
 	protected float m_spacing;
 	
+	/**
+	 * Whether the layout manager records the constraints and dependencies
+	 * between the elements it arranges
+	 */
+	protected boolean m_record = true;
+	
 	/**
 	 * Creates a new flow layout manager
 	 * @param max_elements The maximum number of elements to 
@@ -112,6 +120,21 @@ public abstract class FlowLayout implements LayoutManager
 		m_dependencies = new HashSet<BoxDependency>();
 	}
 	
+	/**
+	 * Sets whether the layout manager records the constraints and
+	 * dependencies between the elements it arranges. Turning recording off
+	 * does not change the way the elements are arranged; it only keeps
+	 * the memory used by the layout manager from growing with the size of
+	 * the pages.
+	 * @param b Set to {@code false} to stop recording
+	 * @return This layout manager
+	 */
+	public FlowLayout setRecording(boolean b)
+	{
+		m_record = b;
+		return this;
+	}
+	
 	/**
 	 * Sets a Boolean picker to determine if an alignment fault is to
 	 * be injected.
@@ -177,6 +200,71 @@ public abstract class FlowLayout implements LayoutManager
 		return m_overflowCount;
 	}
 	
+	@Override
+	public FlowLayout duplicate(boolean with_state)
+	{
+		return duplicate(with_state, new IdentityHashMap<Picker<?>,Picker<?>>());
+	}
+	
+	/**
+	 * Creates a copy of this layout manager. Pickers are copied through a
+	 * map shared between the layout managers duplicated together, so that a
+	 * picker shared by several of them in the original is also shared by
+	 * their copies.
+	 * @param with_state Set to {@code true} to also copy the constraints and
+	 * dependencies accumulated so far
+	 * @param copies A map from the pickers already copied to their copy
+	 * @return The copy
+	 */
+	public abstract FlowLayout duplicate(boolean with_state, Map<Picker<?>,Picker<?>> copies);
+	
+	/**
+	 * Copies the pickers and, optionally, the state of this layout manager
+	 * into another one.
+	 * @param fl The layout manager to copy into
+	 * @param with_state Set to {@code true} to also copy the constraints and
+	 * dependencies accumulated so far
+	 * @param copies A map from the pickers already copied to their copy
+	 */
+	protected void copyInto(FlowLayout fl, boolean with_state, Map<Picker<?>,Picker<?>> copies)
+	{
+		fl.m_spacing = m_spacing;
+		fl.m_record = m_record;
+		fl.m_injectAlignementFault = duplicate(m_injectAlignementFault, with_state, copies);
+		fl.m_shiftPicker = duplicate(m_shiftPicker, with_state, copies);
+		fl.m_injectOverlapFault = duplicate(m_injectOverlapFault, with_state, copies);
+		fl.m_overlapPicker = duplicate(m_overlapPicker, with_state, copies);
+		fl.m_injectOverflowFault = duplicate(m_injectOverflowFault, with_state, copies);
+		fl.m_overflowPicker = duplicate(m_overflowPicker, with_state, copies);
+		if (with_state)
+		{
+			fl.m_constraints.addAll(m_constraints);
+			fl.m_dependencies.addAll(m_dependencies);
+			fl.m_misalignmentCount = m_misalignmentCount;
+			fl.m_overlapCount = m_overlapCount;
+			fl.m_overflowCount = m_overflowCount;
+		}
+	}
+	
+	/**
+	 * Duplicates a picker, unless a copy of it has already been made.
+	 * @param p The picker
+	 * @param with_state Whether to copy the state of the picker
+	 * @param copies A map from the pickers already copied to their copy
+	 * @return The copy of the picker
+	 */
+	@SuppressWarnings("unchecked")
+	protected static <T> Picker<T> duplicate(Picker<T> p, boolean with_state, Map<Picker<?>,Picker<?>> copies)
+	{
+		Picker<T> copy = (Picker<T>) copies.get(p);
+		if (copy == null)
+		{
+			copy = p.duplicate(with_state);
+			copies.put(p, copy);
+		}
+		return copy;
+	}
+	
 	@Override
 	public Set<LayoutConstraint> getConstraints()
 	{
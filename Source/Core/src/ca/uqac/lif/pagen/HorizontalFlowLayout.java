@@ -18,6 +18,7 @@
 package ca.uqac.lif.pagen;
 
 import java.util.List;
+import java.util.Map;
 
 import ca.uqac.lif.synthia.Picker;
 import ca.uqac.lif.synthia.util.Constant;
@@ -43,6 +44,14 @@ public class HorizontalFlowLayout extends FlowLayout
 		this(new Constant<Integer>(0));
 	}
 
+	@Override
+	public HorizontalFlowLayout duplicate(boolean with_state, Map<Picker<?>,Picker<?>> copies)
+	{
+		HorizontalFlowLayout hfl = new HorizontalFlowLayout(duplicate(m_maxElements, with_state, copies));
+		copyInto(hfl, with_state, copies);
+		return hfl;
+	}
+
 	@Override
 	public void arrange(Box parent, List<Box> children)
 	{
@@ -60,14 +69,17 @@ public class HorizontalFlowLayout extends FlowLayout
 		{
 			Box b = children.get(i);
 			parent.addChild(b);
-			BoxProperty bp_x = BoxProperty.get(children.get(i), BoxProperty.Property.X);
-			BoxProperty bp_y = BoxProperty.get(children.get(i), BoxProperty.Property.Y);
-			m_dependencies.add(new BoxDependency(bp_x, BoxProperty.get(parent, BoxProperty.Property.X)));
-			m_dependencies.add(new BoxDependency(bp_y, BoxProperty.get(parent, BoxProperty.Property.Y)));
-			if (i > 0)
+			if (m_record)
 			{
-				m_dependencies.add(new BoxDependency(bp_x, BoxProperty.get(children.get(i - 1), BoxProperty.Property.X)));
-				m_dependencies.add(new BoxDependency(bp_x, BoxProperty.get(children.get(i - 1), BoxProperty.Property.W)));
+				BoxProperty bp_x = BoxProperty.get(children.get(i), BoxProperty.Property.X);
+				BoxProperty bp_y = BoxProperty.get(children.get(i), BoxProperty.Property.Y);
+				m_dependencies.add(new BoxDependency(bp_x, BoxProperty.get(parent, BoxProperty.Property.X)));
+				m_dependencies.add(new BoxDependency(bp_y, BoxProperty.get(parent, BoxProperty.Property.Y)));
+				if (i > 0)
+				{
+					m_dependencies.add(new BoxDependency(bp_x, BoxProperty.get(children.get(i - 1), BoxProperty.Property.X)));
+					m_dependencies.add(new BoxDependency(bp_x, BoxProperty.get(children.get(i - 1), BoxProperty.Property.W)));
+				}
 			}
 			boolean alignment_toss = m_injectAlignementFault.pick();
 			float y_shift = 0;
@@ -105,14 +117,14 @@ public class HorizontalFlowLayout extends FlowLayout
 				x = p_padding;
 				y += max_y + m_spacing;
 				max_y = 0;
-				if (const_align.isValid())
+				if (m_record && const_align.isValid())
 				{
 					m_constraints.add(const_align);
 				}
 				const_align = new LayoutConstraint.SameY();
 			}
 		}
-		if (const_align.isValid())
+		if (m_record && const_align.isValid())
 		{
 			m_constraints.add(const_align);
 		}
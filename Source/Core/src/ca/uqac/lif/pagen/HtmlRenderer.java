@@ -33,6 +33,17 @@ public abstract class HtmlRenderer extends BoxRenderer
 	
 	@Override
 	public void render(/*@ non_null @*/ PrintStream ps, /*@ non_null @*/ Box b)
+	{
+		printHeader(ps);
+		toHtml(ps, b, "");
+		printFooter(ps);
+	}
+	
+	/**
+	 * Prints the beginning of the HTML document, up to the first box.
+	 * @param ps The print stream to print to
+	 */
+	protected static void printHeader(/*@ non_null @*/ PrintStream ps)
 	{
 		ps.println("<!DOCTYPE html>");
 		ps.println("<html>");
@@ -53,7 +64,14 @@ public abstract class HtmlRenderer extends BoxRenderer
 		ps.println("</head>");
 		ps.println("<body>");
 		ps.println("<div style=\"position:absolute;left:0px;top:0px\">");
-		toHtml(ps, b, "");
+	}
+	
+	/**
+	 * Prints the end of the HTML document, after the last box.
+	 * @param ps The print stream to print to
+	 */
+	protected static void printFooter(/*@ non_null @*/ PrintStream ps)
+	{
 		ps.println("</div>");
 		ps.println("</body>");
 		ps.println("</html>");
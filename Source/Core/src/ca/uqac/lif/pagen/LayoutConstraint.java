@@ -17,10 +17,15 @@
  */
 package ca.uqac.lif.pagen;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -44,7 +49,7 @@ public abstract class LayoutConstraint
 	 * @param constraints The set of constraints
 	 * @return The map
 	 */
-	public static Map<BoxProperty,Set<LayoutConstraint>> indexProperties(BoxDependencyGraph g, Set<LayoutConstraint> constraints)
+	public static Map<BoxProperty,Set<LayoutConstraint>> indexProperties(DependencyGraph g, Set<LayoutConstraint> constraints)
 	{
 
 		Map<BoxProperty,Set<LayoutConstraint>> constraint_index = new HashMap<BoxProperty,Set<LayoutConstraint>>();
@@ -90,6 +95,16 @@ public abstract class LayoutConstraint
 		return m_verdict;
 	}
 
+	/**
+	 * Discards the verdict of the constraint, so that it is evaluated again
+	 * the next time it is asked for. This must be called when one of its
+	 * boxes has been moved or resized.
+	 */
+	public final void invalidate()
+	{
+		m_verdict = null;
+	}
+
 	/**
 	 * Determines if a box is involved in the constraint.
 	 * @param b The box
@@ -111,14 +126,14 @@ public abstract class LayoutConstraint
 	 * @param g The graph of box dependencies extracted from the page
 	 * @return The set of box properties
 	 */
-	/*@ non_null @*/ public abstract Set<BoxProperty> getBoxProperties(/*@ non_null @*/ BoxDependencyGraph g, /*@ null @*/ BoxProperty bp);
+	/*@ non_null @*/ public abstract Set<BoxProperty> getBoxProperties(/*@ non_null @*/ DependencyGraph g, /*@ null @*/ BoxProperty bp);
 
 	/**
 	 * Gets the set of all box properties involved in the constraint.
 	 * @param g The graph of box dependencies extracted from the page.
 	 * @return The set of box properties
 	 */
-	/*@ non_null @*/ public final Set<BoxProperty> getBoxProperties(/*@ non_null @*/ BoxDependencyGraph g)
+	/*@ non_null @*/ public final Set<BoxProperty> getBoxProperties(/*@ non_null @*/ DependencyGraph g)
 	{
 		return getBoxProperties(g, null);
 	}
@@ -208,7 +223,7 @@ public abstract class LayoutConstraint
 		@Override
 		public int hashCode()
 		{
-			return m_box1.hashCode() + m_box2.hashCode();
+			return 65599 * m_box1.hashCode() + m_box2.hashCode();
 		}
 
 		@Override
@@ -369,7 +384,7 @@ public abstract class LayoutConstraint
 		}
 
 		@Override
-		public Set<BoxProperty> getBoxProperties(BoxDependencyGraph g, BoxProperty bp)
+		public Set<BoxProperty> getBoxProperties(DependencyGraph g, BoxProperty bp)
 		{
 			Set<BoxProperty> props = new HashSet<BoxProperty>();
 			Box current = null;
@@ -461,7 +476,7 @@ public abstract class LayoutConstraint
 		}
 
 		@Override
-		public Set<BoxProperty> getBoxProperties(BoxDependencyGraph g, BoxProperty bp)
+		public Set<BoxProperty> getBoxProperties(DependencyGraph g, BoxProperty bp)
 		{
 			Set<BoxProperty> props = new HashSet<BoxProperty>();
 			Box current = null;
@@ -510,7 +525,7 @@ public abstract class LayoutConstraint
 		}
 
 		@Override
-		public Set<BoxProperty> getBoxProperties(BoxDependencyGraph g, BoxProperty bp)
+		public Set<BoxProperty> getBoxProperties(DependencyGraph g, BoxProperty bp)
 		{
 			Set<BoxProperty> props = new HashSet<BoxProperty>();
 			if (DISABLE_DISJOINT)
@@ -698,6 +713,283 @@ public abstract class LayoutConstraint
 				addDisjointnessConstraints(children.get(i), set);
 			}
 		}
+
+		/**
+		 * Parses a box tree and generates the disjointness constraints between
+		 * the children of a parent box that are close to each other.
+		 * @param b The parent box
+		 * @param margin The largest distance between two boxes, along each
+		 * axis, for which a constraint is generated. A negative value
+		 * generates the constraints between all the children.
+		 * @return The set of constraints
+		 */
+		public static Set<LayoutConstraint> addContainmentConstraints(Box b, float margin)
+		{
+			Set<LayoutConstraint> set = new HashSet<LayoutConstraint>();
+			addDisjointnessConstraints(b, set, margin);
+			return set;
+		}
+
+		/**
+		 * Recursively parses a box tree and generates the disjointness
+		 * constraints between the children of a parent box that are close to
+		 * each other.
+		 * @param b The parent box
+		 * @param set The set of constraints. Constraints will be added into
+		 * that set
+		 * @param margin The largest distance between two boxes for which a
+		 * constraint is generated
+		 */
+		protected static void addDisjointnessConstraints(Box b, Set<LayoutConstraint> set, float margin)
+		{
+			if (margin < 0)
+			{
+				addDisjointnessConstraints(b, set);
+				return;
+			}
+			set.addAll(sweep(b, margin));
+			for (Box child : b.getChildren())
+			{
+				addDisjointnessConstraints(child, set, margin);
+			}
+		}
+
+		/**
+		 * Determines if two boxes are close to each other. This is the case if
+		 * the gap between their projections on each axis is at most a given
+		 * margin; two boxes that overlap are therefore always close.
+		 * @param b1 The first box
+		 * @param b2 The second box
+		 * @param margin The margin
+		 * @return {@code true} if the boxes are close, {@code false} otherwise
+		 */
+		public static boolean isNear(Box b1, Box b2, float margin)
+		{
+			float gap_x = Math.max(b1.getX() - (b2.getX() + b2.getWidth()), b2.getX() - (b1.getX() + b1.getWidth()));
+			float gap_y = Math.max(b1.getY() - (b2.getY() + b2.getHeight()), b2.getY() - (b1.getY() + b1.getHeight()));
+			return gap_x <= margin && gap_y <= margin;
+		}
+
+		/**
+		 * Generates the disjointness constraints between the children of a
+		 * box that are close to each other, without examining every pair. The
+		 * children are sorted along the axis on which they are the most spread
+		 * out, and swept in that order while keeping the boxes whose
+		 * projection still reaches the current one; only these boxes are
+		 * checked on the other axis.
+		 * @param parent The parent box
+		 * @param margin The largest distance between two boxes for which a
+		 * constraint is generated
+		 * @return The constraints; the first box of each one comes first among
+		 * the children of the parent
+		 */
+		/*@ non_null @*/ protected static List<LayoutConstraint> sweep(/*@ non_null @*/ Box parent, float margin)
+		{
+			final List<Box> children = parent.getChildren();
+			List<LayoutConstraint> out = new ArrayList<LayoutConstraint>();
+			int k = children.size();
+			if (k < 2)
+			{
+				return out;
+			}
+			float min_x = Float.MAX_VALUE, max_x = -Float.MAX_VALUE, min_y = Float.MAX_VALUE, max_y = -Float.MAX_VALUE;
+			for (Box b : children)
+			{
+				min_x = Math.min(min_x, b.getX());
+				max_x = Math.max(max_x, b.getX());
+				min_y = Math.min(min_y, b.getY());
+				max_y = Math.max(max_y, b.getY());
+			}
+			final boolean on_x = max_x - min_x >= max_y - min_y;
+			final float[] start = new float[k];
+			float[] end = new float[k];
+			Integer[] order = new Integer[k];
+			for (int i = 0; i < k; i++)
+			{
+				Box b = children.get(i);
+				start[i] = on_x ? b.getX() : b.getY();
+				end[i] = start[i] + (on_x ? b.getWidth() : b.getHeight());
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>()
+			{
+				@Override
+				public int compare(Integer i, Integer j)
+				{
+					return Float.compare(start[i], start[j]);
+				}
+			});
+			List<Integer> active = new ArrayList<Integer>();
+			for (int i : order)
+			{
+				int kept = 0;
+				for (int a : active)
+				{
+					if (end[a] + margin >= start[i])
+					{
+						active.set(kept++, a);
+						if (isNear(children.get(a), children.get(i), margin))
+						{
+							out.add(new Disjoint(children.get(Math.min(a, i)), children.get(Math.max(a, i))));
+						}
+					}
+				}
+				active.subList(kept, active.size()).clear();
+				active.add(i);
+			}
+			return out;
+		}
+
+		/**
+		 * Gets the disjointness constraints between the children of each box
+		 * of a tree, without creating them in advance.
+		 * @param b The root of the tree
+		 * @return The family of constraints
+		 */
+		/*@ non_null @*/ public static ConstraintFamily getFamily(/*@ non_null @*/ Box b)
+		{
+			return new Family(b);
+		}
+
+		/**
+		 * Gets the disjointness constraints between the children of each box
+		 * of a tree that are close to each other, without creating them in
+		 * advance.
+		 * @param b The root of the tree
+		 * @param margin The largest distance between two boxes for which a
+		 * constraint is part of the family. A negative value includes all the
+		 * pairs of children.
+		 * @return The family of constraints
+		 */
+		/*@ non_null @*/ public static ConstraintFamily getFamily(/*@ non_null @*/ Box b, float margin)
+		{
+			return new Family(b, margin);
+		}
+
+		/**
+		 * The disjointness constraints between the children of each box of a
+		 * tree. A box has one constraint with each of its siblings, or only
+		 * with those that are close to it if a margin is given; the first
+		 * box of a constraint is the one that comes first among the children
+		 * of their parent.
+		 */
+		public static class Family extends ConstraintFamily
+		{
+			/**
+			 * The largest distance between two boxes for which a constraint is
+			 * part of the family, or a negative value to include all the pairs
+			 */
+			protected final float m_margin;
+
+			public Family(/*@ non_null @*/ Box root)
+			{
+				this(root, -1);
+			}
+
+			public Family(/*@ non_null @*/ Box root, float margin)
+			{
+				super(root);
+				m_margin = margin;
+			}
+
+			@Override
+			public List<LayoutConstraint> getConstraints(Box b)
+			{
+				List<LayoutConstraint> out = new ArrayList<LayoutConstraint>();
+				Box parent = b.getParent();
+				if (b.equals(m_root) || parent == null || !isInTree(parent))
+				{
+					return out;
+				}
+				List<Box> siblings = parent.getChildren();
+				int position = siblings.indexOf(b);
+				for (int i = 0; i < siblings.size(); i++)
+				{
+					if (m_margin >= 0 && i != position && !isNear(b, siblings.get(i), m_margin))
+					{
+						continue;
+					}
+					if (i < position)
+					{
+						out.add(new Disjoint(siblings.get(i), b));
+					}
+					else if (i > position)
+					{
+						out.add(new Disjoint(b, siblings.get(i)));
+					}
+				}
+				return out;
+			}
+
+			@Override
+			public boolean contains(Object o)
+			{
+				if (!(o instanceof Disjoint))
+				{
+					return false;
+				}
+				Disjoint d = (Disjoint) o;
+				Box parent = d.m_box1.getParent();
+				if (parent == null || !parent.equals(d.m_box2.getParent()) || !isInTree(parent))
+				{
+					return false;
+				}
+				List<Box> siblings = parent.getChildren();
+				int i = siblings.indexOf(d.m_box1), j = siblings.indexOf(d.m_box2);
+				return i >= 0 && i < j && (m_margin < 0 || isNear(d.m_box1, d.m_box2, m_margin));
+			}
+
+			@Override
+			protected int count(Box parent)
+			{
+				if (m_margin >= 0)
+				{
+					return sweep(parent, m_margin).size();
+				}
+				int k = parent.getChildren().size();
+				return k * (k - 1) / 2;
+			}
+
+			@Override
+			protected Iterator<LayoutConstraint> iterator(final Box parent)
+			{
+				if (m_margin >= 0)
+				{
+					return sweep(parent, m_margin).iterator();
+				}
+				return new Iterator<LayoutConstraint>()
+				{
+					protected final List<Box> m_children = parent.getChildren();
+
+					protected int m_i = 0;
+
+					protected int m_j = 1;
+
+					@Override
+					public boolean hasNext()
+					{
+						return m_j < m_children.size();
+					}
+
+					@Override
+					public LayoutConstraint next()
+					{
+						if (!hasNext())
+						{
+							throw new NoSuchElementException();
+						}
+						Disjoint d = new Disjoint(m_children.get(m_i), m_children.get(m_j));
+						m_j++;
+						if (m_j == m_children.size())
+						{
+							m_i++;
+							m_j = m_i + 1;
+						}
+						return d;
+					}
+				};
+			}
+		}
 	}
 
 	public static class Contained extends BinaryLayoutConstraint
@@ -736,7 +1028,7 @@ public abstract class LayoutConstraint
 		}
 
 		@Override
-		public Set<BoxProperty> getBoxProperties(BoxDependencyGraph g, BoxProperty bp)
+		public Set<BoxProperty> getBoxProperties(DependencyGraph g, BoxProperty bp)
 		{
 			Set<BoxProperty> props = new HashSet<BoxProperty>();
 			if (DISABLE_CONTAIN)
@@ -906,5 +1198,85 @@ public abstract class LayoutConstraint
 				addContainmentConstraints(child, set);
 			}
 		}
+
+		/**
+		 * Gets the containment constraints between each box of a tree and its
+		 * children, without creating them in advance.
+		 * @param b The root of the tree
+		 * @return The family of constraints
+		 */
+		/*@ non_null @*/ public static ConstraintFamily getFamily(/*@ non_null @*/ Box b)
+		{
+			return new Family(b);
+		}
+
+		/**
+		 * The containment constraints between each box of a tree and its
+		 * children.
+		 */
+		public static class Family extends ConstraintFamily
+		{
+			public Family(/*@ non_null @*/ Box root)
+			{
+				super(root);
+			}
+
+			@Override
+			public List<LayoutConstraint> getConstraints(Box b)
+			{
+				List<LayoutConstraint> out = new ArrayList<LayoutConstraint>();
+				if (!isInTree(b))
+				{
+					return out;
+				}
+				if (!b.equals(m_root))
+				{
+					out.add(new Contained(b.getParent(), b));
+				}
+				for (Box child : b.getChildren())
+				{
+					out.add(new Contained(b, child));
+				}
+				return out;
+			}
+
+			@Override
+			public boolean contains(Object o)
+			{
+				if (!(o instanceof Contained))
+				{
+					return false;
+				}
+				Contained c = (Contained) o;
+				return c.m_box1.equals(c.m_box2.getParent()) && isInTree(c.m_box1);
+			}
+
+			@Override
+			protected int count(Box parent)
+			{
+				return parent.getChildren().size();
+			}
+
+			@Override
+			protected Iterator<LayoutConstraint> iterator(final Box parent)
+			{
+				return new Iterator<LayoutConstraint>()
+				{
+					protected final Iterator<Box> m_children = parent.getChildren().iterator();
+
+					@Override
+					public boolean hasNext()
+					{
+						return m_children.hasNext();
+					}
+
+					@Override
+					public LayoutConstraint next()
+					{
+						return new Contained(parent, m_children.next());
+					}
+				};
+			}
+		}
 	}
 }
\ No newline at end of file
@@ -49,4 +49,12 @@ public interface LayoutManager
 	 * @return The set of box dependencies
 	 */
 	public Set<BoxDependency> getDependencies();
+	
+	/**
+	 * Creates a copy of this layout manager
+	 * @param with_state Set to {@code true} to also copy the constraints and
+	 * dependencies accumulated so far
+	 * @return The copy
+	 */
+	public LayoutManager duplicate(boolean with_state);
 }
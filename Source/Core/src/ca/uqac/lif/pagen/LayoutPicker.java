@@ -17,13 +17,99 @@
  */
 package ca.uqac.lif.pagen;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 import ca.uqac.lif.synthia.Picker;
 import ca.uqac.lif.synthia.util.Choice;
 
+/**
+ * A random choice between a set of layout managers. Contrary to a plain
+ * {@link Choice}, the picker keeps track of its layout managers, so that
+ * {@link #duplicate(boolean) duplicating} it also duplicates them. Each
+ * copy can then be used by its own thread.
+ */
 public class LayoutPicker extends Choice<LayoutManager>
 {
+	/**
+	 * The picker used to select a layout manager
+	 */
+	/*@ non_null @*/ protected final Picker<Float> m_floatSource;
+	
+	/**
+	 * The layout managers to choose from
+	 */
+	/*@ non_null @*/ protected final List<LayoutManager> m_layouts;
+	
+	/**
+	 * The probability associated to each layout manager
+	 */
+	/*@ non_null @*/ protected final List<Double> m_probabilities;
+	
 	public LayoutPicker(Picker<Float> picker)
 	{
 		super(picker);
+		m_floatSource = picker;
+		m_layouts = new ArrayList<LayoutManager>();
+		m_probabilities = new ArrayList<Double>();
+	}
+	
+	/**
+	 * Adds a layout manager to choose from.
+	 * @param layout The layout manager
+	 * @param probability The probability of choosing this layout manager
+	 * @return This picker
+	 */
+	public LayoutPicker addLayout(LayoutManager layout, double probability)
+	{
+		add(layout, probability);
+		m_layouts.add(layout);
+		m_probabilities.add(probability);
+		return this;
+	}
+	
+	/**
+	 * Gets the layout managers to choose from.
+	 * @return The list of layout managers
+	 */
+	/*@ pure non_null @*/ public List<LayoutManager> getLayouts()
+	{
+		return m_layouts;
+	}
+	
+	@Override
+	public LayoutPicker duplicate(boolean with_state)
+	{
+		return duplicate(with_state, new IdentityHashMap<Picker<?>,Picker<?>>());
+	}
+	
+	/**
+	 * Creates a copy of this picker. Pickers are copied through a map, so
+	 * that a picker shared by several layout managers in the original is
+	 * also shared by their copies.
+	 * @param with_state Set to {@code true} to copy the state of the pickers
+	 * and of the layout managers
+	 * @param copies A map from the pickers already copied to their copy
+	 * @return The copy
+	 */
+	public LayoutPicker duplicate(boolean with_state, Map<Picker<?>,Picker<?>> copies)
+	{
+		LayoutPicker lp = new LayoutPicker(FlowLayout.duplicate(m_floatSource, with_state, copies));
+		for (int i = 0; i < m_layouts.size(); i++)
+		{
+			LayoutManager layout = m_layouts.get(i);
+			if (layout instanceof FlowLayout)
+			{
+				layout = ((FlowLayout) layout).duplicate(with_state, copies);
+			}
+			else
+			{
+				layout = layout.duplicate(with_state);
+			}
+			lp.addLayout(layout, m_probabilities.get(i));
+		}
+		return lp;
 	}
 }
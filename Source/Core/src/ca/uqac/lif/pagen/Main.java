@@ -17,9 +17,11 @@
  */
 package ca.uqac.lif.pagen;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.HashSet;
 import java.util.Set;
@@ -28,19 +30,15 @@ import ca.uqac.lif.pagen.CliParser.Argument;
 import ca.uqac.lif.pagen.CliParser.ArgumentMap;
 import ca.uqac.lif.pagen.LayoutConstraint.Contained;
 import ca.uqac.lif.pagen.LayoutConstraint.Disjoint;
+import ca.uqac.lif.pagen.LayoutConstraint.SameX;
+import ca.uqac.lif.pagen.LayoutConstraint.SameY;
 import ca.uqac.lif.pagen.opl.DependencyGraphRenderer;
 import ca.uqac.lif.pagen.opl.OplAbsoluteRenderer;
 import ca.uqac.lif.pagen.opl.OplRelativeRenderer;
-import ca.uqac.lif.synthia.Picker;
-import ca.uqac.lif.synthia.random.RandomFloat;
-import ca.uqac.lif.synthia.util.Choice;
-import ca.uqac.lif.synthia.random.PoissonInteger;
-import ca.uqac.lif.synthia.random.RandomBoolean;
-import ca.uqac.lif.synthia.random.RandomInteger;
 
 public class Main 
 {
-	public static void main(String[] args) throws FileNotFoundException 
+	public static void main(String[] args) throws IOException 
 	{
 		// Program defaults
 		int seed = -1;
@@ -50,6 +48,8 @@ public class Main
 		float p_misalignment = 0.1f, p_overlap = 0.1f, p_overflow = 0.1f;
 		String type = "html";
 		boolean quiet = false, flat = false;
+		int count = 0, threads = 0, size = 0;
+		File output_dir = new File(".");
 		PrintStream out = System.out;
 
 		// Override by CLI parameters
@@ -96,136 +96,301 @@ public class Main
 		{
 			type = arg_map.get("type");
 		}
-		if (arg_map.hasOption("output"))
+		if (arg_map.hasOption("count"))
 		{
-			String filename = arg_map.get("output");
-			out = new PrintStream(new FileOutputStream(new File(filename)));
+			count = Integer.parseInt(arg_map.get("count").trim());
+		}
+		if (arg_map.hasOption("threads"))
+		{
+			threads = Integer.parseInt(arg_map.get("threads").trim());
+		}
+		if (arg_map.hasOption("size"))
+		{
+			size = Integer.parseInt(arg_map.get("size").trim());
+		}
+		if (arg_map.hasOption("output-dir"))
+		{
+			output_dir = new File(arg_map.get("output-dir"));
 		}
 		if (arg_map.hasOption("flat"))
 		{
 			flat = true;
 		}
+		boolean split_streams = arg_map.hasOption("split-streams");
+		float margin = -1;
+		if (arg_map.hasOption("margin"))
+		{
+			margin = Float.parseFloat(arg_map.get("margin").trim());
+		}
+		boolean stream = arg_map.hasOption("stream");
+		boolean stream_html = stream && type.compareToIgnoreCase("html") == 0 && !flat;
+		if (stream && !stream_html && type.compareToIgnoreCase("dot") != 0)
+		{
+			System.err.println("Streaming is only available for nested HTML and DOT output");
+			System.exit(1);
+		}
+		if (stream_html && !arg_map.hasOption("output"))
+		{
+			System.err.println("Streaming HTML output requires an output file");
+			System.exit(1);
+		}
+		if (stream && arg_map.hasOption("check"))
+		{
+			// The boxes are detached from the tree as soon as they are written
+			System.err.println("Constraints cannot be checked on a streamed page");
+			System.exit(1);
+		}
+		boolean relative = arg_map.hasOption("relative");
+		boolean show_deps = arg_map.hasOption("show-deps");
+		boolean components = arg_map.hasOption("components");
+		if (components && (type.compareToIgnoreCase("opl") != 0 || !relative || show_deps))
+		{
+			System.err.println("Splitting into components is only available for relative OPL models");
+			System.exit(1);
+		}
+		if (split_streams && size > 0)
+		{
+			// The shape of a subtree depends on its budget, not only on its seed
+			System.err.println("Random streams cannot be split for trees of a fixed size");
+			System.exit(1);
+		}
+		if (count == 0 && !stream_html && !components && arg_map.hasOption("output"))
+		{
+			String filename = arg_map.get("output");
+			out = new PrintStream(new FileOutputStream(new File(filename)));
+		}
 
-		// Initialize RNGs and seed
-		RandomInteger depth = new RandomInteger(min_depth, max_depth); // 6-22
-		PoissonInteger degree = new PoissonInteger(p_degree);
-		RandomFloat width = new RandomFloat(5, 20);
-		RandomFloat height = new RandomFloat(5, 10);
-		RandomFloat float_source = new RandomFloat();
-		RandomInteger row_size = new RandomInteger(0, 10);
-		RandomInteger column_size = new RandomInteger(0, 10);
-		RandomBoolean misalignment = new RandomBoolean(p_misalignment);
-		RandomInteger misalignment_shift = new RandomInteger(2, 10);
-		RandomBoolean overlap = new RandomBoolean(p_overlap);
-		RandomInteger overlap_shift = new RandomInteger(2, 10);
-		RandomBoolean overflow = new RandomBoolean(p_overflow);
-		RandomInteger overflow_shift = new RandomInteger(2, 10);
-		Choice<LayoutManager> layout = new Choice<LayoutManager>(float_source);
-		RandomInteger rand_color = new RandomInteger(128,255);
-		Picker<String> color = new ColorPicker(rand_color);
-		if (seed >= 0)
-		{
-			depth.setSeed(seed);
-			degree.setSeed(seed + 1);
-			float_source.setSeed(seed + 2);
-			width.setSeed(seed + 3);
-			height.setSeed(seed + 4);
-			row_size.setSeed(seed + 5);
-			column_size.setSeed(seed + 6);
-			misalignment_shift.setSeed(seed + 7);
-			misalignment.setSeed(seed + 8);
-			overlap_shift.setSeed(seed + 9);
-			overlap.setSeed(seed + 10);
-			overflow_shift.setSeed(seed + 11);
-			overflow.setSeed(seed + 12);
-			rand_color.setSeed(seed + 13);
+		// Setup page generator
+		PageGenerator generator = new PageGenerator().setDepth(min_depth, max_depth)
+				.setDegree(p_degree).setMisalignment(p_misalignment)
+				.setOverlap(p_overlap).setOverflow(p_overflow)
+				.setSplitStreams(split_streams);
+		if (size > 0)
+		{
+			// With a fixed size, the depth range only applies if given explicitly
+			generator.setSize(size, arg_map.hasOption("min-depth") ? min_depth : 0, arg_map.hasOption("max-depth") ? max_depth : 0);
+		}
+		if (count > 0)
+		{
+			BatchGenerator batch = new BatchGenerator(generator, output_dir, type, flat, relative, show_deps).setMargin(margin).setComponents(components);
+			if (threads > 0)
+			{
+				batch.setThreads(threads);
+			}
+			long start = System.nanoTime();
+			batch.generate(seed, count);
+			long elapsed = System.nanoTime() - start;
+			if (!quiet)
+			{
+				double seconds = elapsed / 1e9;
+				System.err.println("Pages:                    " + count);
+				System.err.println("Bytes written:            " + batch.getBytesWritten());
+				System.err.println("Elapsed time (s):         " + String.format("%.3f", seconds));
+				System.err.println("Pages/sec:                " + String.format("%.1f", count / seconds));
+			}
+			return;
 		}
+		Page page;
+		int num_components = 0;
+		if (stream_html)
+		{
+			StreamingHtmlRenderer renderer = new StreamingHtmlRenderer(generator.getColorPicker(seed), new File(arg_map.get("output")));
+			renderer.start();
+			page = generator.generate(seed, renderer);
+			renderer.finish();
+		}
+		else if (stream)
+		{
+			StreamingDotRenderer renderer = new StreamingDotRenderer(out);
+			renderer.start();
+			page = generator.generate(seed, renderer);
+			renderer.finish();
+		}
+		else
+		{
+			page = generator.generate(seed);
+			BoxRenderer renderer = getRenderer(page, type, flat, relative, show_deps, margin);
+			if (threads > 0 && renderer instanceof OplRelativeRenderer)
+			{
+				((OplRelativeRenderer) renderer).setThreads(threads);
+			}
+			if (components)
+			{
+				// The models go next to the output file if one is given
+				File folder = output_dir;
+				String prefix = "model";
+				if (arg_map.hasOption("output"))
+				{
+					File f = new File(arg_map.get("output")).getAbsoluteFile();
+					folder = f.getParentFile();
+					prefix = f.getName().replaceFirst("\\.mod$", "");
+				}
+				folder.mkdirs();
+				num_components = ((OplRelativeRenderer) renderer).renderComponents(page.getRoot(), folder, prefix).size();
+			}
+			else
+			{
+				renderer.render(out, page.getRoot());
+			}
+		}
+		Box b = page.getRoot();
+		if (!quiet)
+		{
+			int h_misalignments = 0, v_misalignments = 0, overlaps = 0, overflows = 0;
+			for (FlowLayout fl : page.getLayouts())
+			{
+				if (fl instanceof HorizontalFlowLayout)
+				{
+					h_misalignments += fl.getMisalignmentCount();
+				}
+				else
+				{
+					v_misalignments += fl.getMisalignmentCount();
+					overlaps += fl.getOverlapCount();
+					overflows += fl.getOverflowCount();
+				}
+			}
+			System.err.println("Tree size:                " + b.getSize());
+			System.err.println("Tree depth:               " + b.getDepth());
+			System.err.println("Horizontal misalignments: " + h_misalignments);
+			System.err.println("Vertical misalignments:   " + v_misalignments);
+			System.err.println("Overlappings:             " + overlaps);
+			System.err.println("Overflows:                " + overflows);
+			if (components)
+			{
+				System.err.println("Components:               " + num_components);
+			}
+		}
+		if (arg_map.hasOption("check"))
+		{
+			ConstraintChecker checker = new ConstraintChecker();
+			if (threads > 0)
+			{
+				checker.setThreads(threads);
+			}
+			long start = System.nanoTime();
+			ConstraintChecker.Result result = checker.check(page);
+			long elapsed = System.nanoTime() - start;
+			for (Class<?> c : new Class<?>[] {SameX.class, SameY.class, Contained.class, Disjoint.class})
+			{
+				System.err.println(String.format("%-26s", "Violated " + c.getSimpleName() + ":") + result.getViolatedCount(c) + "/" + result.getCheckedCount(c));
+			}
+			System.err.println("Check time (s):           " + String.format("%.3f", elapsed / 1e9));
+		}
+		out.close();
+	}
+
+	/**
+	 * Creates the renderer for a page.
+	 * @param page The page to render
+	 * @param type The type of output file (html, dot, opl)
+	 * @param flat Whether to output HTML as a flat set of divs
+	 * @param relative Whether to use relative encoding for OPL
+	 * @param show_deps Whether to print the dependency graph
+	 * @return The renderer, or {@code null} if the type is unknown
+	 */
+	public static BoxRenderer getRenderer(Page page, String type, boolean flat, boolean relative, boolean show_deps)
+	{
+		return getRenderer(page, type, flat, relative, show_deps, -1);
+	}
 
-		// Setup box picker
-		HorizontalFlowLayout hfl_1 = new HorizontalFlowLayout();
-		hfl_1.setAlignmentFault(misalignment, misalignment_shift);
-		hfl_1.setOverlapFault(overlap, overlap_shift);
-		hfl_1.setOverflowFault(overflow, overflow_shift);
-		HorizontalFlowLayout hfl_2 = new HorizontalFlowLayout(row_size);
-		hfl_2.setAlignmentFault(misalignment, misalignment_shift);
-		hfl_2.setOverlapFault(overlap, overlap_shift);
-		hfl_2.setOverflowFault(overflow, overflow_shift);
-		VerticalFlowLayout vfl_1 = new VerticalFlowLayout(column_size);
-		vfl_1.setAlignmentFault(misalignment, misalignment_shift);
-		vfl_1.setOverlapFault(overlap, overlap_shift);
-		vfl_1.setOverflowFault(overflow, overflow_shift);
-		layout.add(hfl_1, 0.2);
-		layout.add(hfl_2, 0.4);
-		layout.add(vfl_1, 0.4);
-		RandomBoxPicker box_picker = new RandomBoxPicker(degree, depth, layout, width, height);
-		Box b = box_picker.pick();
-		
-		// Render
+	/**
+	 * Creates the renderer for a page.
+	 * @param page The page to render
+	 * @param type The type of output file (html, dot, opl)
+	 * @param flat Whether to output HTML as a flat set of divs
+	 * @param relative Whether to use relative encoding for OPL
+	 * @param show_deps Whether to print the dependency graph
+	 * @param margin The largest distance between two siblings for which an
+	 * OPL model requires them to be disjoint, or a negative value to
+	 * constrain all the pairs of siblings
+	 * @return The renderer, or {@code null} if the type is unknown
+	 */
+	public static BoxRenderer getRenderer(Page page, String type, boolean flat, boolean relative, boolean show_deps, float margin)
+	{
+		Box b = page.getRoot();
 		BoxRenderer renderer = null;
 		if (type.compareToIgnoreCase("html") == 0)
 		{
 			if (flat)
 			{
-				renderer = new HtmlFlatRenderer(color);
+				renderer = new HtmlFlatRenderer(page.getColorPicker());
 			}
 			else
 			{
-				renderer = new HtmlNestedRenderer(color);
+				renderer = new HtmlNestedRenderer(page.getColorPicker());
 			}
 		}
 		else if (type.compareToIgnoreCase("opl") == 0)
 		{
-			Set<LayoutConstraint> constraints = new HashSet<LayoutConstraint>();
-			constraints.addAll(hfl_1.getConstraints());
-			constraints.addAll(hfl_2.getConstraints());
-			constraints.addAll(vfl_1.getConstraints());
-			constraints.addAll(Contained.addContainmentConstraints(b));
-			constraints.addAll(Disjoint.addContainmentConstraints(b));
-			if (arg_map.hasOption("relative"))
+			if (relative)
 			{
-				if (arg_map.hasOption("show-deps"))
+				Set<LayoutConstraint> constraints = new HashSet<LayoutConstraint>();
+				for (FlowLayout fl : page.getLayouts())
+				{
+					constraints.addAll(fl.getConstraints());
+				}
+				if (show_deps)
 				{
-					renderer = new DependencyGraphRenderer(constraints);
+					renderer = new DependencyGraphRenderer(constraints, Contained.getFamily(b), Disjoint.getFamily(b, margin));
 				}
 				else
 				{
-					renderer = new OplRelativeRenderer(constraints);
+					renderer = new OplRelativeRenderer(constraints, Contained.getFamily(b), Disjoint.getFamily(b, margin));
 				}
-				BoxDependencyGraph g = new BoxDependencyGraph();
-				if (!arg_map.hasOption("flat"))
+				DependencyGraph g;
+				if (!flat)
+				{
+					g = CompactDependencyGraph.of(page.getLayouts());
+				}
+				else
 				{
-					g.add(hfl_1.getDependencies());
-					g.add(hfl_2.getDependencies());
-					g.add(vfl_1.getDependencies());
+					g = new BoxDependencyGraph();
 				}
-				
 				((OplRelativeRenderer) renderer).setDependencyGraph(g);
 			}
 			else
 			{
-				renderer = new OplAbsoluteRenderer(hfl_1.getConstraints(), hfl_2.getConstraints(), vfl_1.getConstraints(), Contained.addContainmentConstraints(b), Disjoint.addContainmentConstraints(b));
+				OplAbsoluteRenderer r = new OplAbsoluteRenderer();
+				for (FlowLayout fl : page.getLayouts())
+				{
+					r.addConstraints(fl.getConstraints());
+				}
+				r.addConstraints(Contained.getFamily(b));
+				r.addConstraints(Disjoint.getFamily(b, margin));
+				renderer = r;
 			}
 		}
 		else if (type.compareToIgnoreCase("dot") == 0)
 		{
 			renderer = new DotRenderer();
 		}
-		renderer.render(out, b);
-		if (!quiet)
+		return renderer;
+	}
+
+	/**
+	 * Gets the file extension corresponding to a type of output.
+	 * @param type The type of output file (html, dot, opl)
+	 * @param relative Whether to use relative encoding for OPL
+	 * @param show_deps Whether to print the dependency graph
+	 * @return The extension
+	 */
+	protected static String getExtension(String type, boolean relative, boolean show_deps)
+	{
+		if (type.compareToIgnoreCase("opl") == 0)
 		{
-			System.err.println("Tree size:                " + b.getSize());
-			System.err.println("Tree depth:               " + b.getDepth());
-			System.err.println("Horizontal misalignments: " + (hfl_1.getMisalignmentCount() + hfl_2.getMisalignmentCount()));
-			System.err.println("Vertical misalignments:   " + (vfl_1.getMisalignmentCount()));
-			System.err.println("Overlappings:             " + (vfl_1.getOverlapCount()));
-			System.err.println("Overflows:                " + (vfl_1.getOverflowCount()));
+			if (relative && show_deps)
+			{
+				return "dot";
+			}
+			return "mod";
 		}
-		out.close();
+		return type.toLowerCase();
 	}
 
 	public static void renderToFile(Box b, BoxRenderer r, String filename) throws FileNotFoundException
 	{
-		PrintStream ps = new PrintStream(new FileOutputStream(new File(filename)));
+		PrintStream ps = new PrintStream(new BufferedOutputStream(new FileOutputStream(new File(filename))));
 		r.render(ps, b);
 		ps.close();
 	}
@@ -247,6 +412,15 @@ public class Main
 		parser.addArgument(new Argument().withLongName("quiet").withShortName("q").withDescription("\tDon't print generation stats to stderr"));
 		parser.addArgument(new Argument().withLongName("help").withShortName("?").withDescription("\tShow command line usage"));
 		parser.addArgument(new Argument().withLongName("output").withShortName("o").withArgument("file").withDescription("Output to file"));
+		parser.addArgument(new Argument().withLongName("count").withShortName("n").withArgument("x").withDescription("\tGenerate a batch of x pages, one file per page"));
+		parser.addArgument(new Argument().withLongName("output-dir").withShortName("O").withArgument("dir").withDescription("Write the pages of a batch to folder dir"));
+		parser.addArgument(new Argument().withLongName("threads").withShortName("j").withArgument("x").withDescription("\tUse x threads for a batch or a relative OPL model"));
+		parser.addArgument(new Argument().withLongName("size").withShortName("z").withArgument("x").withDescription("\tGenerate trees of exactly x boxes"));
+		parser.addArgument(new Argument().withLongName("split-streams").withShortName("p").withDescription("Give each subtree its own random streams"));
+		parser.addArgument(new Argument().withLongName("stream").withShortName("S").withDescription("\tWrite HTML or DOT output while generating the page"));
+		parser.addArgument(new Argument().withLongName("components").withShortName("k").withDescription("Write one relative OPL model per independent group of faults"));
+		parser.addArgument(new Argument().withLongName("check").withShortName("c").withDescription("\tPrint the number of violated constraints of each type"));
+		parser.addArgument(new Argument().withLongName("margin").withShortName("M").withArgument("x").withDescription("\tOnly require siblings at most x apart to be disjoint"));
 		return parser;
 	}
 
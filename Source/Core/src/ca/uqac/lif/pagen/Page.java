@@ -0,0 +1,91 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uqac.lif.synthia.Picker;
+
+/**
+ * A generated page: the root of a tree of boxes, along with the layout
+ * managers that produced it and the picker used to color its boxes.
+ */
+public class Page
+{
+	/**
+	 * The root of the tree of boxes
+	 */
+	/*@ non_null @*/ protected Box m_root;
+
+	/**
+	 * The layout managers that arranged the boxes of this page. They hold
+	 * the constraints and dependencies accumulated during generation.
+	 */
+	/*@ non_null @*/ protected List<FlowLayout> m_layouts;
+
+	/**
+	 * The picker used to give a color to each box when rendering
+	 */
+	/*@ non_null @*/ protected Picker<String> m_color;
+
+	/**
+	 * Creates a new page.
+	 * @param root The root of the tree of boxes
+	 * @param color The picker used to give a color to each box
+	 * @param layouts The layout managers that arranged the boxes
+	 */
+	public Page(/*@ non_null @*/ Box root, /*@ non_null @*/ Picker<String> color, FlowLayout ... layouts)
+	{
+		super();
+		m_root = root;
+		m_color = color;
+		m_layouts = new ArrayList<FlowLayout>(layouts.length);
+		for (FlowLayout fl : layouts)
+		{
+			m_layouts.add(fl);
+		}
+	}
+
+	/**
+	 * Gets the root of the tree of boxes.
+	 * @return The root box
+	 */
+	/*@ pure non_null @*/ public Box getRoot()
+	{
+		return m_root;
+	}
+
+	/**
+	 * Gets the layout managers that arranged the boxes of this page.
+	 * @return The list of layout managers
+	 */
+	/*@ pure non_null @*/ public List<FlowLayout> getLayouts()
+	{
+		return m_layouts;
+	}
+
+	/**
+	 * Gets the picker used to give a color to each box.
+	 * @return The color picker
+	 */
+	/*@ pure non_null @*/ public Picker<String> getColorPicker()
+	{
+		return m_color;
+	}
+}
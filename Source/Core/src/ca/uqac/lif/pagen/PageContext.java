@@ -0,0 +1,173 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.Arrays;
+
+import ca.uqac.lif.pagen.BoxProperty.Property;
+
+/**
+ * The state shared by all the boxes of a single page. The context gives
+ * IDs to the boxes that are created in it, and keeps the unique instances
+ * of the {@link BoxProperty} objects that refer to these boxes. These
+ * instances are stored in a table indexed by box ID and property, so that
+ * looking one up takes constant time and creates no object. Since no
+ * such state is shared between contexts, distinct pages can be generated
+ * at the same time, and everything a page refers to can be reclaimed as
+ * soon as the page itself is no longer used.
+ * <p>
+ * A context is not thread-safe: a single page must not be generated by
+ * more than one thread at a time.
+ */
+public class PageContext
+{
+	/**
+	 * A counter to give IDs to boxes
+	 */
+	protected int m_idCount;
+
+	/**
+	 * The already instantiated box properties. The property <i>p</i> of the
+	 * box with ID <i>i</i> is found at index
+	 * <i>i</i>&times;{@link BoxProperty#s_numProperties}+<i>p</i>. Its goal
+	 * is to avoid creating multiple instances of {@link BoxProperty} objects
+	 * referring to the same box and the same property.
+	 */
+	/*@ non_null @*/ protected BoxProperty[] m_properties;
+
+	/**
+	 * The object notified when a box of this context is moved or resized
+	 */
+	/*@ null @*/ protected ChangeListener m_listener;
+
+	/**
+	 * Creates a new empty context.
+	 */
+	public PageContext()
+	{
+		super();
+		m_idCount = 0;
+		m_properties = new BoxProperty[64];
+		m_listener = null;
+	}
+
+	/**
+	 * Sets the object notified when a box of this context is moved or
+	 * resized, replacing the previous one.
+	 * @param listener The listener, or {@code null} to stop notifying
+	 */
+	public void setListener(/*@ null @*/ ChangeListener listener)
+	{
+		m_listener = listener;
+	}
+
+	/**
+	 * Gets the object notified when a box of this context is moved or
+	 * resized.
+	 * @return The listener, or {@code null} if there is none
+	 */
+	/*@ pure null @*/ public ChangeListener getListener()
+	{
+		return m_listener;
+	}
+
+	/**
+	 * Signals that a box of this context has been moved, and hence all its
+	 * descendants.
+	 * @param b The box
+	 */
+	protected void moved(/*@ non_null @*/ Box b)
+	{
+		if (m_listener != null)
+		{
+			m_listener.boxMoved(b);
+		}
+	}
+
+	/**
+	 * Signals that a box of this context has been resized.
+	 * @param b The box
+	 */
+	protected void resized(/*@ non_null @*/ Box b)
+	{
+		if (m_listener != null)
+		{
+			m_listener.boxResized(b);
+		}
+	}
+
+	/**
+	 * Gets a new unique ID for a box created in this context.
+	 * @return The ID
+	 */
+	public int nextId()
+	{
+		return m_idCount++;
+	}
+
+	/**
+	 * Resets the ID counter of this context to zero. Since the IDs are given
+	 * again to new boxes, the box properties created so far are discarded.
+	 */
+	public void resetIds()
+	{
+		m_idCount = 0;
+		Arrays.fill(m_properties, null);
+	}
+
+	/**
+	 * Gets the unique instance of a box property.
+	 * @param b The box whose property is being considered
+	 * @param p The property of the box
+	 * @return The box property
+	 */
+	/*@ non_null @*/ public BoxProperty getProperty(/*@ non_null @*/ Box b, /*@ non_null @*/ Property p)
+	{
+		int slot = b.getId() * BoxProperty.s_numProperties + p.ordinal();
+		if (slot >= m_properties.length)
+		{
+			m_properties = Arrays.copyOf(m_properties, Math.max(slot + 1, m_properties.length * 2));
+		}
+		BoxProperty bp = m_properties[slot];
+		if (bp == null)
+		{
+			bp = new BoxProperty(b, p);
+			m_properties[slot] = bp;
+		}
+		return bp;
+	}
+
+	/**
+	 * An object notified of the changes made to the boxes of a context.
+	 */
+	public interface ChangeListener
+	{
+		/**
+		 * Notifies that the position of a box, and hence of all its
+		 * descendants, has changed.
+		 * @param b The box
+		 */
+		public void boxMoved(/*@ non_null @*/ Box b);
+
+		/**
+		 * Notifies that the width or height of a box has changed.
+		 * @param b The box
+		 */
+		public void boxResized(/*@ non_null @*/ Box b);
+	}
+}
@@ -0,0 +1,340 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import ca.uqac.lif.synthia.Picker;
+import ca.uqac.lif.synthia.random.PoissonInteger;
+import ca.uqac.lif.synthia.random.RandomBoolean;
+import ca.uqac.lif.synthia.random.RandomFloat;
+import ca.uqac.lif.synthia.random.RandomInteger;
+
+/**
+ * Produces random pages from a fixed set of generation parameters. Each
+ * call to {@link #generate(int)} sets up a fresh set of pickers and layout
+ * managers, so that the pages it returns are independent from one another.
+ */
+public class PageGenerator
+{
+	/**
+	 * The minimum depth of the generated trees
+	 */
+	protected int m_minDepth = 4;
+
+	/**
+	 * The maximum depth of the generated trees
+	 */
+	protected int m_maxDepth = 5;
+
+	/**
+	 * The parameter of the Poisson distribution giving the degree of a node
+	 */
+	protected float m_degree = 2.2f;
+
+	/**
+	 * The probability that an element is misaligned on purpose
+	 */
+	protected float m_misalignment = 0.1f;
+
+	/**
+	 * The probability that an element overlaps its neighbor on purpose
+	 */
+	protected float m_overlap = 0.1f;
+
+	/**
+	 * The probability that an element overflows its parent on purpose
+	 */
+	protected float m_overflow = 0.1f;
+
+	/**
+	 * The exact number of boxes of the generated trees, or 0 to let it be
+	 * decided by the depth and degree of the trees
+	 */
+	protected int m_size = 0;
+
+	/**
+	 * The minimum depth of the trees generated with a fixed size
+	 */
+	protected int m_sizeMinDepth = 0;
+
+	/**
+	 * The maximum depth of the trees generated with a fixed size, or 0 to
+	 * leave it unbounded
+	 */
+	protected int m_sizeMaxDepth = 0;
+
+	/**
+	 * Whether each subtree of a page draws from its own random streams
+	 */
+	protected boolean m_splitStreams = false;
+
+	/**
+	 * Creates a new page generator with default parameters.
+	 */
+	public PageGenerator()
+	{
+		super();
+	}
+
+	/**
+	 * Sets the range of depths of the generated trees.
+	 * @param min_depth The minimum depth
+	 * @param max_depth The maximum depth
+	 * @return This generator
+	 */
+	public PageGenerator setDepth(int min_depth, int max_depth)
+	{
+		m_minDepth = min_depth;
+		m_maxDepth = max_depth;
+		return this;
+	}
+
+	/**
+	 * Sets the parameter of the Poisson distribution giving the degree of
+	 * a node.
+	 * @param degree The parameter
+	 * @return This generator
+	 */
+	public PageGenerator setDegree(float degree)
+	{
+		m_degree = degree;
+		return this;
+	}
+
+	/**
+	 * Sets the probability that an element is misaligned on purpose.
+	 * @param p The probability, in [0,1]
+	 * @return This generator
+	 */
+	public PageGenerator setMisalignment(float p)
+	{
+		m_misalignment = p;
+		return this;
+	}
+
+	/**
+	 * Sets the probability that an element overlaps its neighbor on purpose.
+	 * @param p The probability, in [0,1]
+	 * @return This generator
+	 */
+	public PageGenerator setOverlap(float p)
+	{
+		m_overlap = p;
+		return this;
+	}
+
+	/**
+	 * Sets the probability that an element overflows its parent on purpose.
+	 * @param p The probability, in [0,1]
+	 * @return This generator
+	 */
+	public PageGenerator setOverflow(float p)
+	{
+		m_overflow = p;
+		return this;
+	}
+
+	/**
+	 * Sets the exact number of boxes of the generated trees. The trees are
+	 * then produced by a {@link BudgetedBoxPicker}, and the range of depths
+	 * set by {@link #setDepth(int, int)} is ignored. A size cannot be combined
+	 * with split random streams.
+	 * @param size The number of boxes, or 0 to let the size of the trees
+	 * be decided by their depth and degree
+	 * @return This generator
+	 */
+	public PageGenerator setSize(int size)
+	{
+		return setSize(size, 0, 0);
+	}
+
+	/**
+	 * Sets the exact number of boxes of the generated trees, as well as
+	 * bounds on their depth.
+	 * @param size The number of boxes, or 0 to let the size of the trees
+	 * be decided by their depth and degree
+	 * @param min_depth The minimum depth of the trees, counted as in
+	 * {@link Box#getDepth()}
+	 * @param max_depth The maximum depth of the trees, or 0 to leave it
+	 * unbounded
+	 * @return This generator
+	 */
+	public PageGenerator setSize(int size, int min_depth, int max_depth)
+	{
+		m_size = size;
+		m_sizeMinDepth = min_depth;
+		m_sizeMaxDepth = max_depth;
+		return this;
+	}
+
+	/**
+	 * Sets whether each subtree of a page draws from its own random streams,
+	 * derived from the seed of its parent and from its index among its
+	 * siblings. The subtrees can then be generated independently of one
+	 * another, and still come out the same for a given seed. The pages
+	 * differ from those generated with shared streams. The streams cannot be
+	 * split when the trees have a fixed size.
+	 * @param b Set to {@code true} to split the streams
+	 * @return This generator
+	 * @see RandomBoxPicker#setStreams(RandomStreams, int)
+	 */
+	public PageGenerator setSplitStreams(boolean b)
+	{
+		m_splitStreams = b;
+		return this;
+	}
+
+	/**
+	 * Generates a new page.
+	 * @param seed The seed used to initialize the pickers. Set to a negative
+	 * value to leave the pickers unseeded.
+	 * @return The page
+	 */
+	/*@ non_null @*/ public Page generate(int seed)
+	{
+		return generate(seed, null);
+	}
+
+	/**
+	 * Generates a new page, notifying a listener of the construction of each
+	 * box. When a listener is given, the layout managers do not record the
+	 * constraints and dependencies between the boxes, so that the listener
+	 * can discard each subtree once it is done with it.
+	 * @param seed The seed used to initialize the pickers. Set to a negative
+	 * value to leave the pickers unseeded.
+	 * @param listener The listener, or {@code null} to notify no one
+	 * @return The page
+	 * @throws IllegalStateException If the streams are split and the trees
+	 * have a fixed size
+	 */
+	/*@ non_null @*/ public Page generate(int seed, /*@ null @*/ RandomBoxPicker.BuildListener listener)
+	{
+		if (m_splitStreams && m_size > 0)
+		{
+			throw new IllegalStateException("Random streams cannot be split for trees of a fixed size");
+		}
+		// Initialize RNGs and seed
+		RandomInteger depth = new RandomInteger(m_minDepth, m_maxDepth);
+		PoissonInteger degree = new PoissonInteger(m_degree);
+		RandomFloat width = new RandomFloat(5, 20);
+		RandomFloat height = new RandomFloat(5, 10);
+		RandomFloat float_source = new RandomFloat();
+		RandomInteger row_size = new RandomInteger(0, 10);
+		RandomInteger column_size = new RandomInteger(0, 10);
+		RandomBoolean misalignment = new RandomBoolean(m_misalignment);
+		RandomInteger misalignment_shift = new RandomInteger(2, 10);
+		RandomBoolean overlap = new RandomBoolean(m_overlap);
+		RandomInteger overlap_shift = new RandomInteger(2, 10);
+		RandomBoolean overflow = new RandomBoolean(m_overflow);
+		RandomInteger overflow_shift = new RandomInteger(2, 10);
+		RandomFloat split = new RandomFloat();
+		LayoutPicker layout = new LayoutPicker(float_source);
+		Picker<String> color = getColorPicker(seed);
+		if (seed >= 0)
+		{
+			depth.setSeed(deriveSeed(seed, 0));
+			degree.setSeed(deriveSeed(seed, 1));
+			float_source.setSeed(deriveSeed(seed, 2));
+			width.setSeed(deriveSeed(seed, 3));
+			height.setSeed(deriveSeed(seed, 4));
+			row_size.setSeed(deriveSeed(seed, 5));
+			column_size.setSeed(deriveSeed(seed, 6));
+			misalignment_shift.setSeed(deriveSeed(seed, 7));
+			misalignment.setSeed(deriveSeed(seed, 8));
+			overlap_shift.setSeed(deriveSeed(seed, 9));
+			overlap.setSeed(deriveSeed(seed, 10));
+			overflow_shift.setSeed(deriveSeed(seed, 11));
+			overflow.setSeed(deriveSeed(seed, 12));
+			split.setSeed(deriveSeed(seed, 14));
+		}
+
+		// Setup box picker
+		HorizontalFlowLayout hfl_1 = new HorizontalFlowLayout();
+		hfl_1.setAlignmentFault(misalignment, misalignment_shift);
+		hfl_1.setOverlapFault(overlap, overlap_shift);
+		hfl_1.setOverflowFault(overflow, overflow_shift);
+		HorizontalFlowLayout hfl_2 = new HorizontalFlowLayout(row_size);
+		hfl_2.setAlignmentFault(misalignment, misalignment_shift);
+		hfl_2.setOverlapFault(overlap, overlap_shift);
+		hfl_2.setOverflowFault(overflow, overflow_shift);
+		VerticalFlowLayout vfl_1 = new VerticalFlowLayout(column_size);
+		vfl_1.setAlignmentFault(misalignment, misalignment_shift);
+		vfl_1.setOverlapFault(overlap, overlap_shift);
+		vfl_1.setOverflowFault(overflow, overflow_shift);
+		layout.addLayout(hfl_1, 0.2).addLayout(hfl_2, 0.4).addLayout(vfl_1, 0.4);
+		RandomBoxPicker box_picker;
+		if (m_size > 0)
+		{
+			box_picker = new BudgetedBoxPicker(new PageContext(), m_size, degree, split, layout, width, height).setDepth(m_sizeMinDepth, m_sizeMaxDepth);
+		}
+		else
+		{
+			box_picker = new RandomBoxPicker(new PageContext(), degree, depth, layout, width, height);
+		}
+		if (m_splitStreams)
+		{
+			RandomStreams streams = new RandomStreams().add(depth, degree, float_source, width, height, row_size, column_size, misalignment_shift, misalignment, overlap_shift, overlap, overflow_shift, overflow, split);
+			box_picker.setStreams(streams, seed >= 0 ? seed : (int) (Math.random() * Integer.MAX_VALUE));
+		}
+		if (listener != null)
+		{
+			hfl_1.setRecording(false);
+			hfl_2.setRecording(false);
+			vfl_1.setRecording(false);
+			box_picker.setListener(listener);
+		}
+		Box b = box_picker.pick();
+		return new Page(b, color, hfl_1, hfl_2, vfl_1);
+	}
+
+	/**
+	 * Creates the picker giving a color to the boxes of a page. This is the
+	 * same picker as the one returned by {@link Page#getColorPicker()} for
+	 * the page generated with the same seed.
+	 * @param seed The seed of the page. Set to a negative value to leave the
+	 * picker unseeded.
+	 * @return The color picker
+	 */
+	/*@ non_null @*/ public Picker<String> getColorPicker(int seed)
+	{
+		RandomInteger rand_color = new RandomInteger(128,255);
+		if (seed >= 0)
+		{
+			rand_color.setSeed(deriveSeed(seed, 13));
+		}
+		return new ColorPicker(rand_color);
+	}
+
+	/**
+	 * Derives a seed from another seed and an index. This is used both to
+	 * give a seed to each page of a batch and to give a seed to each picker
+	 * of a page. The mixing function spreads consecutive indices over the
+	 * whole range of seeds, so that the seeds derived from neighboring
+	 * values do not overlap.
+	 * @param seed The seed to derive from
+	 * @param index The index of the derived seed
+	 * @return A non-negative seed
+	 */
+	public static int deriveSeed(int seed, int index)
+	{
+		long z = ((((long) seed) << 32) | (index & 0xffffffffL)) + 0x9e3779b97f4a7c15L;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		z = z ^ (z >>> 31);
+		return (int) (z & 0x7fffffff);
+	}
+}
@@ -18,10 +18,12 @@
 package ca.uqac.lif.pagen;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import ca.uqac.lif.synthia.Picker;
-import ca.uqac.lif.synthia.util.Constant;
 
 public class RandomBoxPicker implements Picker<Box>
 {
@@ -35,56 +37,387 @@ public class RandomBoxPicker implements Picker<Box>
 
 	protected Picker<LayoutManager> m_layout;
 
+	/**
+	 * The context in which the boxes are created
+	 */
+	/*@ non_null @*/ protected PageContext m_context;
+
+	/**
+	 * The columnar page in which the boxes are created, or {@code null} to
+	 * create them as standalone {@link Box} objects
+	 */
+	/*@ null @*/ protected ColumnarPage m_page;
+
+	/**
+	 * An object notified of the construction of each box, or {@code null}
+	 */
+	/*@ null @*/ protected BuildListener m_listener;
+
+	/**
+	 * The random pickers reseeded for each box, or {@code null} to let all
+	 * the boxes draw from the same streams
+	 */
+	/*@ null @*/ protected RandomStreams m_streams;
+
+	/**
+	 * The seed of the root of the trees, when {@link #m_streams} is set
+	 */
+	protected int m_seed;
+
+	/**
+	 * For each level of the stack used by {@link #pick()}, the number of
+	 * children of the box being built that remain to be picked
+	 */
+	/*@ non_null @*/ protected int[] m_remaining;
+
+	/**
+	 * For each level of the stack used by {@link #pick()}, the depth of the
+	 * subtrees below the children of the box being built
+	 */
+	/*@ non_null @*/ protected int[] m_childDepth;
+
+	/**
+	 * For each level of the stack used by {@link #pick()}, the seed of the
+	 * box being built, when {@link #m_streams} is set
+	 */
+	/*@ non_null @*/ protected int[] m_seeds;
+
+	/**
+	 * For each level of the stack used by {@link #pick()}, the children
+	 * already built for the box at this level
+	 */
+	/*@ non_null @*/ protected final List<List<Box>> m_children;
+
 	public RandomBoxPicker(Picker<Integer> children, Picker<Integer> depth, Picker<LayoutManager> layout, Picker<Float> width, Picker<Float> height)
+	{
+		this(new PageContext(), children, depth, layout, width, height);
+	}
+
+	public RandomBoxPicker(/*@ non_null @*/ PageContext context, Picker<Integer> children, Picker<Integer> depth, Picker<LayoutManager> layout, Picker<Float> width, Picker<Float> height)
 	{
 		super();
+		m_context = context;
 		m_numChildren = children;
 		m_depth = depth;
 		m_width = width;
 		m_height = height;
 		m_layout = layout;
+		m_remaining = new int[16];
+		m_childDepth = new int[16];
+		m_seeds = new int[16];
+		m_children = new ArrayList<List<Box>>();
+	}
+
+	/**
+	 * Sets the context in which the boxes are created. Giving each page its
+	 * own context keeps the numbering of its boxes independent from the
+	 * other pages.
+	 * @param context The context
+	 * @return This picker
+	 */
+	public RandomBoxPicker setContext(/*@ non_null @*/ PageContext context)
+	{
+		m_context = context;
+		return this;
+	}
+
+	/**
+	 * Sets the columnar page in which the boxes are created. The boxes
+	 * returned by the picker are then views of boxes stored in this page,
+	 * and are numbered by the context of the page.
+	 * @param page The page, or {@code null} to create standalone boxes
+	 * @return This picker
+	 */
+	public RandomBoxPicker setPage(/*@ null @*/ ColumnarPage page)
+	{
+		m_page = page;
+		if (page != null)
+		{
+			m_context = page.getContext();
+		}
+		return this;
 	}
 
+	/**
+	 * Sets the object notified of the construction of each box.
+	 * @param listener The listener, or {@code null} to notify no one
+	 * @return This picker
+	 */
+	public RandomBoxPicker setListener(/*@ null @*/ BuildListener listener)
+	{
+		m_listener = listener;
+		return this;
+	}
+
+	/**
+	 * Gives each subtree its own random streams. Before making the choices
+	 * for a box, the picker reseeds all the pickers of the set with a seed
+	 * derived from the seed of the box, which is itself derived from the
+	 * seed of its parent and from its index among its siblings. A subtree
+	 * can then be generated on its own with {@link #pickSubtree(int, int)}
+	 * and come out the same as in the whole tree.
+	 * <p>
+	 * All the random pickers used by this picker, including those of its
+	 * layout managers, must be part of the set; otherwise the choices they
+	 * make still depend on the order in which the boxes are built.
+	 * @param streams The set of pickers, or {@code null} to let all the
+	 * boxes draw from the same streams
+	 * @param seed The seed of the root of the trees
+	 * @return This picker
+	 */
+	public RandomBoxPicker setStreams(/*@ null @*/ RandomStreams streams, int seed)
+	{
+		m_streams = streams;
+		m_seed = seed;
+		return this;
+	}
+
+	/**
+	 * Gets the context in which the boxes are created.
+	 * @return The context
+	 */
+	/*@ pure non_null @*/ public PageContext getContext()
+	{
+		return m_context;
+	}
+
+	/**
+	 * Creates a copy of this picker. The copy has its own copy of each
+	 * picker, including the layout managers if they are chosen by a
+	 * {@link LayoutPicker}; pickers shared in the original are also shared
+	 * in the copy. The copy creates its boxes in a new context; it can
+	 * therefore be used by another thread.
+	 * @param with_state Set to {@code true} to copy the state of the pickers
+	 * @return The copy
+	 */
 	@Override
-	public Picker<Box> duplicate(boolean with_state)
+	public RandomBoxPicker duplicate(boolean with_state)
 	{
-		// TODO Auto-generated method stub
-		return null;
+		Map<Picker<?>,Picker<?>> copies = new IdentityHashMap<Picker<?>,Picker<?>>();
+		Picker<LayoutManager> layout;
+		if (m_layout instanceof LayoutPicker)
+		{
+			layout = ((LayoutPicker) m_layout).duplicate(with_state, copies);
+		}
+		else
+		{
+			layout = FlowLayout.duplicate(m_layout, with_state, copies);
+		}
+		RandomBoxPicker copy = new RandomBoxPicker(new PageContext(), FlowLayout.duplicate(m_numChildren, with_state, copies), FlowLayout.duplicate(m_depth, with_state, copies), layout, FlowLayout.duplicate(m_width, with_state, copies), FlowLayout.duplicate(m_height, with_state, copies));
+		if (m_streams != null)
+		{
+			copy.setStreams(m_streams.duplicate(with_state, copies), m_seed);
+		}
+		return copy;
 	}
 
+	/**
+	 * Picks a new tree of boxes. The tree is built level by level using an
+	 * explicit stack instead of recursion, so that its depth is not limited
+	 * by the size of the call stack. The pickers are queried in the same
+	 * order as in a depth-first recursive construction: the number of
+	 * children of a box is picked before the subtrees of these children,
+	 * and a box is created (and thus numbered) after all its descendants.
+	 * <p>
+	 * The lists of children passed to the layout managers are reused from
+	 * one box to the next; a layout manager must therefore not keep a
+	 * reference to the list it receives.
+	 */
 	@Override
 	public Box pick()
 	{
-		int num_children = m_numChildren.pick();
-		List<Box> children = new ArrayList<Box>(num_children);
-		for (int i = 0; i < num_children; i++)
+		if (m_listener != null)
+		{
+			m_listener.beginBox(0);
+		}
+		if (m_streams != null)
+		{
+			m_streams.reseed(m_seed, RandomStreams.BEGIN);
+		}
+		pushLevel(0, -1, m_seed);
+		return build();
+	}
+
+	/**
+	 * Picks the subtree of a single box, as it would be in a tree picked
+	 * by {@link #pick()}. This requires the picker to use random streams.
+	 * @param seed The seed of the box, as given by
+	 * {@link RandomStreams#getSeed(int, int...)}
+	 * @param depth The depth of the subtree below the box (0 for a leaf), or
+	 * -1 if the box is a child of the root, whose depth is picked
+	 * @return The box
+	 * @see #setStreams(RandomStreams, int)
+	 */
+	public Box pickSubtree(int seed, int depth)
+	{
+		if (m_streams == null)
+		{
+			throw new IllegalStateException("Subtrees can only be picked on their own with random streams");
+		}
+		if (m_listener != null)
+		{
+			m_listener.beginBox(0);
+		}
+		m_streams.reseed(seed, RandomStreams.BEGIN);
+		if (depth < 0)
+		{
+			depth = m_depth.pick();
+		}
+		if (depth == 0)
+		{
+			Box b = newLeaf();
+			if (m_listener != null)
+			{
+				m_listener.endBox(b, 0);
+			}
+			return b;
+		}
+		pushLevel(0, depth - 1, seed);
+		return build();
+	}
+
+	/**
+	 * Builds the tree whose root is at the bottom of the stack.
+	 * @return The root of the tree
+	 */
+	protected Box build()
+	{
+		int level = 0;
+		while (true)
 		{
-			Box b = null;
-			int depth = m_depth.pick();
-			if (depth == 0)
+			if (m_remaining[level] > 0)
+			{
+				m_remaining[level]--;
+				int seed = 0;
+				if (m_streams != null)
+				{
+					seed = RandomStreams.getChildSeed(m_seeds[level], m_children.get(level).size());
+					m_streams.reseed(seed, RandomStreams.BEGIN);
+				}
+				int depth = m_childDepth[level] < 0 ? m_depth.pick() : m_childDepth[level];
+				if (m_listener != null)
+				{
+					m_listener.beginBox(level + 1);
+				}
+				if (depth == 0)
+				{
+					Box b = newLeaf();
+					m_children.get(level).add(b);
+					if (m_listener != null)
+					{
+						m_listener.endBox(b, level + 1);
+					}
+				}
+				else
+				{
+					level++;
+					pushLevel(level, depth - 1, seed);
+				}
+				continue;
+			}
+			if (m_streams != null)
+			{
+				m_streams.reseed(m_seeds[level], RandomStreams.END);
+			}
+			List<Box> children = m_children.get(level);
+			Box parent = newBox(0, 0);
+			parent.setPadding(2);
+			LayoutManager layout = m_layout.pick();
+			layout.arrange(parent, children);
+			children.clear();
+			if (m_listener != null)
 			{
-				b = new Box(0f, 0f, m_width.pick(), m_height.pick());
-				b.setPadding(2);
+				m_listener.endBox(parent, level);
 			}
-			else
+			if (level == 0)
 			{
-				RandomBoxPicker bp = new RandomBoxPicker(m_numChildren, new Constant<Integer>(depth - 1), m_layout, m_width, m_height);
-				b = bp.pick();
+				return parent;
 			}
-			children.add(b);
+			level--;
+			m_children.get(level).add(parent);
 		}
-		Box parent = new Box(0, 0, 0, 0);
-		parent.setPadding(2);
-		LayoutManager layout = m_layout.pick();
-		layout.arrange(parent, children);
-		return parent;
+	}
+
+	/**
+	 * Creates a new box at position (0,0).
+	 * @param w The width of the box
+	 * @param h The height of the box
+	 * @return The box
+	 */
+	protected Box newBox(float w, float h)
+	{
+		if (m_page != null)
+		{
+			return m_page.newBox(0, 0, w, h);
+		}
+		return new Box(m_context, 0, 0, w, h);
+	}
+
+	/**
+	 * Creates a new leaf, whose dimensions are picked.
+	 * @return The leaf
+	 */
+	protected Box newLeaf()
+	{
+		Box b = newBox(m_width.pick(), m_height.pick());
+		b.setPadding(2);
+		return b;
+	}
+
+	/**
+	 * Starts the construction of a new box at a given level of the stack.
+	 * @param level The level
+	 * @param child_depth The depth of the subtrees below each child of the
+	 * box, or -1 to pick the depth of each child from {@link #m_depth}
+	 * @param seed The seed of the box, when {@link #m_streams} is set
+	 */
+	protected void pushLevel(int level, int child_depth, int seed)
+	{
+		if (level == m_remaining.length)
+		{
+			m_remaining = Arrays.copyOf(m_remaining, level * 2);
+			m_childDepth = Arrays.copyOf(m_childDepth, level * 2);
+			m_seeds = Arrays.copyOf(m_seeds, level * 2);
+		}
+		if (level == m_children.size())
+		{
+			m_children.add(new ArrayList<Box>());
+		}
+		m_remaining[level] = m_numChildren.pick();
+		m_childDepth[level] = child_depth;
+		m_seeds[level] = seed;
 	}
 
 	@Override
 	public void reset() 
 	{
-		Box.resetIds();
+		m_context.resetIds();
 		m_numChildren.reset();
 		m_depth.reset();
 	}
+
+	/**
+	 * An object notified by a {@link RandomBoxPicker} of the construction of
+	 * each box. Boxes are started in document order: a box is started before
+	 * its children, and its children are started in order. A box ends once
+	 * it is created and its children, if any, are arranged by a layout
+	 * manager; from that point on, the position of its children relative to
+	 * it no longer changes.
+	 */
+	public static interface BuildListener
+	{
+		/**
+		 * Notifies the listener that the construction of a box begins.
+		 * @param depth The depth of the box in the tree, starting at 0 for
+		 * the root
+		 */
+		public void beginBox(int depth);
+
+		/**
+		 * Notifies the listener that the construction of a box ends.
+		 * @param b The box
+		 * @param depth The depth of the box in the tree
+		 */
+		public void endBox(/*@ non_null @*/ Box b, int depth);
+	}
 }
@@ -0,0 +1,146 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.synthia.Picker;
+import ca.uqac.lif.synthia.random.RandomPicker;
+
+/**
+ * A set of random pickers that are seeded together. A
+ * {@link RandomBoxPicker} can use such a set to give each subtree its own
+ * random streams: before making the choices for a box, it reseeds all the
+ * pickers of the set with a seed derived from the seed of the box. The
+ * seed of each box is in turn derived from the seed of its parent and from
+ * its index among the children of that parent. The choices made for a
+ * subtree then only depend on the seed of the page and on the position of
+ * the subtree in the tree, and not on what was picked for the rest of the
+ * tree.
+ */
+public class RandomStreams
+{
+	/**
+	 * The index used to derive the seed of the choices made when a box
+	 * begins, such as its depth and number of children
+	 */
+	public static final int BEGIN = -1;
+
+	/**
+	 * The index used to derive the seed of the choices made when a box
+	 * ends, such as its layout and the faults in that layout
+	 */
+	public static final int END = -2;
+
+	/**
+	 * The pickers of the set
+	 */
+	/*@ non_null @*/ protected final List<RandomPicker<?>> m_pickers;
+
+	/**
+	 * Creates a new empty set of pickers.
+	 */
+	public RandomStreams()
+	{
+		super();
+		m_pickers = new ArrayList<RandomPicker<?>>();
+	}
+
+	/**
+	 * Adds pickers to the set.
+	 * @param pickers The pickers
+	 * @return This set
+	 */
+	public RandomStreams add(RandomPicker<?> ... pickers)
+	{
+		for (RandomPicker<?> p : pickers)
+		{
+			m_pickers.add(p);
+		}
+		return this;
+	}
+
+	/**
+	 * Creates a copy of this set, made of copies of its pickers.
+	 * @param with_state Set to {@code true} to copy the state of the pickers
+	 * @param copies A map from the pickers already copied to their copy; the
+	 * copy of a picker found in this map is reused
+	 * @return The copy
+	 */
+	public RandomStreams duplicate(boolean with_state, Map<Picker<?>,Picker<?>> copies)
+	{
+		RandomStreams rs = new RandomStreams();
+		for (RandomPicker<?> p : m_pickers)
+		{
+			rs.m_pickers.add((RandomPicker<?>) FlowLayout.duplicate(p, with_state, copies));
+		}
+		return rs;
+	}
+
+	/**
+	 * Reseeds all the pickers of the set. Each picker receives a distinct
+	 * seed derived from the given one.
+	 * @param seed The seed
+	 */
+	public void reseed(int seed)
+	{
+		for (int i = 0; i < m_pickers.size(); i++)
+		{
+			m_pickers.get(i).setSeed(PageGenerator.deriveSeed(seed, i));
+		}
+	}
+
+	/**
+	 * Reseeds all the pickers of the set for one phase of the construction
+	 * of a box.
+	 * @param box_seed The seed of the box
+	 * @param phase The phase, either {@link #BEGIN} or {@link #END}
+	 */
+	public void reseed(int box_seed, int phase)
+	{
+		reseed(PageGenerator.deriveSeed(box_seed, phase));
+	}
+
+	/**
+	 * Gets the seed of a child of a box.
+	 * @param box_seed The seed of the box
+	 * @param index The index of the child among the children of the box
+	 * @return The seed of the child
+	 */
+	public static int getChildSeed(int box_seed, int index)
+	{
+		return PageGenerator.deriveSeed(box_seed, index);
+	}
+
+	/**
+	 * Gets the seed of the box found by following a path from another box.
+	 * @param seed The seed of the box where the path starts
+	 * @param path The index of each child to follow
+	 * @return The seed of the box at the end of the path
+	 */
+	public static int getSeed(int seed, int ... path)
+	{
+		for (int index : path)
+		{
+			seed = getChildSeed(seed, index);
+		}
+		return seed;
+	}
+}
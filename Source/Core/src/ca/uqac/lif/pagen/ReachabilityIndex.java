@@ -0,0 +1,288 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.Arrays;
+
+/**
+ * Answers reachability queries between the nodes of a
+ * {@link CompactDependencyGraph} by interval labelling. The strongly
+ * connected components found by a {@link TransitiveClosure} form a
+ * directed acyclic graph, which is given a depth-first spanning forest.
+ * Each component is numbered in post-order, so that the components below
+ * it in the forest have consecutive numbers. The components reachable from
+ * a component are then described by a short list of disjoint intervals of
+ * these numbers, and a query is a binary search in such a list.
+ * <p>
+ * Paths are followed in the direction of the "influenced by" edges: a node
+ * reaches another if its value depends on it, directly or not. Unlike the
+ * transitive scans of {@link BoxDependencyGraph}, paths may go through any
+ * property. The index is immutable and can be queried by multiple threads
+ * at once.
+ */
+public class ReachabilityIndex
+{
+	/**
+	 * The closure whose components are labelled
+	 */
+	/*@ non_null @*/ protected final TransitiveClosure m_closure;
+
+	/**
+	 * The post-order number of each component in the spanning forest
+	 */
+	/*@ non_null @*/ protected final int[] m_post;
+
+	/**
+	 * For each component, the position of its first interval in
+	 * {@link #m_intervals}; the last entry is the total number of intervals
+	 */
+	/*@ non_null @*/ protected final int[] m_intervalOffsets;
+
+	/**
+	 * The bounds of the intervals of all the components, two entries per
+	 * interval, sorted by lower bound within each component
+	 */
+	/*@ non_null @*/ protected final int[] m_intervals;
+
+	/**
+	 * Builds the index of a graph.
+	 * @param closure The closure of the graph
+	 */
+	public ReachabilityIndex(/*@ non_null @*/ TransitiveClosure closure)
+	{
+		super();
+		m_closure = closure;
+		int num_components = closure.getComponentCount();
+		int[] dag_offsets = new int[num_components + 1];
+		int[] dag_targets = getComponentEdges(dag_offsets);
+		int[] low = new int[num_components];
+		m_post = new int[num_components];
+		number(dag_offsets, dag_targets, low);
+		m_intervalOffsets = new int[num_components + 1];
+		int[] intervals = new int[Math.max(2, num_components * 2)];
+		int length = 0;
+		long[] buffer = new long[16];
+		// Successors have lower IDs, so their intervals are already known
+		for (int c = 0; c < num_components; c++)
+		{
+			m_intervalOffsets[c] = length / 2;
+			int count = 0;
+			buffer[count++] = pack(low[c], m_post[c]);
+			for (int i = dag_offsets[c]; i < dag_offsets[c + 1]; i++)
+			{
+				int d = dag_targets[i];
+				for (int j = m_intervalOffsets[d]; j < m_intervalOffsets[d + 1]; j++)
+				{
+					if (count == buffer.length)
+					{
+						buffer = Arrays.copyOf(buffer, count * 2);
+					}
+					buffer[count++] = pack(intervals[2 * j], intervals[2 * j + 1]);
+				}
+			}
+			Arrays.sort(buffer, 0, count);
+			int start = (int) (buffer[0] >>> 32), end = (int) buffer[0];
+			for (int k = 1; k <= count; k++)
+			{
+				if (k < count && (int) (buffer[k] >>> 32) <= end + 1)
+				{
+					end = Math.max(end, (int) buffer[k]);
+					continue;
+				}
+				if (length + 2 > intervals.length)
+				{
+					intervals = Arrays.copyOf(intervals, intervals.length * 2);
+				}
+				intervals[length++] = start;
+				intervals[length++] = end;
+				if (k < count)
+				{
+					start = (int) (buffer[k] >>> 32);
+					end = (int) buffer[k];
+				}
+			}
+		}
+		m_intervalOffsets[num_components] = length / 2;
+		m_intervals = Arrays.copyOf(intervals, length);
+	}
+
+	/**
+	 * Gets the edges between the components of the graph, without
+	 * duplicates.
+	 * @param offsets An array where the position of the first edge leaving
+	 * each component is written
+	 * @return The target of each edge
+	 */
+	protected int[] getComponentEdges(int[] offsets)
+	{
+		CompactDependencyGraph g = m_closure.getGraph();
+		int num_nodes = g.getNodeCount();
+		int num_components = offsets.length - 1;
+		int[] node_offsets = g.getInfluencedByOffsets();
+		int[] node_targets = g.getInfluencedByTargets();
+		// Group the nodes by component
+		int[] first = new int[num_components + 1];
+		for (int n = 0; n < num_nodes; n++)
+		{
+			first[m_closure.getComponent(n) + 1]++;
+		}
+		for (int c = 0; c < num_components; c++)
+		{
+			first[c + 1] += first[c];
+		}
+		int[] next = Arrays.copyOf(first, num_components);
+		int[] members = new int[num_nodes];
+		for (int n = 0; n < num_nodes; n++)
+		{
+			members[next[m_closure.getComponent(n)]++] = n;
+		}
+		int[] stamp = new int[num_components];
+		Arrays.fill(stamp, -1);
+		int[] targets = new int[16];
+		int length = 0;
+		for (int c = 0; c < num_components; c++)
+		{
+			offsets[c] = length;
+			for (int m = first[c]; m < first[c + 1]; m++)
+			{
+				int n = members[m];
+				for (int i = node_offsets[n]; i < node_offsets[n + 1]; i++)
+				{
+					int d = m_closure.getComponent(node_targets[i]);
+					if (d == c || stamp[d] == c)
+					{
+						continue;
+					}
+					stamp[d] = c;
+					if (length == targets.length)
+					{
+						targets = Arrays.copyOf(targets, length * 2);
+					}
+					targets[length++] = d;
+				}
+			}
+		}
+		offsets[num_components] = length;
+		return targets;
+	}
+
+	/**
+	 * Numbers the components in post-order of an iterative depth-first
+	 * traversal of the component graph. The roots are taken by decreasing
+	 * ID, that is, in topological order, so that each tree of the forest is
+	 * as large as possible.
+	 * @param offsets The position of the first edge leaving each component
+	 * @param targets The target of each edge
+	 * @param low An array where the lowest number in the subtree of each
+	 * component is written
+	 */
+	protected void number(int[] offsets, int[] targets, int[] low)
+	{
+		int num_components = m_post.length;
+		boolean[] visited = new boolean[num_components];
+		int[] call_component = new int[num_components];
+		int[] call_edge = new int[num_components];
+		int counter = 0;
+		for (int root = num_components - 1; root >= 0; root--)
+		{
+			if (visited[root])
+			{
+				continue;
+			}
+			int depth = 0;
+			visited[root] = true;
+			low[root] = counter;
+			call_component[0] = root;
+			call_edge[0] = offsets[root];
+			while (depth >= 0)
+			{
+				int c = call_component[depth];
+				if (call_edge[depth] < offsets[c + 1])
+				{
+					int d = targets[call_edge[depth]++];
+					if (!visited[d])
+					{
+						visited[d] = true;
+						low[d] = counter;
+						depth++;
+						call_component[depth] = d;
+						call_edge[depth] = offsets[d];
+					}
+					continue;
+				}
+				m_post[c] = counter++;
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Gets the closure whose components are labelled.
+	 * @return The closure
+	 */
+	/*@ pure non_null @*/ public TransitiveClosure getClosure()
+	{
+		return m_closure;
+	}
+
+	/**
+	 * Determines if a node reaches another one by following zero or more
+	 * edges.
+	 * @param from The ID of the first node
+	 * @param to The ID of the second node
+	 * @return {@code true} if the first node depends on the second, or if
+	 * they are the same node
+	 */
+	/*@ pure @*/ public boolean reaches(int from, int to)
+	{
+		int c = m_closure.getComponent(from);
+		int p = m_post[m_closure.getComponent(to)];
+		int lo = m_intervalOffsets[c], hi = m_intervalOffsets[c + 1] - 1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (m_intervals[2 * mid + 1] < p)
+			{
+				lo = mid + 1;
+			}
+			else if (m_intervals[2 * mid] > p)
+			{
+				hi = mid - 1;
+			}
+			else
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the total number of intervals stored in the index.
+	 * @return The number of intervals
+	 */
+	/*@ pure @*/ public int getIntervalCount()
+	{
+		return m_intervals.length / 2;
+	}
+
+	protected static long pack(int start, int end)
+	{
+		return (((long) start) << 32) | (end & 0xffffffffL);
+	}
+}
@@ -0,0 +1,350 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import ca.uqac.lif.pagen.LayoutConstraint.Disjoint;
+
+/**
+ * An R-tree over the boxes of a page, built in bulk with the
+ * Sort-Tile-Recursive method. The boxes are sorted by the <i>x</i> position
+ * of their center and cut into vertical slices, each slice is sorted by
+ * <i>y</i>, and consecutive runs of boxes become the leaves of the tree; the
+ * upper levels group consecutive nodes of the level below. Finding the boxes
+ * that intersect a rectangle then takes logarithmic time plus the size of
+ * the result.
+ * <p>
+ * The index records the position of the boxes when it is built, and is not
+ * updated if they are moved afterwards. Two boxes intersect if their
+ * interiors overlap, which is when a {@link Disjoint} constraint between
+ * them is violated; boxes that only touch do not.
+ */
+public class SpatialIndex
+{
+	/**
+	 * The maximum number of children of a node of the tree
+	 */
+	protected static final int NODE_CAPACITY = 16;
+
+	/**
+	 * The boxes, in the order of the leaves of the tree
+	 */
+	/*@ non_null @*/ protected final Box[] m_boxes;
+
+	/**
+	 * The bounds of the entries of each level of the tree. Level 0 holds the
+	 * boxes, and entry <i>i</i> of a level covers entries
+	 * <i>i</i>&times;{@value #NODE_CAPACITY} and following of the level
+	 * below. Each entry takes four values: minimum <i>x</i>, minimum
+	 * <i>y</i>, maximum <i>x</i> and maximum <i>y</i>.
+	 */
+	/*@ non_null @*/ protected final float[][] m_levels;
+
+	/**
+	 * Creates an index over all the boxes of a tree.
+	 * @param root The root of the tree
+	 * @return The index
+	 */
+	/*@ non_null @*/ public static SpatialIndex of(/*@ non_null @*/ Box root)
+	{
+		List<Box> boxes = new ArrayList<Box>();
+		List<Box> stack = new ArrayList<Box>();
+		stack.add(root);
+		while (!stack.isEmpty())
+		{
+			Box b = stack.remove(stack.size() - 1);
+			boxes.add(b);
+			stack.addAll(b.getChildren());
+		}
+		return new SpatialIndex(boxes);
+	}
+
+	/**
+	 * Creates an index over a collection of boxes.
+	 * @param boxes The boxes
+	 */
+	public SpatialIndex(/*@ non_null @*/ Collection<Box> boxes)
+	{
+		super();
+		int n = boxes.size();
+		m_boxes = boxes.toArray(new Box[n]);
+		final float[] bounds = new float[4 * n];
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++)
+		{
+			Box b = m_boxes[i];
+			bounds[4 * i] = b.getX();
+			bounds[4 * i + 1] = b.getY();
+			bounds[4 * i + 2] = bounds[4 * i] + b.getWidth();
+			bounds[4 * i + 3] = bounds[4 * i + 1] + b.getHeight();
+			order[i] = i;
+		}
+		// Cut into slices along x, then sort each slice along y
+		int leaves = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+		int slice = NODE_CAPACITY * (int) Math.ceil(Math.sqrt(leaves));
+		Arrays.sort(order, new CenterComparator(bounds, 0));
+		Comparator<Integer> by_y = new CenterComparator(bounds, 1);
+		for (int start = 0; start < n; start += slice)
+		{
+			Arrays.sort(order, start, Math.min(n, start + slice), by_y);
+		}
+		Box[] sorted = new Box[n];
+		float[] level = new float[4 * n];
+		for (int i = 0; i < n; i++)
+		{
+			sorted[i] = m_boxes[order[i]];
+			System.arraycopy(bounds, 4 * order[i], level, 4 * i, 4);
+		}
+		System.arraycopy(sorted, 0, m_boxes, 0, n);
+		List<float[]> levels = new ArrayList<float[]>();
+		levels.add(level);
+		while (level.length > 4 * NODE_CAPACITY)
+		{
+			level = group(level);
+			levels.add(level);
+		}
+		m_levels = levels.toArray(new float[levels.size()][]);
+	}
+
+	/**
+	 * Computes the bounds of the nodes of the level above a level of the
+	 * tree.
+	 * @param level The bounds of the entries of the level
+	 * @return The bounds of the nodes above them
+	 */
+	/*@ non_null @*/ protected static float[] group(/*@ non_null @*/ float[] level)
+	{
+		int entries = level.length / 4;
+		int nodes = (entries + NODE_CAPACITY - 1) / NODE_CAPACITY;
+		float[] above = new float[4 * nodes];
+		for (int i = 0; i < nodes; i++)
+		{
+			above[4 * i] = Float.MAX_VALUE;
+			above[4 * i + 1] = Float.MAX_VALUE;
+			above[4 * i + 2] = -Float.MAX_VALUE;
+			above[4 * i + 3] = -Float.MAX_VALUE;
+			for (int j = i * NODE_CAPACITY; j < Math.min(entries, (i + 1) * NODE_CAPACITY); j++)
+			{
+				above[4 * i] = Math.min(above[4 * i], level[4 * j]);
+				above[4 * i + 1] = Math.min(above[4 * i + 1], level[4 * j + 1]);
+				above[4 * i + 2] = Math.max(above[4 * i + 2], level[4 * j + 2]);
+				above[4 * i + 3] = Math.max(above[4 * i + 3], level[4 * j + 3]);
+			}
+		}
+		return above;
+	}
+
+	/**
+	 * Gets the number of boxes in the index.
+	 * @return The number of boxes
+	 */
+	/*@ pure @*/ public int size()
+	{
+		return m_boxes.length;
+	}
+
+	/**
+	 * Gets the boxes that intersect a rectangle.
+	 * @param x The <i>x</i> position of the rectangle
+	 * @param y The <i>y</i> position of the rectangle
+	 * @param w The width of the rectangle
+	 * @param h The height of the rectangle
+	 * @return The boxes, in no particular order
+	 */
+	/*@ non_null @*/ public List<Box> query(float x, float y, float w, float h)
+	{
+		List<Box> out = new ArrayList<Box>();
+		for (int i : search(x, y, x + w, y + h))
+		{
+			out.add(m_boxes[i]);
+		}
+		return out;
+	}
+
+	/**
+	 * Gets the boxes of the index that intersect a box, other than the box
+	 * itself.
+	 * @param b The box
+	 * @return The boxes, in no particular order
+	 */
+	/*@ non_null @*/ public List<Box> query(/*@ non_null @*/ Box b)
+	{
+		List<Box> out = query(b.getX(), b.getY(), b.getWidth(), b.getHeight());
+		out.remove(b);
+		return out;
+	}
+
+	/**
+	 * Gets all the pairs of boxes of the index that intersect, where
+	 * neither box is an ancestor of the other. Each pair is given as a
+	 * {@link Disjoint} constraint, which is violated. Siblings are put in
+	 * the order of the children of their parent, as in
+	 * {@link Disjoint#getFamily(Box)}, and other pairs in the order of their
+	 * identifiers.
+	 * @return The constraints, in no particular order
+	 */
+	/*@ non_null @*/ public List<LayoutConstraint> getOverlaps()
+	{
+		List<LayoutConstraint> out = new ArrayList<LayoutConstraint>();
+		float[] leaves = m_levels[0];
+		for (int i = 0; i < m_boxes.length; i++)
+		{
+			for (int j : search(leaves[4 * i], leaves[4 * i + 1], leaves[4 * i + 2], leaves[4 * i + 3]))
+			{
+				if (j <= i)
+				{
+					continue;
+				}
+				Box b1 = m_boxes[i], b2 = m_boxes[j];
+				if (isAncestor(b1, b2) || isAncestor(b2, b1))
+				{
+					continue;
+				}
+				if (isBefore(b2, b1))
+				{
+					Box tmp = b1;
+					b1 = b2;
+					b2 = tmp;
+				}
+				out.add(new Disjoint(b1, b2));
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Finds the positions in {@link #m_boxes} of the boxes whose interior
+	 * overlaps a rectangle.
+	 * @param min_x The minimum <i>x</i> of the rectangle
+	 * @param min_y The minimum <i>y</i> of the rectangle
+	 * @param max_x The maximum <i>x</i> of the rectangle
+	 * @param max_y The maximum <i>y</i> of the rectangle
+	 * @return The positions
+	 */
+	/*@ non_null @*/ protected List<Integer> search(float min_x, float min_y, float max_x, float max_y)
+	{
+		List<Integer> out = new ArrayList<Integer>();
+		if (m_boxes.length == 0)
+		{
+			return out;
+		}
+		// Pairs of level and entry left to visit
+		int[] stack = new int[2 * (NODE_CAPACITY * m_levels.length + 1)];
+		int top = 0;
+		int root_level = m_levels.length - 1;
+		for (int i = 0; i < m_levels[root_level].length / 4; i++)
+		{
+			stack[top++] = root_level;
+			stack[top++] = i;
+		}
+		while (top > 0)
+		{
+			int entry = stack[--top];
+			int level = stack[--top];
+			float[] bounds = m_levels[level];
+			if (bounds[4 * entry] >= max_x || min_x >= bounds[4 * entry + 2] || bounds[4 * entry + 1] >= max_y || min_y >= bounds[4 * entry + 3])
+			{
+				continue;
+			}
+			if (level == 0)
+			{
+				out.add(entry);
+				continue;
+			}
+			int below = m_levels[level - 1].length / 4;
+			for (int j = entry * NODE_CAPACITY; j < Math.min(below, (entry + 1) * NODE_CAPACITY); j++)
+			{
+				stack[top++] = level - 1;
+				stack[top++] = j;
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Determines if a box is an ancestor of another.
+	 * @param ancestor The first box
+	 * @param b The second box
+	 * @return {@code true} if the first box is a strict ancestor of the
+	 * second, {@code false} otherwise
+	 */
+	protected static boolean isAncestor(/*@ non_null @*/ Box ancestor, /*@ non_null @*/ Box b)
+	{
+		for (Box p = b.getParent(); p != null; p = p.getParent())
+		{
+			if (p.equals(ancestor))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determines if a box comes before another in a {@link Disjoint}
+	 * constraint.
+	 * @param b1 The first box
+	 * @param b2 The second box
+	 * @return {@code true} if the first box comes first
+	 */
+	protected static boolean isBefore(/*@ non_null @*/ Box b1, /*@ non_null @*/ Box b2)
+	{
+		Box parent = b1.getParent();
+		if (parent != null && parent.equals(b2.getParent()))
+		{
+			List<Box> siblings = parent.getChildren();
+			return siblings.indexOf(b1) < siblings.indexOf(b2);
+		}
+		return b1.compareTo(b2) < 0;
+	}
+
+	/**
+	 * Orders the positions of boxes by the coordinate of their center along
+	 * one axis.
+	 */
+	protected static class CenterComparator implements Comparator<Integer>
+	{
+		/**
+		 * The bounds of the boxes
+		 */
+		/*@ non_null @*/ protected final float[] m_bounds;
+
+		/**
+		 * The axis, 0 for <i>x</i> and 1 for <i>y</i>
+		 */
+		protected final int m_axis;
+
+		public CenterComparator(/*@ non_null @*/ float[] bounds, int axis)
+		{
+			super();
+			m_bounds = bounds;
+			m_axis = axis;
+		}
+
+		@Override
+		public int compare(Integer i, Integer j)
+		{
+			return Float.compare(m_bounds[4 * i + m_axis] + m_bounds[4 * i + m_axis + 2], m_bounds[4 * j + m_axis] + m_bounds[4 * j + m_axis + 2]);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.io.PrintStream;
+
+/**
+ * Prints the tree of boxes as a graph in the DOT format while the tree is
+ * being generated. The edges from a box to its children are printed as
+ * soon as the box is created, after which the children are detached from
+ * it; the memory used therefore does not grow with the size of the tree.
+ * The graph has the same edges as the one produced by {@link DotRenderer},
+ * but they are printed in a different order.
+ */
+public class StreamingDotRenderer implements RandomBoxPicker.BuildListener
+{
+	/**
+	 * The print stream to print to
+	 */
+	/*@ non_null @*/ protected final PrintStream m_ps;
+	
+	/**
+	 * Creates a new streaming DOT renderer.
+	 * @param ps The print stream to print to
+	 */
+	public StreamingDotRenderer(/*@ non_null @*/ PrintStream ps)
+	{
+		super();
+		m_ps = ps;
+	}
+	
+	/**
+	 * Prints the beginning of the graph. This must be called before the
+	 * tree is generated.
+	 */
+	public void start()
+	{
+		DotRenderer.printHeader(m_ps);
+	}
+	
+	/**
+	 * Prints the end of the graph. This must be called after the tree is
+	 * generated.
+	 */
+	public void finish()
+	{
+		DotRenderer.printFooter(m_ps);
+		m_ps.flush();
+	}
+	
+	@Override
+	public void beginBox(int depth)
+	{
+		// Nothing to do
+	}
+	
+	@Override
+	public void endBox(Box b, int depth)
+	{
+		int id = b.getId();
+		for (Box b_c : b.getChildren())
+		{
+			m_ps.println(id + " -> " + b_c.getId() + ";");
+		}
+		b.getChildren().clear();
+	}
+}
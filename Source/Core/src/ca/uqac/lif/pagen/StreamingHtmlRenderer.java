@@ -0,0 +1,399 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.uqac.lif.synthia.Picker;
+
+/**
+ * Writes the tree of boxes to an HTML file as nested divs while the tree is
+ * being generated. The boxes are written in document order, but the
+ * attributes of a box are only known once its parent has arranged it. The
+ * renderer therefore first writes a fixed-width placeholder for the opening
+ * tag of each box, and overwrites it with the actual tag once the parent of
+ * the box is created. The children of a box are detached from it as soon
+ * as their tags are written; the memory used is thus proportional to the
+ * depth of the tree times its degree, and not to its size.
+ * <p>
+ * The file has the same structure and colors as the one produced by
+ * {@link HtmlNestedRenderer}, with two differences: the opening tags are
+ * padded with spaces before their closing bracket, and the position of a
+ * box is the offset stored relative to its parent, rather than the
+ * difference between the absolute positions of the box and its parent
+ * (the two may differ in the last digit).
+ */
+public class StreamingHtmlRenderer implements RandomBoxPicker.BuildListener
+{
+	/**
+	 * The maximum number of characters taken by a float printed in a tag.
+	 * {@link Float#toString(float)} never writes more than a sign, nine
+	 * significant digits, a decimal point and an exponent of two digits with
+	 * its sign, as in the string below; the tag of a box thus always fits in
+	 * its placeholder, whatever the values of its attributes.
+	 */
+	protected static final int s_maxFloatLength = "-1.23456789E-38".length();
+
+	/**
+	 * The maximum length of an opening tag, not counting its color
+	 */
+	protected static final int s_maxTagLength = ("<div class=\"box altered\" title=\"" + Integer.MIN_VALUE + " Altered\" style=\"left:px;top:px;width:px;height:px;background-color:\">").length() + 4 * s_maxFloatLength;
+
+	/**
+	 * The picker giving a color to each box
+	 */
+	/*@ non_null @*/ protected final Picker<String> m_color;
+
+	/**
+	 * The stream writing to the file
+	 */
+	/*@ non_null @*/ protected final PatchableOutputStream m_out;
+
+	/**
+	 * A print stream wrapped around {@link #m_out}
+	 */
+	/*@ non_null @*/ protected final PrintStream m_ps;
+
+	/**
+	 * For each depth of the tree, the placeholders written for the boxes
+	 * whose tag is not yet known
+	 */
+	/*@ non_null @*/ protected final List<List<Placeholder>> m_pending;
+
+	/**
+	 * The first error that occurred while overwriting a placeholder, if any
+	 */
+	/*@ null @*/ protected IOException m_error;
+
+	/**
+	 * Creates a new streaming HTML renderer.
+	 * @param color The picker giving a color to each box
+	 * @param f The file to write to. Since the renderer writes back into the
+	 * file, it cannot write to an arbitrary stream.
+	 * @throws IOException If the file cannot be opened
+	 */
+	public StreamingHtmlRenderer(/*@ non_null @*/ Picker<String> color, /*@ non_null @*/ File f) throws IOException
+	{
+		super();
+		m_color = color;
+		m_out = new PatchableOutputStream(f);
+		m_ps = new PrintStream(m_out);
+		m_pending = new ArrayList<List<Placeholder>>();
+	}
+
+	/**
+	 * Writes the beginning of the document. This must be called before the
+	 * tree is generated.
+	 */
+	public void start()
+	{
+		HtmlRenderer.printHeader(m_ps);
+	}
+
+	/**
+	 * Writes the end of the document and closes the file. This must be
+	 * called after the tree is generated.
+	 * @throws IOException If the file cannot be written
+	 */
+	public void finish() throws IOException
+	{
+		HtmlRenderer.printFooter(m_ps);
+		m_ps.flush();
+		if (m_error != null)
+		{
+			throw m_error;
+		}
+		if (m_ps.checkError())
+		{
+			throw new IOException("Cannot write the HTML file");
+		}
+		m_out.close();
+	}
+
+	@Override
+	public void beginBox(int depth)
+	{
+		String color = m_color.pick();
+		int width = s_maxTagLength + color.length();
+		m_out.writeSpaces(depth);
+		getPending(depth).add(new Placeholder(m_out.position(), width, color));
+		m_out.writeSpaces(width);
+		m_ps.println();
+	}
+
+	@Override
+	public void endBox(Box b, int depth)
+	{
+		m_out.writeSpaces(depth);
+		m_ps.println("</div>");
+		List<Box> children = b.getChildren();
+		if (!children.isEmpty())
+		{
+			List<Placeholder> placeholders = getPending(depth + 1);
+			for (int i = 0; i < children.size(); i++)
+			{
+				patch(placeholders.get(i), children.get(i));
+			}
+			placeholders.clear();
+			children.clear();
+		}
+		if (depth == 0)
+		{
+			List<Placeholder> placeholders = getPending(0);
+			patch(placeholders.get(0), b);
+			placeholders.clear();
+		}
+	}
+
+	/**
+	 * Overwrites the placeholder of a box with its opening tag.
+	 * @param p The placeholder
+	 * @param b The box
+	 */
+	protected void patch(Placeholder p, Box b)
+	{
+		StringBuilder tag = new StringBuilder(p.m_width);
+		tag.append("<div class=\"box");
+		String title = "" + b.getId();
+		if (b.isAltered())
+		{
+			tag.append(" altered");
+			title += " Altered";
+		}
+		tag.append("\" title=\"").append(title).append("\" style=\"left:");
+		tag.append(b.getRelativeX()).append("px;top:").append(b.getRelativeY());
+		tag.append("px;width:").append(b.getWidth()).append("px;height:").append(b.getHeight());
+		tag.append("px;background-color:").append(p.m_color).append("\"");
+		while (tag.length() < p.m_width - 1)
+		{
+			tag.append(' ');
+		}
+		tag.append('>');
+		if (tag.length() != p.m_width)
+		{
+			throw new IllegalStateException("Tag of box " + b.getId() + " does not fit in its placeholder");
+		}
+		try
+		{
+			m_out.patch(p.m_offset, tag.toString().getBytes(Charset.defaultCharset()));
+		}
+		catch (IOException e)
+		{
+			if (m_error == null)
+			{
+				m_error = e;
+			}
+		}
+	}
+
+	protected List<Placeholder> getPending(int depth)
+	{
+		while (m_pending.size() <= depth)
+		{
+			m_pending.add(new ArrayList<Placeholder>());
+		}
+		return m_pending.get(depth);
+	}
+
+	/**
+	 * The location in the file of the opening tag of a box
+	 */
+	protected static class Placeholder
+	{
+		/**
+		 * The position of the placeholder in the file
+		 */
+		protected final long m_offset;
+
+		/**
+		 * The number of bytes reserved for the tag
+		 */
+		protected final int m_width;
+
+		/**
+		 * The color of the box
+		 */
+		/*@ non_null @*/ protected final String m_color;
+
+		public Placeholder(long offset, int width, /*@ non_null @*/ String color)
+		{
+			super();
+			m_offset = offset;
+			m_width = width;
+			m_color = color;
+		}
+	}
+
+	/**
+	 * A buffered output stream to a file, which can overwrite bytes it has
+	 * already written. Bytes still in the buffer are overwritten in place;
+	 * the others are overwritten directly in the file.
+	 */
+	protected static class PatchableOutputStream extends OutputStream
+	{
+		/**
+		 * The file
+		 */
+		/*@ non_null @*/ protected final RandomAccessFile m_file;
+
+		/**
+		 * The channel used to write to the file
+		 */
+		/*@ non_null @*/ protected final FileChannel m_channel;
+
+		/**
+		 * The bytes written but not yet sent to the file
+		 */
+		/*@ non_null @*/ protected final byte[] m_buffer;
+
+		/**
+		 * The number of bytes in the buffer
+		 */
+		protected int m_length;
+
+		/**
+		 * The number of bytes already sent to the file
+		 */
+		protected long m_flushed;
+
+		public PatchableOutputStream(/*@ non_null @*/ File f) throws IOException
+		{
+			super();
+			m_file = new RandomAccessFile(f, "rw");
+			m_file.setLength(0);
+			m_channel = m_file.getChannel();
+			m_buffer = new byte[1 << 16];
+			m_length = 0;
+			m_flushed = 0;
+		}
+
+		/**
+		 * Gets the position in the file of the next byte to be written.
+		 * @return The position
+		 */
+		public long position()
+		{
+			return m_flushed + m_length;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			if (m_length == m_buffer.length)
+			{
+				flush();
+			}
+			m_buffer[m_length++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			if (len > m_buffer.length - m_length)
+			{
+				flush();
+				if (len > m_buffer.length)
+				{
+					writeFully(ByteBuffer.wrap(b, off, len), m_flushed);
+					m_flushed += len;
+					return;
+				}
+			}
+			System.arraycopy(b, off, m_buffer, m_length, len);
+			m_length += len;
+		}
+
+		/**
+		 * Writes a number of spaces.
+		 * @param n The number of spaces
+		 */
+		public void writeSpaces(int n)
+		{
+			while (n > 0)
+			{
+				if (m_length == m_buffer.length)
+				{
+					try
+					{
+						flush();
+					}
+					catch (IOException e)
+					{
+						throw new IllegalStateException(e);
+					}
+				}
+				int len = Math.min(n, m_buffer.length - m_length);
+				Arrays.fill(m_buffer, m_length, m_length + len, (byte) ' ');
+				m_length += len;
+				n -= len;
+			}
+		}
+
+		/**
+		 * Overwrites bytes already written.
+		 * @param position The position in the file of the first byte
+		 * @param b The new bytes
+		 * @throws IOException If the file cannot be written
+		 */
+		public void patch(long position, byte[] b) throws IOException
+		{
+			int in_file = (int) Math.max(0, Math.min(b.length, m_flushed - position));
+			if (in_file > 0)
+			{
+				writeFully(ByteBuffer.wrap(b, 0, in_file), position);
+			}
+			if (in_file < b.length)
+			{
+				System.arraycopy(b, in_file, m_buffer, (int) (position + in_file - m_flushed), b.length - in_file);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			writeFully(ByteBuffer.wrap(m_buffer, 0, m_length), m_flushed);
+			m_flushed += m_length;
+			m_length = 0;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			flush();
+			m_file.close();
+		}
+
+		protected void writeFully(ByteBuffer buf, long position) throws IOException
+		{
+			while (buf.hasRemaining())
+			{
+				position += m_channel.write(buf, position);
+			}
+		}
+	}
+}
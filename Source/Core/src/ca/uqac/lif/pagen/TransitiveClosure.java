@@ -0,0 +1,665 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ca.uqac.lif.pagen.BoxProperty.Property;
+
+/**
+ * Computes the transitive closure of a {@link CompactDependencyGraph}.
+ * The nodes are first grouped into strongly connected components, which
+ * are visited in reverse topological order; the set of nodes reachable
+ * from a component is then the union of its own nodes and of the sets of
+ * its successors. These sets are stored once per component as sorted
+ * arrays of node IDs, and are shared by all the nodes of the component.
+ * <p>
+ * As in {@link BoxDependencyGraph#getTransitiveClosure(Set)}, the closure
+ * of a box property does not go through the other properties of the same
+ * box. The precomputed sets are used directly when none of them leads to
+ * such a property, which is the case for the graphs produced by the layout
+ * managers; otherwise the closure is found by a scan that avoids these
+ * properties.
+ * <p>
+ * The closure of a property is given as a view of these arrays rather
+ * than as a set of its own: on deep pages, the closures of the ancestors
+ * of a box contain one another, and copying them would store the same
+ * elements over and over.
+ * <p>
+ * Once created, the object is immutable and can be queried by multiple
+ * threads at once.
+ */
+public class TransitiveClosure
+{
+	/**
+	 * The maximum number of box properties handled by a task of
+	 * {@link #getTransitiveClosure(Set, int)} without splitting it
+	 */
+	protected static final int s_threshold = 256;
+
+	/**
+	 * An empty array of node IDs
+	 */
+	protected static final int[] s_empty = new int[0];
+
+	/**
+	 * The graph
+	 */
+	/*@ non_null @*/ protected final CompactDependencyGraph m_graph;
+
+	/**
+	 * The strongly connected component of each node
+	 */
+	/*@ non_null @*/ protected final int[] m_component;
+
+	/**
+	 * For each component, the sorted IDs of the nodes reachable from it,
+	 * including its own nodes
+	 */
+	/*@ non_null @*/ protected final int[][] m_reach;
+
+	/**
+	 * Whether the graph has nodes standing for a delta property. The scan
+	 * done by {@link BoxDependencyGraph} treats these nodes in a special
+	 * way, which the precomputed sets do not reproduce.
+	 */
+	protected final boolean m_hasDeltas;
+
+	/**
+	 * Computes the closure of a graph.
+	 * @param g The graph
+	 */
+	public TransitiveClosure(/*@ non_null @*/ CompactDependencyGraph g)
+	{
+		super();
+		m_graph = g;
+		int num_nodes = g.getNodeCount();
+		m_component = new int[num_nodes];
+		boolean has_deltas = false;
+		for (int n = 0; n < num_nodes; n++)
+		{
+			BoxProperty bp = g.getNode(n);
+			has_deltas |= bp.getAbsolute() != bp;
+		}
+		m_hasDeltas = has_deltas;
+		int[][] members = findComponents();
+		m_reach = new int[members.length][];
+		int[] offsets = g.getInfluencedByOffsets();
+		int[] targets = g.getInfluencedByTargets();
+		int[] stamp = new int[members.length];
+		Arrays.fill(stamp, -1);
+		int[] buffer = new int[16];
+		// Components are numbered in reverse topological order: successors come first
+		for (int c = 0; c < members.length; c++)
+		{
+			int length = 0;
+			for (int n : members[c])
+			{
+				for (int i = offsets[n]; i < offsets[n + 1]; i++)
+				{
+					int d = m_component[targets[i]];
+					if (d == c || stamp[d] == c)
+					{
+						continue;
+					}
+					stamp[d] = c;
+					if (length == buffer.length)
+					{
+						buffer = Arrays.copyOf(buffer, length * 2);
+					}
+					buffer[length++] = d;
+				}
+			}
+			if (length == 0)
+			{
+				m_reach[c] = members[c];
+			}
+			else if (length == 1 && members[c].length == 1 && m_reach[buffer[0]].length == 0)
+			{
+				m_reach[c] = members[c];
+			}
+			else
+			{
+				int[] reach = members[c];
+				for (int i = 0; i < length; i++)
+				{
+					reach = merge(reach, m_reach[buffer[i]]);
+				}
+				m_reach[c] = reach;
+			}
+		}
+	}
+
+	/**
+	 * Finds the strongly connected components of the graph with an
+	 * iterative version of Tarjan's algorithm. Each component is given an
+	 * ID in the order it is found, which is a reverse topological order.
+	 * @return The sorted IDs of the nodes of each component
+	 */
+	protected int[][] findComponents()
+	{
+		int num_nodes = m_graph.getNodeCount();
+		int[] offsets = m_graph.getInfluencedByOffsets();
+		int[] targets = m_graph.getInfluencedByTargets();
+		int[] index = new int[num_nodes];
+		int[] low = new int[num_nodes];
+		Arrays.fill(index, -1);
+		boolean[] on_stack = new boolean[num_nodes];
+		int[] stack = new int[num_nodes];
+		int stack_size = 0;
+		int[] call_node = new int[num_nodes];
+		int[] call_edge = new int[num_nodes];
+		int[][] members = new int[num_nodes][];
+		int num_components = 0;
+		int counter = 0;
+		for (int root = 0; root < num_nodes; root++)
+		{
+			if (index[root] >= 0)
+			{
+				continue;
+			}
+			int depth = 0;
+			call_node[0] = root;
+			call_edge[0] = offsets[root];
+			index[root] = low[root] = counter++;
+			stack[stack_size++] = root;
+			on_stack[root] = true;
+			while (depth >= 0)
+			{
+				int n = call_node[depth];
+				if (call_edge[depth] < offsets[n + 1])
+				{
+					int t = targets[call_edge[depth]++];
+					if (index[t] < 0)
+					{
+						index[t] = low[t] = counter++;
+						stack[stack_size++] = t;
+						on_stack[t] = true;
+						depth++;
+						call_node[depth] = t;
+						call_edge[depth] = offsets[t];
+					}
+					else if (on_stack[t])
+					{
+						low[n] = Math.min(low[n], index[t]);
+					}
+					continue;
+				}
+				if (low[n] == index[n])
+				{
+					int start = stack_size;
+					do
+					{
+						start--;
+						on_stack[stack[start]] = false;
+						m_component[stack[start]] = num_components;
+					}
+					while (stack[start] != n);
+					int[] component = Arrays.copyOfRange(stack, start, stack_size);
+					Arrays.sort(component);
+					members[num_components++] = component;
+					stack_size = start;
+				}
+				depth--;
+				if (depth >= 0)
+				{
+					int parent = call_node[depth];
+					low[parent] = Math.min(low[parent], low[n]);
+				}
+			}
+		}
+		return Arrays.copyOf(members, num_components);
+	}
+
+	/**
+	 * Gets the graph this closure is computed on.
+	 * @return The graph
+	 */
+	/*@ pure non_null @*/ public CompactDependencyGraph getGraph()
+	{
+		return m_graph;
+	}
+
+	/**
+	 * Gets the number of strongly connected components of the graph.
+	 * @return The number of components
+	 */
+	/*@ pure @*/ public int getComponentCount()
+	{
+		return m_reach.length;
+	}
+
+	/**
+	 * Gets the strongly connected component of a node.
+	 * @param node The ID of the node
+	 * @return The ID of the component
+	 */
+	/*@ pure @*/ public int getComponent(int node)
+	{
+		return m_component[node];
+	}
+
+	/**
+	 * Gets the nodes reachable from a node, including the node itself,
+	 * without excluding the properties of its box. The array is shared and
+	 * must not be modified.
+	 * @param node The ID of the node
+	 * @return The sorted IDs of the nodes
+	 */
+	/*@ pure non_null @*/ public int[] getReach(int node)
+	{
+		return m_reach[m_component[node]];
+	}
+
+	/**
+	 * Gets the nodes in the closure of a node: the node itself and the nodes
+	 * reachable from it without going through another property of its box.
+	 * When no such property is reachable at all, the closure is the set
+	 * returned by {@link #getReach(int)}, and the array is shared.
+	 * @param node The ID of the node
+	 * @return The sorted IDs of the nodes
+	 */
+	/*@ non_null @*/ public int[] getClosure(int node)
+	{
+		int[] excluded = getExcluded(node);
+		int[] offsets = m_graph.getInfluencedByOffsets();
+		int[] targets = m_graph.getInfluencedByTargets();
+		if (!m_hasDeltas)
+		{
+			int[] closure = new int[] {node};
+			boolean direct = true, shared = true;
+			for (int i = offsets[node]; i < offsets[node + 1] && direct; i++)
+			{
+				int t = targets[i];
+				if (Arrays.binarySearch(excluded, t) >= 0)
+				{
+					// The edge itself is skipped, so the closure is smaller than the reach
+					shared = false;
+					continue;
+				}
+				int[] reach = getReach(t);
+				for (int e : excluded)
+				{
+					if (Arrays.binarySearch(reach, e) >= 0)
+					{
+						direct = false;
+						break;
+					}
+				}
+				closure = merge(closure, reach);
+			}
+			if (direct && shared)
+			{
+				return getReach(node);
+			}
+			if (direct)
+			{
+				return closure;
+			}
+		}
+		return scan(node, excluded);
+	}
+
+	/**
+	 * Gets the closure of a set of box properties, in the same form as
+	 * {@link BoxDependencyGraph#getTransitiveClosure(Set)}: each property is
+	 * associated with the delta properties of its closure.
+	 * @param start_list The box properties
+	 * @return The closure of each property
+	 */
+	/*@ non_null @*/ public Map<BoxProperty,Set<BoxProperty>> getTransitiveClosure(/*@ non_null @*/ Set<BoxProperty> start_list)
+	{
+		Map<BoxProperty,Set<BoxProperty>> mapping = new HashMap<BoxProperty,Set<BoxProperty>>();
+		for (BoxProperty start : start_list)
+		{
+			mapping.put(start, getDeltas(start));
+		}
+		return mapping;
+	}
+
+	/**
+	 * Gets the closure of a set of box properties, spreading the properties
+	 * over multiple threads. The result is the same as that of
+	 * {@link #getTransitiveClosure(Set)}: the closure of each property is
+	 * stored at the position of the property in the iteration order of the
+	 * set, and the map is filled in that order once all the threads are
+	 * done.
+	 * @param start_list The box properties
+	 * @param threads The number of threads; values lower than 2 compute the
+	 * closure in the calling thread
+	 * @return The closure of each property
+	 */
+	/*@ non_null @*/ public Map<BoxProperty,Set<BoxProperty>> getTransitiveClosure(/*@ non_null @*/ Set<BoxProperty> start_list, int threads)
+	{
+		if (threads < 2 || start_list.size() <= s_threshold)
+		{
+			return getTransitiveClosure(start_list);
+		}
+		BoxProperty[] starts = start_list.toArray(new BoxProperty[start_list.size()]);
+		List<Set<BoxProperty>> deltas = new ArrayList<Set<BoxProperty>>(Collections.<Set<BoxProperty>>nCopies(starts.length, null));
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try
+		{
+			pool.invoke(new ClosureTask(starts, deltas, 0, starts.length));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		Map<BoxProperty,Set<BoxProperty>> mapping = new HashMap<BoxProperty,Set<BoxProperty>>();
+		for (int i = 0; i < starts.length; i++)
+		{
+			mapping.put(starts[i], deltas.get(i));
+		}
+		return mapping;
+	}
+
+	/**
+	 * Gets the delta properties of the closure of a box property. The set
+	 * cannot be modified; unless the graph has nodes standing for a delta
+	 * property, it is a view of the array returned by
+	 * {@link #getClosure(int)}, so that closures sharing an array do not
+	 * store their elements again.
+	 * @param start The box property
+	 * @return The set of delta properties
+	 */
+	/*@ non_null @*/ public Set<BoxProperty> getDeltas(/*@ non_null @*/ BoxProperty start)
+	{
+		int n = m_graph.getNodeId(start);
+		if (n < 0)
+		{
+			return Collections.singleton(start.getDelta());
+		}
+		int[] closure = getClosure(n);
+		if (!m_hasDeltas)
+		{
+			return new DeltaSet(closure);
+		}
+		// A node and the node of its delta would give the same element twice
+		Set<BoxProperty> deps = new HashSet<BoxProperty>();
+		for (int c : closure)
+		{
+			deps.add(m_graph.getNode(c).getDelta());
+		}
+		return Collections.unmodifiableSet(deps);
+	}
+
+	/**
+	 * Gets the nodes standing for the other properties of the box of a
+	 * node.
+	 * @param node The ID of the node
+	 * @return The sorted IDs of these nodes
+	 */
+	protected int[] getExcluded(int node)
+	{
+		BoxProperty bp = m_graph.getNode(node);
+		int[] excluded = s_empty;
+		for (Property p : Property.values())
+		{
+			if (p == bp.getProperty())
+			{
+				continue;
+			}
+			int n = m_graph.getNodeId(BoxProperty.get(bp.getBox(), p));
+			if (n >= 0)
+			{
+				excluded = Arrays.copyOf(excluded, excluded.length + 1);
+				excluded[excluded.length - 1] = n;
+			}
+		}
+		Arrays.sort(excluded);
+		return excluded;
+	}
+
+	/**
+	 * Finds the closure of a node by a breadth-first scan of the graph.
+	 * @param node The ID of the node
+	 * @param excluded The nodes that the scan must not enter
+	 * @return The sorted IDs of the nodes of the closure
+	 */
+	protected int[] scan(int node, int[] excluded)
+	{
+		int[] offsets = m_graph.getInfluencedByOffsets();
+		int[] targets = m_graph.getInfluencedByTargets();
+		BitSet visited = new BitSet();
+		int[] queue = new int[16];
+		int head = 0, tail = 0;
+		visited.set(node);
+		queue[tail++] = node;
+		while (head < tail)
+		{
+			int current = queue[head++];
+			for (int i = offsets[current]; i < offsets[current + 1]; i++)
+			{
+				int t = targets[i];
+				if (visited.get(t) || Arrays.binarySearch(excluded, t) >= 0 || (m_hasDeltas && isDeltaReached(t, visited)))
+				{
+					continue;
+				}
+				visited.set(t);
+				if (tail == queue.length)
+				{
+					queue = Arrays.copyOf(queue, tail * 2);
+				}
+				queue[tail++] = t;
+			}
+		}
+		int[] closure = Arrays.copyOf(queue, tail);
+		Arrays.sort(closure);
+		return closure;
+	}
+
+	/**
+	 * Determines if a node standing for a delta property should not be
+	 * entered because the corresponding absolute property has already been
+	 * reached, as in {@link BoxDependencyGraph#getTransitiveClosure(Set)}.
+	 */
+	protected boolean isDeltaReached(int node, BitSet visited)
+	{
+		BoxProperty bp = m_graph.getNode(node);
+		BoxProperty abs = bp.getAbsolute();
+		if (abs == bp)
+		{
+			return false;
+		}
+		int n = m_graph.getNodeId(abs);
+		return n >= 0 && visited.get(n);
+	}
+
+	/**
+	 * A task computing the closure of the box properties in an interval of
+	 * an array. Intervals larger than {@link TransitiveClosure#s_threshold}
+	 * are split in two halves, which idle threads of the pool can then
+	 * steal.
+	 */
+	protected class ClosureTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The box properties
+		 */
+		/*@ non_null @*/ protected final BoxProperty[] m_starts;
+
+		/**
+		 * The list where the closure of each property is written
+		 */
+		/*@ non_null @*/ protected final List<Set<BoxProperty>> m_deltas;
+
+		/**
+		 * The index of the first property of the interval (inclusive)
+		 */
+		protected final int m_from;
+
+		/**
+		 * The index of the last property of the interval (exclusive)
+		 */
+		protected final int m_to;
+
+		public ClosureTask(/*@ non_null @*/ BoxProperty[] starts, /*@ non_null @*/ List<Set<BoxProperty>> deltas, int from, int to)
+		{
+			super();
+			m_starts = starts;
+			m_deltas = deltas;
+			m_from = from;
+			m_to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (m_to - m_from <= s_threshold)
+			{
+				for (int i = m_from; i < m_to; i++)
+				{
+					m_deltas.set(i, getDeltas(m_starts[i]));
+				}
+				return;
+			}
+			int middle = (m_from + m_to) >>> 1;
+			invokeAll(new ClosureTask(m_starts, m_deltas, m_from, middle), new ClosureTask(m_starts, m_deltas, middle, m_to));
+		}
+	}
+
+	/**
+	 * An unmodifiable view of the delta properties of a sorted array of
+	 * node IDs. The nodes must all stand for absolute properties, so that
+	 * no two of them have the same delta property. The elements are
+	 * produced in the order of the array as the set is iterated.
+	 */
+	protected class DeltaSet extends AbstractSet<BoxProperty>
+	{
+		/**
+		 * The sorted IDs of the nodes
+		 */
+		/*@ non_null @*/ protected final int[] m_ids;
+
+		public DeltaSet(/*@ non_null @*/ int[] ids)
+		{
+			super();
+			m_ids = ids;
+		}
+
+		@Override
+		public boolean contains(Object o)
+		{
+			if (!(o instanceof BoxProperty))
+			{
+				return false;
+			}
+			BoxProperty bp = (BoxProperty) o;
+			BoxProperty abs = bp.getAbsolute();
+			if (abs == bp)
+			{
+				return false;
+			}
+			int n = m_graph.getNodeId(abs);
+			return n >= 0 && Arrays.binarySearch(m_ids, n) >= 0;
+		}
+
+		@Override
+		public int size()
+		{
+			return m_ids.length;
+		}
+
+		@Override
+		public Iterator<BoxProperty> iterator()
+		{
+			return new Iterator<BoxProperty>()
+			{
+				protected int m_next = 0;
+
+				@Override
+				public boolean hasNext()
+				{
+					return m_next < m_ids.length;
+				}
+
+				@Override
+				public BoxProperty next()
+				{
+					if (m_next >= m_ids.length)
+					{
+						throw new NoSuchElementException();
+					}
+					return m_graph.getNode(m_ids[m_next++]).getDelta();
+				}
+			};
+		}
+	}
+
+	/**
+	 * Computes the union of two sorted arrays of distinct integers.
+	 * @param a The first array
+	 * @param b The second array
+	 * @return The sorted union; this is one of the arrays if it contains the
+	 * other
+	 */
+	protected static int[] merge(int[] a, int[] b)
+	{
+		int[] out = new int[a.length + b.length];
+		int i = 0, j = 0, k = 0;
+		while (i < a.length && j < b.length)
+		{
+			if (a[i] < b[j])
+			{
+				out[k++] = a[i++];
+			}
+			else if (a[i] > b[j])
+			{
+				out[k++] = b[j++];
+			}
+			else
+			{
+				out[k++] = a[i++];
+				j++;
+			}
+		}
+		while (i < a.length)
+		{
+			out[k++] = a[i++];
+		}
+		while (j < b.length)
+		{
+			out[k++] = b[j++];
+		}
+		if (k == a.length)
+		{
+			return a;
+		}
+		if (k == b.length)
+		{
+			return b;
+		}
+		return Arrays.copyOf(out, k);
+	}
+}
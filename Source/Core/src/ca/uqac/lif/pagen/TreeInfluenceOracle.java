@@ -0,0 +1,295 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uqac.lif.pagen.BoxProperty.Property;
+
+/**
+ * Answers {@link BoxDependencyGraph#influences(Box, Box)} from the shape of
+ * the tree of boxes instead of the graph. The flow layouts make the X of a
+ * box depend on the X of its parent and, in a horizontal layout, on the X
+ * and width of its previous sibling. The X of a box therefore influences
+ * the boxes below it, and, if its parent lays out its children
+ * horizontally, the later siblings of the box and the boxes below them.
+ * With the boxes numbered in the order of a depth-first traversal, each of
+ * these sets is an interval of numbers, so that a query takes constant time.
+ * <p>
+ * The oracle first checks which edges of the graph follow this pattern.
+ * If a box lacks the edge to its parent, every query is passed on to the
+ * graph. If the graph has other edges, the queries that the tree answers
+ * negatively are passed on to the graph, since these edges may create
+ * other paths.
+ */
+public class TreeInfluenceOracle
+{
+	/**
+	 * The graph
+	 */
+	/*@ non_null @*/ protected final CompactDependencyGraph m_graph;
+
+	/**
+	 * The boxes of the tree, indexed by their ID
+	 */
+	/*@ non_null @*/ protected Box[] m_boxes;
+
+	/**
+	 * The number of each box in the order of a depth-first traversal,
+	 * indexed by the ID of the box
+	 */
+	/*@ non_null @*/ protected int[] m_first;
+
+	/**
+	 * The highest number of a box below each box, indexed by the ID of the
+	 * box
+	 */
+	/*@ non_null @*/ protected int[] m_last;
+
+	/**
+	 * Whether the X of each child of a box depends on the X of its previous
+	 * sibling, indexed by the ID of the box
+	 */
+	/*@ non_null @*/ protected boolean[] m_chained;
+
+	/**
+	 * The sibling before each box in the list of children of its parent,
+	 * indexed by the ID of the box
+	 */
+	/*@ non_null @*/ protected Box[] m_previous;
+
+	/**
+	 * Whether every box of the tree other than the root depends on the X of
+	 * its parent; if not, the tree is not used
+	 */
+	protected boolean m_complete;
+
+	/**
+	 * Whether the graph has edges that do not follow the pattern of the
+	 * flow layouts
+	 */
+	protected boolean m_extra;
+
+	/**
+	 * Creates an oracle for a graph. The tree is the one containing the box
+	 * of the first node of the graph.
+	 * @param g The graph
+	 */
+	public TreeInfluenceOracle(/*@ non_null @*/ CompactDependencyGraph g)
+	{
+		super();
+		m_graph = g;
+		m_boxes = new Box[0];
+		m_first = new int[0];
+		m_last = new int[0];
+		m_chained = new boolean[0];
+		m_previous = new Box[0];
+		m_complete = false;
+		m_extra = true;
+		if (g.getNodeCount() == 0)
+		{
+			return;
+		}
+		Box root = g.getNode(0).getBox();
+		while (root.getParent() != null)
+		{
+			root = root.getParent();
+		}
+		number(root);
+		classify();
+	}
+
+	/**
+	 * Numbers the boxes of a tree in the order of an iterative depth-first
+	 * traversal.
+	 * @param root The root of the tree
+	 */
+	protected void number(/*@ non_null @*/ Box root)
+	{
+		List<Box> boxes = new ArrayList<Box>();
+		List<Box> stack = new ArrayList<Box>();
+		int max_id = -1;
+		stack.add(root);
+		while (!stack.isEmpty())
+		{
+			Box b = stack.remove(stack.size() - 1);
+			boxes.add(b);
+			max_id = Math.max(max_id, b.getId());
+			List<Box> children = b.getChildren();
+			for (int i = children.size() - 1; i >= 0; i--)
+			{
+				stack.add(children.get(i));
+				max_id = Math.max(max_id, children.get(i).getId());
+			}
+		}
+		m_boxes = new Box[max_id + 1];
+		m_first = new int[max_id + 1];
+		m_last = new int[max_id + 1];
+		m_chained = new boolean[max_id + 1];
+		m_previous = new Box[max_id + 1];
+		for (int i = 0; i < boxes.size(); i++)
+		{
+			Box b = boxes.get(i);
+			m_boxes[b.getId()] = b;
+			m_first[b.getId()] = i;
+			m_last[b.getId()] = i;
+			List<Box> children = b.getChildren();
+			for (int j = 1; j < children.size(); j++)
+			{
+				m_previous[children.get(j).getId()] = children.get(j - 1);
+			}
+		}
+		// A box comes after all its ancestors: visit in reverse to close the intervals
+		for (int i = boxes.size() - 1; i > 0; i--)
+		{
+			Box b = boxes.get(i);
+			int parent = b.getParent().getId();
+			m_last[parent] = Math.max(m_last[parent], m_last[b.getId()]);
+		}
+	}
+
+	/**
+	 * Sorts the edges of the graph into those following the pattern of the
+	 * flow layouts and the others.
+	 */
+	protected void classify()
+	{
+		int[] offsets = m_graph.getInfluencedByOffsets();
+		int[] targets = m_graph.getInfluencedByTargets();
+		boolean[] anchored = new boolean[m_boxes.length];
+		int[] links = new int[m_boxes.length];
+		boolean extra = false;
+		for (int n = 0; n < m_graph.getNodeCount(); n++)
+		{
+			BoxProperty bp = m_graph.getNode(n);
+			Box b = bp.getBox();
+			if (!contains(b))
+			{
+				extra = true;
+				continue;
+			}
+			Box parent = b.getParent();
+			Box previous = m_previous[b.getId()];
+			for (int i = offsets[n]; i < offsets[n + 1]; i++)
+			{
+				BoxProperty target = m_graph.getNode(targets[i]);
+				Box t = target.getBox();
+				Property p = bp.getProperty(), q = target.getProperty();
+				if (t.equals(parent) && p == q && (p == Property.X || p == Property.Y))
+				{
+					if (p == Property.X)
+					{
+						anchored[b.getId()] = true;
+					}
+				}
+				else if (t.equals(previous) && p == Property.X && q == Property.X)
+				{
+					links[parent.getId()]++;
+				}
+				else if (!(t.equals(previous) && ((p == Property.X && q == Property.W) || (p == Property.Y && (q == Property.Y || q == Property.H)))))
+				{
+					extra = true;
+				}
+			}
+		}
+		boolean complete = true;
+		for (Box b : m_boxes)
+		{
+			if (b == null)
+			{
+				continue;
+			}
+			if (b.getParent() != null && !anchored[b.getId()])
+			{
+				complete = false;
+			}
+			int num_children = b.getChildren().size();
+			if (links[b.getId()] == num_children - 1)
+			{
+				m_chained[b.getId()] = true;
+			}
+			else if (links[b.getId()] > 0)
+			{
+				// Part of a chain: the links are treated as arbitrary edges
+				extra = true;
+			}
+		}
+		m_complete = complete;
+		m_extra = extra;
+	}
+
+	/**
+	 * Gets the graph this oracle answers for.
+	 * @return The graph
+	 */
+	/*@ pure non_null @*/ public CompactDependencyGraph getGraph()
+	{
+		return m_graph;
+	}
+
+	/**
+	 * Determines if the tree alone answers all the queries, that is, if the
+	 * edges of the graph are exactly those of the flow layouts.
+	 * @return {@code true} if the graph is never consulted
+	 */
+	/*@ pure @*/ public boolean isExact()
+	{
+		return m_complete && !m_extra;
+	}
+
+	/**
+	 * Determines if box b1 influences box b2.
+	 * @param b1 The first box
+	 * @param b2 The second box
+	 * @return {@code true} if b1 influences b2, {@code false} otherwise
+	 */
+	public boolean influences(/*@ non_null @*/ Box b1, /*@ non_null @*/ Box b2)
+	{
+		if (!m_complete || !contains(b1) || !contains(b2) || m_graph.getNodeId(BoxProperty.get(b1, Property.X)) < 0)
+		{
+			return m_graph.indexInfluences(b1, b2);
+		}
+		int first_1 = m_first[b1.getId()], last_1 = m_last[b1.getId()];
+		int first_2 = m_first[b2.getId()];
+		if (first_1 < first_2 && first_2 <= last_1)
+		{
+			return true;
+		}
+		Box parent = b1.getParent();
+		if (parent != null && m_chained[parent.getId()] && first_2 > last_1 && first_2 <= m_last[parent.getId()])
+		{
+			return true;
+		}
+		if (m_extra)
+		{
+			return m_graph.indexInfluences(b1, b2);
+		}
+		return false;
+	}
+
+	/**
+	 * Determines if a box is part of the tree.
+	 * @param b The box
+	 * @return {@code true} if it is, {@code false} otherwise
+	 */
+	/*@ pure @*/ protected boolean contains(/*@ non_null @*/ Box b)
+	{
+		return b.getId() >= 0 && b.getId() < m_boxes.length && m_boxes[b.getId()] == b;
+	}
+}
@@ -0,0 +1,121 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import java.util.Arrays;
+
+/**
+ * Partitions the integers from 0 to n-1 into disjoint sets, which can be
+ * merged. Each set is a tree whose root stands for the set; the smaller tree
+ * is put below the larger one when two sets are merged, and the paths are
+ * halved as they are followed, so that a sequence of operations takes
+ * almost linear time.
+ */
+public class UnionFind
+{
+	/**
+	 * The parent of each element, or the element itself for a root
+	 */
+	/*@ non_null @*/ protected final int[] m_parent;
+
+	/**
+	 * The number of elements of the set of each root
+	 */
+	/*@ non_null @*/ protected final int[] m_size;
+
+	/**
+	 * The number of disjoint sets
+	 */
+	protected int m_setCount;
+
+	/**
+	 * Creates a partition where each element is alone in its set.
+	 * @param size The number of elements
+	 */
+	public UnionFind(int size)
+	{
+		super();
+		m_parent = new int[size];
+		m_size = new int[size];
+		for (int i = 0; i < size; i++)
+		{
+			m_parent[i] = i;
+		}
+		Arrays.fill(m_size, 1);
+		m_setCount = size;
+	}
+
+	/**
+	 * Gets the element standing for the set of an element.
+	 * @param x The element
+	 * @return The root of its set
+	 */
+	public int find(int x)
+	{
+		while (m_parent[x] != x)
+		{
+			m_parent[x] = m_parent[m_parent[x]];
+			x = m_parent[x];
+		}
+		return x;
+	}
+
+	/**
+	 * Merges the sets of two elements.
+	 * @param x The first element
+	 * @param y The second element
+	 * @return {@code true} if the elements were in different sets,
+	 * {@code false} otherwise
+	 */
+	public boolean union(int x, int y)
+	{
+		int root_x = find(x), root_y = find(y);
+		if (root_x == root_y)
+		{
+			return false;
+		}
+		if (m_size[root_x] < m_size[root_y])
+		{
+			int tmp = root_x;
+			root_x = root_y;
+			root_y = tmp;
+		}
+		m_parent[root_y] = root_x;
+		m_size[root_x] += m_size[root_y];
+		m_setCount--;
+		return true;
+	}
+
+	/**
+	 * Gets the number of elements of the partition.
+	 * @return The number of elements
+	 */
+	/*@ pure @*/ public int size()
+	{
+		return m_parent.length;
+	}
+
+	/**
+	 * Gets the number of disjoint sets of the partition.
+	 * @return The number of sets
+	 */
+	/*@ pure @*/ public int getSetCount()
+	{
+		return m_setCount;
+	}
+}
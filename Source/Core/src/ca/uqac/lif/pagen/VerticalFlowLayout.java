@@ -18,6 +18,7 @@
 package ca.uqac.lif.pagen;
 
 import java.util.List;
+import java.util.Map;
 
 import ca.uqac.lif.synthia.Picker;
 import ca.uqac.lif.synthia.util.Constant;
@@ -43,6 +44,14 @@ public class VerticalFlowLayout extends FlowLayout
 		this(new Constant<Integer>(0));
 	}
 	
+	@Override
+	public VerticalFlowLayout duplicate(boolean with_state, Map<Picker<?>,Picker<?>> copies)
+	{
+		VerticalFlowLayout vfl = new VerticalFlowLayout(duplicate(m_maxElements, with_state, copies));
+		copyInto(vfl, with_state, copies);
+		return vfl;
+	}
+	
 	@Override
 	public void arrange(Box parent, List<Box> children)
 	{
@@ -60,14 +69,17 @@ public class VerticalFlowLayout extends FlowLayout
 		{
 			Box b = children.get(i);
 			parent.addChild(b);
-			BoxProperty bp_x = BoxProperty.get(children.get(i), BoxProperty.Property.X);
-			BoxProperty bp_y = BoxProperty.get(children.get(i), BoxProperty.Property.Y);
-			m_dependencies.add(new BoxDependency(bp_x, BoxProperty.get(parent, BoxProperty.Property.X)));
-			m_dependencies.add(new BoxDependency(bp_y, BoxProperty.get(parent, BoxProperty.Property.Y)));
-			if (i > 0)
+			if (m_record)
 			{
-				m_dependencies.add(new BoxDependency(bp_y, BoxProperty.get(children.get(i - 1), BoxProperty.Property.Y)));
-				m_dependencies.add(new BoxDependency(bp_y, BoxProperty.get(children.get(i - 1), BoxProperty.Property.H)));
+				BoxProperty bp_x = BoxProperty.get(children.get(i), BoxProperty.Property.X);
+				BoxProperty bp_y = BoxProperty.get(children.get(i), BoxProperty.Property.Y);
+				m_dependencies.add(new BoxDependency(bp_x, BoxProperty.get(parent, BoxProperty.Property.X)));
+				m_dependencies.add(new BoxDependency(bp_y, BoxProperty.get(parent, BoxProperty.Property.Y)));
+				if (i > 0)
+				{
+					m_dependencies.add(new BoxDependency(bp_y, BoxProperty.get(children.get(i - 1), BoxProperty.Property.Y)));
+					m_dependencies.add(new BoxDependency(bp_y, BoxProperty.get(children.get(i - 1), BoxProperty.Property.H)));
+				}
 			}
 			boolean toss = m_injectAlignementFault.pick();
 			float x_shift = 0;
@@ -103,14 +115,14 @@ public class VerticalFlowLayout extends FlowLayout
 				y = p_padding;
 				x += max_x + m_spacing;
 				max_x = 0;
-				if (const_align.isValid())
+				if (m_record && const_align.isValid())
 				{
 					m_constraints.add(const_align);
 				}
 				const_align = new LayoutConstraint.SameX();
 			}
 		}
-		if (const_align.isValid())
+		if (m_record && const_align.isValid())
 		{
 			m_constraints.add(const_align);
 		}
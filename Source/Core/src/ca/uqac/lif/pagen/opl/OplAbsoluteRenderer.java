@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.Set;
 
 import ca.uqac.lif.pagen.Box;
+import ca.uqac.lif.pagen.ConstraintFamily;
 import ca.uqac.lif.pagen.LayoutConstraint;
 import ca.uqac.lif.pagen.LayoutConstraint.Contained;
 import ca.uqac.lif.pagen.LayoutConstraint.Disjoint;
@@ -139,6 +140,13 @@ public class OplAbsoluteRenderer extends OplRenderer
 		{
 			render(ps, lc);
 		}
+		for (ConstraintFamily family : m_families)
+		{
+			for (LayoutConstraint lc : family)
+			{
+				render(ps, lc);
+			}
+		}
 
 		// Next is to force boxes to be at least a minimal size
 		ps.println("forall(k in rectangles_id)");
@@ -17,10 +17,17 @@
  */
 package ca.uqac.lif.pagen.opl;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -29,14 +36,17 @@ import java.util.Set;
 
 import ca.uqac.lif.pagen.Box;
 import ca.uqac.lif.pagen.BoxDependency;
-import ca.uqac.lif.pagen.BoxDependencyGraph;
 import ca.uqac.lif.pagen.BoxProperty;
 import ca.uqac.lif.pagen.BoxProperty.Property;
+import ca.uqac.lif.pagen.ConstraintFamily;
+import ca.uqac.lif.pagen.DependencyGraph;
+import ca.uqac.lif.pagen.LayoutConstraint.BinaryLayoutConstraint;
 import ca.uqac.lif.pagen.LayoutConstraint.Contained;
 import ca.uqac.lif.pagen.LayoutConstraint.Disjoint;
 import ca.uqac.lif.pagen.LayoutConstraint.SameX;
 import ca.uqac.lif.pagen.LayoutConstraint.SameY;
 import ca.uqac.lif.pagen.LayoutConstraint;
+import ca.uqac.lif.pagen.UnionFind;
 
 /**
  * Produces a file in the OPL format based on a tree of nested boxes.
@@ -53,7 +63,7 @@ public class OplRelativeRenderer extends OplRenderer
 	 * The graph of dependencies between DOM nodes that the renderer uses to
 	 * model the variables.
 	 */
-	protected BoxDependencyGraph m_graph = null;
+	protected DependencyGraph m_graph = null;
 
 	/**
 	 * The set of boxes properties that are directly involved in a constraint
@@ -87,6 +97,11 @@ public class OplRelativeRenderer extends OplRenderer
 	 */
 	protected Map<BoxProperty,Set<BoxProperty>> m_closure = null;
 
+	/**
+	 * The number of threads used to compute the transitive closure
+	 */
+	protected int m_threads = 1;
+
 	@SafeVarargs
 	public OplRelativeRenderer(Set<LayoutConstraint> ... constraints)
 	{
@@ -123,6 +138,17 @@ public class OplRelativeRenderer extends OplRenderer
 				to_consider.addAll(bps);
 			}
 		}
+		for (ConstraintFamily family : m_families)
+		{
+			for (LayoutConstraint c : family)
+			{
+				if (!c.getVerdict())
+				{
+					constraints_to_consider.add(c);
+					to_consider.addAll(c.getBoxProperties(m_graph));
+				}
+			}
+		}
 		// Loop through box properties
 		while (!to_consider.isEmpty())
 		{
@@ -132,11 +158,11 @@ public class OplRelativeRenderer extends OplRenderer
 				continue;
 			}
 			m_faultyBoxes.add(bp);
-			if (!constraint_index.containsKey(bp))
+			Set<LayoutConstraint> involved_constraints = getInvolvedConstraints(constraint_index, bp);
+			if (involved_constraints.isEmpty())
 			{
 				continue;
 			}
-			Set<LayoutConstraint> involved_constraints = constraint_index.get(bp);
 			for (LayoutConstraint c : involved_constraints)
 			{
 				Set<BoxProperty> new_properties = c.getBoxProperties(m_graph, bp);
@@ -165,36 +191,289 @@ public class OplRelativeRenderer extends OplRenderer
 		return constraints_to_consider;
 	}
 
+	/**
+	 * Gets the constraints whose properties, as given by
+	 * {@link LayoutConstraint#getBoxProperties(DependencyGraph)}, include
+	 * a box property. The constraints of the families are looked up among
+	 * those involving the box of the property, rather than indexed in
+	 * advance.
+	 * @param constraint_index The index of the constraints of
+	 * {@link #m_constraints}
+	 * @param bp The box property
+	 * @return The constraints
+	 */
+	/*@ non_null @*/ protected Set<LayoutConstraint> getInvolvedConstraints(/*@ non_null @*/ Map<BoxProperty,Set<LayoutConstraint>> constraint_index, /*@ non_null @*/ BoxProperty bp)
+	{
+		Set<LayoutConstraint> involved = new HashSet<LayoutConstraint>();
+		if (constraint_index.containsKey(bp))
+		{
+			involved.addAll(constraint_index.get(bp));
+		}
+		for (ConstraintFamily family : m_families)
+		{
+			for (LayoutConstraint c : family.getConstraints(bp.getBox()))
+			{
+				if (c.getBoxProperties(m_graph).contains(bp))
+				{
+					involved.add(c);
+				}
+			}
+		}
+		return involved;
+	}
+
 	/**
 	 * Sets the dependency graph to be used for the rendering.
 	 * @param graph The graph
 	 * @return This renderer
 	 */
-	public OplRelativeRenderer setDependencyGraph(BoxDependencyGraph graph)
+	public OplRelativeRenderer setDependencyGraph(DependencyGraph graph)
 	{
 		m_graph = graph;
 		return this;
 	}
 
+	/**
+	 * Sets the number of threads used to compute the transitive closure of
+	 * the dependency graph. The model produced does not depend on this
+	 * number.
+	 * @param threads The number of threads
+	 * @return This renderer
+	 */
+	public OplRelativeRenderer setThreads(int threads)
+	{
+		m_threads = Math.max(1, threads);
+		return this;
+	}
+
 	@Override
 	public void render(PrintStream ps, Box root)
 	{
 		Set<LayoutConstraint> constraints_to_model = fillFaultyBoxes();
 		m_numConstraints = constraints_to_model.size();
 		//System.out.print(m_constraints.size() + " vs " + constraints_to_model.size() + "; ");
-		ps.println("/****************************************");
-		ps.println(" * OPL 12.10.0.0 Model");
-		ps.println(" * Tree size:             " + root.getSize());
-		ps.println(" * Tree depth:            " + root.getDepth());
-		ps.println(" * Relative modeling");
-		ps.println("****************************************/");
-		m_closure = m_graph.getTransitiveClosure(m_faultyBoxes);
+		computeClosure();
 		m_xDots = filter(m_closure, Property.DX);
 		m_yDots = filter(m_closure, Property.DY);
 		m_wDots = filter(m_closure, Property.DW);
 		m_hDots = filter(m_closure, Property.DH);
 		m_numVariables = m_xDots.size() + m_yDots.size() + m_wDots.size() + m_hDots.size();
 		//System.out.println(root.getSize() * 4 + " vs " + m_numVariables);
+		printModel(ps, root, constraints_to_model, null);
+	}
+
+	/**
+	 * Splits the model into components that share no variable, and writes
+	 * each of them to its own file. The files are named after a prefix,
+	 * followed by the index of the component; components are sorted by
+	 * their first variable, and the constraints that have no variable at all
+	 * come last, in a component of their own. The solution of the whole
+	 * model is the union of the solutions of the components.
+	 * @param root The root of the page
+	 * @param folder The folder where the files are written
+	 * @param prefix The prefix of the name of the files
+	 * @return The files written, in the order of the components
+	 * @throws FileNotFoundException If a file cannot be written
+	 */
+	public List<File> renderComponents(Box root, File folder, String prefix) throws FileNotFoundException
+	{
+		List<Component> components = getComponents();
+		String pattern = prefix + "-%0" + Integer.toString(Math.max(0, components.size() - 1)).length() + "d.mod";
+		List<File> files = new ArrayList<File>(components.size());
+		int num_variables = 0;
+		for (int i = 0; i < components.size(); i++)
+		{
+			Component c = components.get(i);
+			m_xDots = filter(c.getVariables(), Property.DX);
+			m_yDots = filter(c.getVariables(), Property.DY);
+			m_wDots = filter(c.getVariables(), Property.DW);
+			m_hDots = filter(c.getVariables(), Property.DH);
+			num_variables += c.getVariables().size();
+			File f = new File(folder, String.format(pattern, i));
+			PrintStream ps = new PrintStream(new BufferedOutputStream(new FileOutputStream(f)));
+			printModel(ps, root, c.getConstraints(), "Component " + (i + 1) + " of " + components.size());
+			ps.close();
+			files.add(f);
+		}
+		m_numVariables = num_variables;
+		return files;
+	}
+
+	/**
+	 * Splits the constraints of the model into components that share no
+	 * variable. The variables of a constraint are the delta properties that
+	 * appear in its terms; the constraints are merged into components with a
+	 * {@link UnionFind} over these variables.
+	 * @return The components
+	 */
+	/*@ non_null @*/ public List<Component> getComponents()
+	{
+		Set<LayoutConstraint> constraints_to_model = fillFaultyBoxes();
+		m_numConstraints = constraints_to_model.size();
+		computeClosure();
+		Map<BoxProperty,Integer> ids = new HashMap<BoxProperty,Integer>();
+		List<BoxProperty> variables = new ArrayList<BoxProperty>();
+		List<LayoutConstraint> constraints = new ArrayList<LayoutConstraint>(constraints_to_model);
+		int[] first_variable = new int[constraints.size()];
+		List<int[]> constraint_variables = new ArrayList<int[]>(constraints.size());
+		for (LayoutConstraint c : constraints)
+		{
+			Set<BoxProperty> vars = getVariables(c);
+			int[] c_ids = new int[vars.size()];
+			int k = 0;
+			for (BoxProperty v : vars)
+			{
+				Integer id = ids.get(v);
+				if (id == null)
+				{
+					id = variables.size();
+					ids.put(v, id);
+					variables.add(v);
+				}
+				c_ids[k++] = id;
+			}
+			constraint_variables.add(c_ids);
+		}
+		UnionFind uf = new UnionFind(variables.size());
+		for (int i = 0; i < constraints.size(); i++)
+		{
+			int[] c_ids = constraint_variables.get(i);
+			for (int k = 1; k < c_ids.length; k++)
+			{
+				uf.union(c_ids[0], c_ids[k]);
+			}
+			first_variable[i] = c_ids.length > 0 ? c_ids[0] : -1;
+		}
+		Map<Integer,Component> by_root = new HashMap<Integer,Component>();
+		List<Component> components = new ArrayList<Component>();
+		Component constant = new Component();
+		for (int i = 0; i < constraints.size(); i++)
+		{
+			if (first_variable[i] < 0)
+			{
+				constant.m_constraints.add(constraints.get(i));
+				continue;
+			}
+			int root = uf.find(first_variable[i]);
+			Component c = by_root.get(root);
+			if (c == null)
+			{
+				c = new Component();
+				by_root.put(root, c);
+				components.add(c);
+			}
+			c.m_constraints.add(constraints.get(i));
+		}
+		for (int v = 0; v < variables.size(); v++)
+		{
+			by_root.get(uf.find(v)).m_variables.add(variables.get(v));
+		}
+		Collections.sort(components, new Comparator<Component>()
+		{
+			@Override
+			public int compare(Component c1, Component c2)
+			{
+				return Collections.min(c1.m_variables).compareTo(Collections.min(c2.m_variables));
+			}
+		});
+		if (!constant.m_constraints.isEmpty())
+		{
+			components.add(constant);
+		}
+		return components;
+	}
+
+	/**
+	 * Gets the variables that appear in the terms of a constraint, in the
+	 * same way as {@link #printTerm(PrintStream, BoxProperty)}.
+	 * @param c The constraint
+	 * @return The delta properties used by the constraint
+	 */
+	/*@ non_null @*/ protected Set<BoxProperty> getVariables(/*@ non_null @*/ LayoutConstraint c)
+	{
+		Set<BoxProperty> vars = new HashSet<BoxProperty>();
+		for (BoxProperty bp : getTermProperties(c))
+		{
+			Set<BoxProperty> terms = m_closure.get(bp);
+			if (terms == null)
+			{
+				continue;
+			}
+			for (BoxProperty d : terms)
+			{
+				if (m_faultyBoxes.contains(d.getAbsolute()))
+				{
+					vars.add(d);
+				}
+			}
+		}
+		return vars;
+	}
+
+	/**
+	 * Gets the box properties whose terms are printed for a constraint by
+	 * the render methods of this class.
+	 * @param c The constraint
+	 * @return The box properties
+	 */
+	/*@ non_null @*/ protected static Set<BoxProperty> getTermProperties(/*@ non_null @*/ LayoutConstraint c)
+	{
+		Set<BoxProperty> props = new HashSet<BoxProperty>();
+		if (c instanceof SameX)
+		{
+			for (Box b : ((SameX) c).getBoxes())
+			{
+				props.add(BoxProperty.get(b, Property.X));
+			}
+		}
+		else if (c instanceof SameY)
+		{
+			for (Box b : ((SameY) c).getBoxes())
+			{
+				props.add(BoxProperty.get(b, Property.Y));
+			}
+		}
+		else if (c instanceof BinaryLayoutConstraint)
+		{
+			BinaryLayoutConstraint blc = (BinaryLayoutConstraint) c;
+			for (Property p : new Property[] {Property.X, Property.Y, Property.W, Property.H})
+			{
+				props.add(BoxProperty.get(blc.getFirstBox(), p));
+				props.add(BoxProperty.get(blc.getSecondBox(), p));
+			}
+		}
+		return props;
+	}
+
+	/**
+	 * Computes the transitive closure of the faulty properties.
+	 */
+	protected void computeClosure()
+	{
+		m_closure = m_graph.getTransitiveClosure(m_faultyBoxes, m_threads);
+	}
+
+	/**
+	 * Prints a model with the variables currently in {@link #m_xDots},
+	 * {@link #m_yDots}, {@link #m_wDots} and {@link #m_hDots}.
+	 * @param ps The print stream where the model is printed
+	 * @param root The root of the page
+	 * @param constraints The constraints of the model
+	 * @param title A line added to the header of the model, or {@code null}
+	 * to add none
+	 */
+	protected void printModel(PrintStream ps, Box root, Collection<LayoutConstraint> constraints, String title)
+	{
+		ps.println("/****************************************");
+		ps.println(" * OPL 12.10.0.0 Model");
+		ps.println(" * Tree size:             " + root.getSize());
+		ps.println(" * Tree depth:            " + root.getDepth());
+		ps.println(" * Relative modeling");
+		if (title != null)
+		{
+			ps.println(" * " + title);
+		}
+		ps.println("****************************************/");
 		printArray(m_xDots, "xdot", ps);
 		printArray(m_yDots, "ydot", ps);
 		printArray(m_wDots, "wdot", ps);
@@ -206,7 +485,7 @@ public class OplRelativeRenderer extends OplRenderer
 		ps.println("}");
 		ps.println(s_objectiveFunction);
 		ps.println("subject to {");
-		for (LayoutConstraint lc : constraints_to_model)
+		for (LayoutConstraint lc : constraints)
 		{
 			render(ps, lc);
 		}
@@ -264,6 +543,27 @@ public class OplRelativeRenderer extends OplRenderer
 		return sorted_out;
 	}
 
+	/**
+	 * Produces a sorted list of the box properties of a set for a given
+	 * property.
+	 * @param properties The set of box properties
+	 * @param p The property to look for
+	 * @return The list of box properties
+	 */
+	/*@ non_null @*/ public static List<BoxProperty> filter(Set<BoxProperty> properties, Property p)
+	{
+		List<BoxProperty> sorted_out = new ArrayList<BoxProperty>();
+		for (BoxProperty bp : properties)
+		{
+			if (bp.getProperty() == p)
+			{
+				sorted_out.add(bp);
+			}
+		}
+		Collections.sort(sorted_out);
+		return sorted_out;
+	}
+
 	protected void printTerm(PrintStream ps, BoxProperty property)
 	{
 		Set<BoxProperty> terms = m_closure.get(property);
@@ -484,4 +784,46 @@ public class OplRelativeRenderer extends OplRenderer
 		ps.println(";");
 		m_numConstraints += 4;
 	}
+
+	/**
+	 * A set of constraints of a model that share no variable with the other
+	 * constraints, along with the variables they use.
+	 */
+	public static class Component
+	{
+		/**
+		 * The constraints of the component
+		 */
+		/*@ non_null @*/ protected final List<LayoutConstraint> m_constraints;
+
+		/**
+		 * The delta properties used by the constraints
+		 */
+		/*@ non_null @*/ protected final Set<BoxProperty> m_variables;
+
+		public Component()
+		{
+			super();
+			m_constraints = new ArrayList<LayoutConstraint>();
+			m_variables = new HashSet<BoxProperty>();
+		}
+
+		/**
+		 * Gets the constraints of the component.
+		 * @return The constraints
+		 */
+		/*@ pure non_null @*/ public List<LayoutConstraint> getConstraints()
+		{
+			return m_constraints;
+		}
+
+		/**
+		 * Gets the variables of the component.
+		 * @return The delta properties used by the constraints
+		 */
+		/*@ pure non_null @*/ public Set<BoxProperty> getVariables()
+		{
+			return m_variables;
+		}
+	}
 }
@@ -18,10 +18,13 @@
 package ca.uqac.lif.pagen.opl;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import ca.uqac.lif.pagen.BoxRenderer;
+import ca.uqac.lif.pagen.ConstraintFamily;
 import ca.uqac.lif.pagen.LayoutConstraint;
 import ca.uqac.lif.pagen.LayoutConstraint.Contained;
 import ca.uqac.lif.pagen.LayoutConstraint.Disjoint;
@@ -38,6 +41,13 @@ public abstract class OplRenderer extends BoxRenderer
 	 * A set of constraints that applies to some of the boxes. 
 	 */
 	/*@ non_null @*/ protected Set<LayoutConstraint> m_constraints;
+
+	/**
+	 * Families of constraints that apply to some of the boxes. They are kept
+	 * apart from {@link #m_constraints} so that their constraints are only
+	 * created when they are needed.
+	 */
+	/*@ non_null @*/ protected List<ConstraintFamily> m_families;
 	
 	/**
 	 * The number of variables resulting from the modeling of the page and
@@ -55,20 +65,29 @@ public abstract class OplRenderer extends BoxRenderer
 	{
 		super();
 		m_constraints = new HashSet<LayoutConstraint>();
+		m_families = new ArrayList<ConstraintFamily>();
 		for (Set<LayoutConstraint> c : constraints)
 		{
-			m_constraints.addAll(c);
+			addConstraints(c);
 		}
 	}
 	
 	/**
-	 * Adds a set of constraints to apply to some of the boxes.
+	 * Adds a set of constraints to apply to some of the boxes. A
+	 * {@link ConstraintFamily} is kept as is instead of being copied.
 	 * @param constraints The set of constraints
 	 * @return This renderer
 	 */
 	public OplRenderer addConstraints(Set<LayoutConstraint> constraints)
 	{
-		m_constraints.addAll(constraints);
+		if (constraints instanceof ConstraintFamily)
+		{
+			m_families.add((ConstraintFamily) constraints);
+		}
+		else
+		{
+			m_constraints.addAll(constraints);
+		}
 		return this;
 	}
 	
@@ -0,0 +1,73 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class BatchGeneratorTest
+{
+	@Test
+	public void testThreads() throws IOException
+	{
+		for (String type : new String[] {"html", "opl"})
+		{
+			File single = generate(type, 1);
+			File multi = generate(type, 4);
+			String extension = Main.getExtension(type, true, false);
+			String[] names = single.list();
+			Arrays.sort(names);
+			assertEquals(12, names.length);
+			assertEquals("page-00." + extension, names[0]);
+			assertEquals("page-11." + extension, names[11]);
+			for (String name : names)
+			{
+				byte[] expected = Files.readAllBytes(new File(single, name).toPath());
+				byte[] actual = Files.readAllBytes(new File(multi, name).toPath());
+				assertTrue(name, Arrays.equals(expected, actual));
+			}
+			assertEquals(single.list().length, multi.list().length);
+		}
+	}
+	
+	/**
+	 * Generates a batch of 12 small pages in a new temporary folder.
+	 * @param type The type of output file
+	 * @param threads The number of threads
+	 * @return The folder
+	 */
+	protected static File generate(String type, int threads) throws IOException
+	{
+		File folder = Files.createTempDirectory("pagen").toFile();
+		folder.deleteOnExit();
+		PageGenerator gen = new PageGenerator().setDepth(2, 4);
+		BatchGenerator batch = new BatchGenerator(gen, folder, type, false, true, false).setThreads(threads);
+		batch.generate(42, 12);
+		for (File f : folder.listFiles())
+		{
+			f.deleteOnExit();
+		}
+		return folder;
+	}
+}
@@ -108,6 +108,40 @@ public class BoxDependencyGraphTest
 		}
 	}
 	
+	@Test
+	public void testIncremental()
+	{
+		BoxDependencyGraph g = new BoxDependencyGraph();
+		g.add(B, X, A, X);
+		g.add(D, X, B, X);
+		Map<BoxProperty,Set<BoxProperty>> before = g.getTransitiveClosure();
+		assertEquals(3, before.get(BoxProperty.get(D, X)).size());
+		// A.X now depends on C.W, which D.X reaches through A.X
+		g.add(A, X, C, W);
+		g.add(C, W, E, X);
+		// A closure already returned is left as it was
+		assertEquals(3, before.get(BoxProperty.get(D, X)).size());
+		Map<BoxProperty,Set<BoxProperty>> after = g.getTransitiveClosure(BoxProperty.get(D, X), BoxProperty.get(B, X));
+		Set<BoxProperty> nodes = after.get(BoxProperty.get(D, X));
+		assertEquals(5, nodes.size());
+		assertTrue(nodes.contains(BoxProperty.get(C, DW)));
+		assertTrue(nodes.contains(BoxProperty.get(E, DX)));
+		assertEquals(4, after.get(BoxProperty.get(B, X)).size());
+		assertEquals(g.scanTransitiveClosure(g.getNodes()), g.getTransitiveClosure());
+	}
+
+	@Test
+	public void testIncrementalPage()
+	{
+		Page page = new PageGenerator().setSize(300).generate(2);
+		BoxDependencyGraph g = new BoxDependencyGraph();
+		for (FlowLayout fl : page.getLayouts())
+		{
+			g.add(fl.getDependencies());
+			assertEquals(g.scanTransitiveClosure(g.getNodes()), g.getTransitiveClosure());
+		}
+	}
+
 	@Test
 	public void testInfluences1()
 	{
@@ -0,0 +1,119 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class BoxTest
+{
+	@Test
+	public void testShift()
+	{
+		PageContext c = new PageContext();
+		Box parent = new Box(c, 0, 0, 0, 0);
+		Box child = new Box(c, 2, 3, 10, 10);
+		Box grandchild = new Box(c, 4, 5, 1, 1);
+		child.addChild(grandchild);
+		parent.addChild(child);
+		parent.shiftX(10);
+		parent.shiftY(20);
+		assertEquals(12f, child.getX(), 0);
+		assertEquals(23f, child.getY(), 0);
+		assertEquals(14f, grandchild.getX(), 0);
+		assertEquals(25f, grandchild.getY(), 0);
+		assertEquals(2f, child.getRelativeX(), 0);
+		assertEquals(3f, child.getRelativeY(), 0);
+	}
+	
+	@Test
+	public void testAbsolutePosition()
+	{
+		PageContext c = new PageContext();
+		Box parent = new Box(c, 0, 0, 0, 0);
+		Box child = new Box(c, 2, 3, 10, 10);
+		Box grandchild = new Box(c, 4, 5, 1, 1);
+		child.addChild(grandchild);
+		parent.addChild(child);
+		assertEquals(4f, grandchild.getX(), 0);
+		assertEquals(2f, child.getX(), 0);
+		parent.shiftX(10);
+		assertEquals(14f, grandchild.getX(), 0);
+		child.shiftY(1);
+		assertEquals(6f, grandchild.getY(), 0);
+		assertEquals(12f, child.getX(), 0);
+		Box other = new Box(new PageContext(), 0, 0, 0, 0);
+		other.shiftX(5);
+		assertEquals(14f, grandchild.getX(), 0);
+	}
+	
+	@Test
+	public void testSetParent()
+	{
+		PageContext c = new PageContext();
+		Box parent = new Box(c, 5, 5, 0, 0);
+		Box child = new Box(c, 7, 9, 10, 10);
+		parent.addChild(child);
+		assertEquals(7f, child.getX(), 0);
+		assertEquals(9f, child.getY(), 0);
+		assertEquals(2f, child.getRelativeX(), 0);
+		assertEquals(4f, child.getRelativeY(), 0);
+		child.setParent(null);
+		assertEquals(7f, child.getX(), 0);
+		assertEquals(9f, child.getY(), 0);
+	}
+	
+	@Test
+	public void testAggregates()
+	{
+		PageContext c = new PageContext();
+		Box root = new Box(c, 0, 0, 0, 0);
+		Box child = new Box(c, 0, 0, 10, 10);
+		root.addChild(child);
+		assertEquals(2, root.getSize());
+		assertEquals(2, root.getDepth());
+		Box grandchild = new Box(c, 0, 0, 5, 5);
+		child.addChild(grandchild);
+		child.addChild(new Box(c, 0, 0, 5, 5));
+		assertEquals(4, root.getSize());
+		assertEquals(3, root.getDepth());
+		assertEquals(2, child.getDepth());
+	}
+	
+	@Test
+	public void testExtent()
+	{
+		PageContext c = new PageContext();
+		Box root = new Box(c, 0, 0, 20, 20);
+		Box child = new Box(c, 2, 2, 10, 10);
+		Box grandchild = new Box(c, 4, 4, 5, 5);
+		child.addChild(grandchild);
+		root.addChild(child);
+		assertEquals(0f, root.getMinX(), 0);
+		assertEquals(20f, root.getMaxX(), 0);
+		grandchild.shiftX(-10);
+		assertEquals(-6f, root.getMinX(), 0);
+		assertEquals(-6f, child.getMinX(), 0);
+		grandchild.setHeight(30);
+		assertEquals(34f, root.getMaxY(), 0);
+		root.shiftY(1);
+		assertEquals(35f, root.getMaxY(), 0);
+		assertEquals(1f, root.getMinY(), 0);
+	}
+}
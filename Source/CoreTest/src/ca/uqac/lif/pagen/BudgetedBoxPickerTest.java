@@ -0,0 +1,107 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ca.uqac.lif.synthia.random.PoissonInteger;
+import ca.uqac.lif.synthia.random.RandomFloat;
+import ca.uqac.lif.synthia.util.Constant;
+
+public class BudgetedBoxPickerTest
+{
+	@Test
+	public void testExactSize()
+	{
+		int[] sizes = new int[] {1, 2, 10, 1000, 100000};
+		for (int size : sizes)
+		{
+			Box b = getPicker(size, 0).pick();
+			assertEquals(size, b.getSize());
+		}
+	}
+	
+	@Test
+	public void testDepthRange()
+	{
+		for (int seed = 0; seed < 10; seed++)
+		{
+			BudgetedBoxPicker bbp = getPicker(5000, seed).setDepth(6, 8);
+			Box b = bbp.pick();
+			assertEquals(5000, b.getSize());
+			assertTrue(b.getDepth() >= 6);
+			assertTrue(b.getDepth() <= 8);
+		}
+	}
+	
+	@Test
+	public void testFlat()
+	{
+		Box b = getPicker(50, 0).setDepth(2, 2).pick();
+		assertEquals(50, b.getSize());
+		assertEquals(2, b.getDepth());
+		assertEquals(49, b.getChildren().size());
+	}
+	
+	@Test
+	public void testChain()
+	{
+		BudgetedBoxPicker bbp = new BudgetedBoxPicker(new PageContext(), 10000, new Constant<Integer>(1), new Constant<Float>(1f), new Constant<LayoutManager>(new VerticalFlowLayout()), new Constant<Float>(5f), new Constant<Float>(5f));
+		Box b = bbp.pick();
+		assertEquals(10000, b.getSize());
+		assertEquals(10000, b.getDepth());
+	}
+	
+	@Test
+	public void testDuplicate()
+	{
+		BudgetedBoxPicker bbp = getPicker(300, 3).setDepth(4, 6);
+		BudgetedBoxPicker copy = bbp.duplicate(true);
+		assertEquals(bbp.pick().toString(), copy.pick().toString());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooSmall()
+	{
+		getPicker(5, 0).setDepth(6, 0);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testStreams()
+	{
+		getPicker(50, 0).setStreams(new RandomStreams(), 0);
+	}
+	
+	protected static BudgetedBoxPicker getPicker(int size, int seed)
+	{
+		PoissonInteger degree = new PoissonInteger(2.2f);
+		degree.setSeed(seed);
+		RandomFloat split = new RandomFloat();
+		split.setSeed(seed + 1);
+		RandomFloat width = new RandomFloat(5, 20);
+		width.setSeed(seed + 2);
+		RandomFloat height = new RandomFloat(5, 10);
+		height.setSeed(seed + 3);
+		RandomFloat float_source = new RandomFloat();
+		float_source.setSeed(seed + 4);
+		LayoutPicker layout = new LayoutPicker(float_source).addLayout(new HorizontalFlowLayout(), 0.5).addLayout(new VerticalFlowLayout(), 0.5);
+		return new BudgetedBoxPicker(new PageContext(), size, degree, split, layout, width, height);
+	}
+}
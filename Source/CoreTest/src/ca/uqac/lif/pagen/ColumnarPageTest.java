@@ -0,0 +1,146 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.synthia.util.Constant;
+
+public class ColumnarPageTest
+{
+	@Test
+	public void testOf()
+	{
+		Box root = RandomBoxPickerTest.getPicker(0).pick();
+		ColumnarPage page = ColumnarPage.of(root);
+		Box view = page.getBox(root.getId());
+		assertEquals(root, view);
+		assertEquals(root.getSize(), view.getSize());
+		assertEquals(root.getDepth(), view.getDepth());
+		assertEquals(root.toString(), view.toString());
+		assertEquals(render(root), render(view));
+	}
+	
+	@Test
+	public void testPick()
+	{
+		for (int seed = 0; seed < 5; seed++)
+		{
+			Box b1 = RandomBoxPickerTest.getPicker(seed).pick();
+			RandomBoxPicker rbp = RandomBoxPickerTest.getPicker(seed);
+			rbp.setPage(new ColumnarPage());
+			Box b2 = rbp.pick();
+			assertTrue(b2 instanceof ColumnarPage.ColumnarBox);
+			assertEquals(b1.toString(), b2.toString());
+			assertEquals(render(b1), render(b2));
+			assertEquals(b1.getSize(), b2.getSize());
+			assertEquals(b1.getDepth(), b2.getDepth());
+			assertEquals(b1.getMinX(), b2.getMinX(), 0.001);
+			assertEquals(b1.getMaxY(), b2.getMaxY(), 0.001);
+		}
+	}
+	
+	@Test
+	public void testShift()
+	{
+		ColumnarPage page = new ColumnarPage();
+		Box parent = page.newBox(0, 0, 0, 0);
+		Box child = page.newBox(2, 3, 10, 10);
+		parent.addChild(child);
+		assertEquals(1, parent.getChildren().size());
+		assertEquals(child, parent.getChildren().get(0));
+		assertEquals(parent, child.getParent());
+		parent.shiftX(10);
+		assertEquals(12f, child.getX(), 0);
+		assertEquals(12f, page.getBox(child.getId()).getX(), 0);
+		child.alter();
+		assertTrue(page.getBox(child.getId()).isAltered());
+		assertEquals(22f, parent.getMaxX(), 0);
+	}
+	
+	@Test
+	public void testChildren()
+	{
+		Box root = RandomBoxPickerTest.getPicker(3).pick();
+		ColumnarPage page = ColumnarPage.of(root);
+		Box view = page.getBox(root.getId());
+		List<Box> children = view.getChildren();
+		assertEquals(root.getChildren().size(), children.size());
+		for (int i = children.size() - 1; i >= 0; i--)
+		{
+			assertEquals(root.getChildren().get(i), children.get(i));
+		}
+		Box child = page.newBox(0, 0, 1, 1);
+		view.addChild(child);
+		assertEquals(root.getChildren().size() + 1, children.size());
+		assertEquals(child, children.get(children.size() - 1));
+	}
+	
+	@Test
+	public void testSetParent()
+	{
+		ColumnarPage page = new ColumnarPage();
+		Box p1 = page.newBox(0, 0, 10, 10);
+		Box p2 = page.newBox(20, 0, 10, 10);
+		Box child = page.newBox(2, 3, 5, 5);
+		Box grandchild = page.newBox(4, 4, 1, 1);
+		child.addChild(grandchild);
+		p1.addChild(child);
+		assertEquals(3, p1.getSize());
+		assertEquals(3, p1.getDepth());
+		child.setParent(p2);
+		assertEquals(1, p1.getSize());
+		assertEquals(1, p1.getDepth());
+		assertTrue(p1.getChildren().isEmpty());
+		assertEquals(3, p2.getSize());
+		assertEquals(3, p2.getDepth());
+		assertEquals(p2, child.getParent());
+		assertEquals(2f, child.getX(), 0);
+		assertEquals(4f, grandchild.getX(), 0);
+		child.setParent(null);
+		assertNull(child.getParent());
+		assertEquals(1, p2.getSize());
+		assertEquals(2f, child.getX(), 0);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddChildTwice()
+	{
+		ColumnarPage page = new ColumnarPage();
+		Box p1 = page.newBox(0, 0, 10, 10);
+		Box p2 = page.newBox(20, 0, 10, 10);
+		Box child = page.newBox(2, 3, 5, 5);
+		p1.addChild(child);
+		p2.addChild(child);
+	}
+	
+	protected static String render(Box b)
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrintStream ps = new PrintStream(baos);
+		new HtmlNestedRenderer(new Constant<String>("#fff")).render(ps, b);
+		ps.flush();
+		return baos.toString();
+	}
+}
@@ -0,0 +1,102 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import org.junit.Test;
+
+import static ca.uqac.lif.pagen.BoxProperty.Property.X;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class CompactDependencyGraphTest
+{
+	@Test
+	public void testSameAsGraph()
+	{
+		for (int seed = 0; seed < 5; seed++)
+		{
+			Page page = new PageGenerator().generate(seed);
+			BoxDependencyGraph g = new BoxDependencyGraph();
+			for (FlowLayout fl : page.getLayouts())
+			{
+				g.add(fl.getDependencies());
+			}
+			CompactDependencyGraph cg = CompactDependencyGraph.of(page.getLayouts());
+			assertEquals(g.getNodes(), cg.getNodes());
+			assertEquals(cg.getNodeCount(), cg.getNodes().size());
+			for (BoxProperty bp : g.getNodes())
+			{
+				assertEquals(g.getInfluencedBy(bp), cg.getInfluencedBy(bp));
+				assertEquals(g.getInfluences(bp), cg.getInfluences(bp));
+				assertEquals(g.getInfluencedBy(bp, true), cg.getInfluencedBy(bp, true));
+				assertEquals(g.getInfluences(bp, true), cg.getInfluences(bp, true));
+			}
+			Map<BoxProperty,Set<BoxProperty>> closure = g.scanTransitiveClosure(g.getNodes());
+			assertEquals(closure, cg.getTransitiveClosure());
+			assertEquals(closure, g.getTransitiveClosure());
+			List<Box> boxes = new ArrayList<Box>(page.getRoot().flatten().values());
+			for (int i = 0; i < boxes.size(); i += 3)
+			{
+				for (int j = 0; j < boxes.size(); j += 5)
+				{
+					assertEquals(g.influences(boxes.get(i), boxes.get(j)), cg.influences(boxes.get(i), boxes.get(j)));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testCompact()
+	{
+		PageContext context = new PageContext();
+		Box a = new Box(context, 0, 0, 0, 0);
+		Box b = new Box(context, 0, 0, 0, 0);
+		Box c = new Box(context, 0, 0, 0, 0);
+		BoxDependencyGraph g = new BoxDependencyGraph();
+		g.add(b, X, a, X);
+		g.add(c, X, a, X);
+		g.add(c, X, b, X);
+		CompactDependencyGraph cg = CompactDependencyGraph.of(g);
+		assertEquals(3, cg.getNodeCount());
+		assertEquals(3, cg.getEdgeCount());
+		int n_a = cg.getNodeId(BoxProperty.get(a, X));
+		int n_c = cg.getNodeId(BoxProperty.get(c, X));
+		assertEquals(0, cg.getInfluencedByOffsets()[n_a + 1] - cg.getInfluencedByOffsets()[n_a]);
+		assertEquals(2, cg.getInfluencesOffsets()[n_a + 1] - cg.getInfluencesOffsets()[n_a]);
+		assertEquals(2, cg.getInfluencedByOffsets()[n_c + 1] - cg.getInfluencedByOffsets()[n_c]);
+		assertEquals(-1, cg.getNodeId(BoxProperty.get(a, BoxProperty.Property.Y)));
+		assertSame(BoxProperty.get(a, X), cg.getNode(n_a));
+	}
+	
+	@Test
+	public void testDuplicateEdges()
+	{
+		PageContext context = new PageContext();
+		Box a = new Box(context, 0, 0, 0, 0);
+		Box b = new Box(context, 0, 0, 0, 0);
+		BoxDependencyGraph g = new BoxDependencyGraph().add(b, X, a, X);
+		Set<BoxDependency> deps = g.getInfluencedBy(BoxProperty.get(b, X));
+		CompactDependencyGraph cg = new CompactDependencyGraph(deps, deps);
+		assertEquals(2, cg.getNodeCount());
+		assertEquals(1, cg.getEdgeCount());
+	}
+}
@@ -0,0 +1,71 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ca.uqac.lif.pagen.LayoutConstraint.Contained;
+import ca.uqac.lif.pagen.LayoutConstraint.Disjoint;
+import ca.uqac.lif.pagen.LayoutConstraint.SameX;
+import ca.uqac.lif.pagen.LayoutConstraint.SameY;
+
+public class ConstraintCheckerTest
+{
+	@Test
+	public void testCheck()
+	{
+		Page page = new PageGenerator().setSize(5000).setMisalignment(0.02f).setOverlap(0.02f).setOverflow(0.02f).generate(9);
+		Box root = page.getRoot();
+		Set<LayoutConstraint> constraints = new HashSet<LayoutConstraint>();
+		for (FlowLayout fl : page.getLayouts())
+		{
+			constraints.addAll(fl.getConstraints());
+		}
+		Set<LayoutConstraint> expected = ConstraintTrackerTest.getViolated(constraints, root);
+		ConstraintChecker.Result single = new ConstraintChecker().setThreads(1).check(page);
+		ConstraintChecker.Result multi = new ConstraintChecker().setThreads(4).check(page);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, single.getViolated());
+		assertEquals(expected, multi.getViolated());
+		int violated = 0;
+		for (Class<?> type : multi.getTypes())
+		{
+			assertEquals(single.getCheckedCount(type), multi.getCheckedCount(type));
+			assertEquals(single.getViolatedCount(type), multi.getViolatedCount(type));
+			violated += multi.getViolatedCount(type);
+		}
+		assertEquals(expected.size(), violated);
+		assertEquals(Contained.getFamily(root).size(), multi.getCheckedCount(Contained.class));
+		assertEquals(Disjoint.getFamily(root).size(), multi.getCheckedCount(Disjoint.class));
+		assertTrue(multi.getCheckedCount(SameX.class) + multi.getCheckedCount(SameY.class) > 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOtherTree()
+	{
+		Page page = new PageGenerator().setSize(50).generate(9);
+		Box child = page.getRoot().getChildren().get(0);
+		new ConstraintChecker().check(page.getRoot(), Collections.singletonList(Disjoint.getFamily(child)));
+	}
+}
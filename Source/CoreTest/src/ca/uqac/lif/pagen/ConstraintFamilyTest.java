@@ -0,0 +1,107 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ca.uqac.lif.pagen.LayoutConstraint.Contained;
+import ca.uqac.lif.pagen.LayoutConstraint.Disjoint;
+
+public class ConstraintFamilyTest
+{
+	@Test
+	public void testContained()
+	{
+		Page page = new PageGenerator().setSize(300).generate(4);
+		Box root = page.getRoot();
+		checkFamily(Contained.getFamily(root), Contained.addContainmentConstraints(root), root);
+		assertFalse(Contained.getFamily(root).contains(new Contained(root.getChildren().get(0), root)));
+	}
+
+	@Test
+	public void testDisjoint()
+	{
+		Page page = new PageGenerator().setSize(300).generate(4);
+		Box root = page.getRoot();
+		checkFamily(Disjoint.getFamily(root), Disjoint.addContainmentConstraints(root), root);
+		assertFalse(Disjoint.getFamily(root).contains(new Disjoint(root, root.getChildren().get(0))));
+	}
+
+	@Test
+	public void testMargin()
+	{
+		Page page = new PageGenerator().setSize(300).setOverlap(0.05f).generate(4);
+		Box root = page.getRoot();
+		Set<LayoutConstraint> all = Disjoint.addContainmentConstraints(root);
+		for (float margin : new float[] {0, 10, 50})
+		{
+			Set<LayoutConstraint> near = new HashSet<LayoutConstraint>();
+			for (LayoutConstraint c : all)
+			{
+				Disjoint d = (Disjoint) c;
+				if (Disjoint.isNear(d.getFirstBox(), d.getSecondBox(), margin))
+				{
+					near.add(c);
+				}
+				else
+				{
+					// Pruned pairs are never violated
+					assertTrue(c.getVerdict());
+				}
+			}
+			assertTrue(near.size() < all.size());
+			assertEquals(near, Disjoint.addContainmentConstraints(root, margin));
+			checkFamily(Disjoint.getFamily(root, margin), near, root);
+		}
+		assertEquals(all, Disjoint.addContainmentConstraints(root, -1));
+	}
+
+	/**
+	 * Checks that a family holds the same constraints as a materialized set,
+	 * and that the constraints of each box are those involving it.
+	 */
+	protected static void checkFamily(ConstraintFamily family, Set<LayoutConstraint> expected, Box root)
+	{
+		assertEquals(expected.size(), family.size());
+		assertEquals(expected, new HashSet<LayoutConstraint>(family));
+		for (LayoutConstraint c : expected)
+		{
+			assertTrue(family.contains(c));
+		}
+		for (Box b : root.flatten().values())
+		{
+			Set<LayoutConstraint> involving = new HashSet<LayoutConstraint>();
+			for (LayoutConstraint c : expected)
+			{
+				if (c.getBoxes().contains(b))
+				{
+					involving.add(c);
+				}
+			}
+			List<LayoutConstraint> found = family.getConstraints(b);
+			assertEquals(involving.size(), found.size());
+			assertEquals(involving, new HashSet<LayoutConstraint>(found));
+		}
+	}
+}
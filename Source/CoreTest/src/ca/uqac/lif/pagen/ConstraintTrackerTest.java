@@ -0,0 +1,110 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ca.uqac.lif.pagen.LayoutConstraint.Contained;
+import ca.uqac.lif.pagen.LayoutConstraint.Disjoint;
+
+public class ConstraintTrackerTest
+{
+	@Test
+	public void testCheck()
+	{
+		Page page = new PageGenerator().setSize(500).setOverlap(0.02f).setOverflow(0.02f).generate(8);
+		Box root = page.getRoot();
+		Set<LayoutConstraint> constraints = new HashSet<LayoutConstraint>();
+		for (FlowLayout fl : page.getLayouts())
+		{
+			constraints.addAll(fl.getConstraints());
+		}
+		ConstraintTracker tracker = new ConstraintTracker(constraints, Contained.getFamily(root), Disjoint.getFamily(root, 0));
+		tracker.watch(root);
+		assertEquals(getViolated(constraints, root), tracker.check());
+		int total = tracker.getEvaluatedCount();
+		List<Box> boxes = new ArrayList<Box>(root.flatten().values());
+		// Nothing changed
+		tracker.check();
+		assertEquals(0, tracker.getEvaluatedCount());
+		// Move a box with children onto its siblings, then back
+		Box moved = null;
+		for (Box b : boxes)
+		{
+			if (!b.getChildren().isEmpty() && b.getParent() != null && b.getParent().getChildren().size() > 1)
+			{
+				moved = b;
+				break;
+			}
+		}
+		moved.shiftX(40);
+		moved.shiftY(15);
+		Set<LayoutConstraint> violated = tracker.check();
+		assertTrue(tracker.getEvaluatedCount() > 0);
+		assertTrue(tracker.getEvaluatedCount() < total);
+		assertEquals(getViolated(constraints, root), violated);
+		moved.shiftX(-40);
+		moved.shiftY(-15);
+		assertEquals(getViolated(constraints, root), tracker.check());
+		// Resize a few boxes
+		for (int i = 0; i < boxes.size(); i += 50)
+		{
+			boxes.get(i).setWidth(boxes.get(i).getWidth() * 2);
+		}
+		assertEquals(getViolated(constraints, root), tracker.check());
+		assertTrue(tracker.getEvaluatedCount() < total);
+	}
+
+	/**
+	 * Evaluates all the constraints from scratch.
+	 */
+	protected static Set<LayoutConstraint> getViolated(Set<LayoutConstraint> constraints, Box root)
+	{
+		Set<LayoutConstraint> violated = new HashSet<LayoutConstraint>();
+		for (LayoutConstraint c : constraints)
+		{
+			c.invalidate();
+			if (!c.getVerdict())
+			{
+				violated.add(c);
+			}
+		}
+		for (LayoutConstraint c : Contained.getFamily(root))
+		{
+			if (!c.getVerdict())
+			{
+				violated.add(c);
+			}
+		}
+		for (LayoutConstraint c : Disjoint.getFamily(root))
+		{
+			if (!c.getVerdict())
+			{
+				violated.add(c);
+			}
+		}
+		return violated;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import static ca.uqac.lif.pagen.BoxProperty.Property.X;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ca.uqac.lif.pagen.BoxProperty.Property;
+
+public class PageContextTest
+{
+	@Test
+	public void testIds()
+	{
+		PageContext c1 = new PageContext();
+		PageContext c2 = new PageContext();
+		Box a = new Box(c1, 0, 0, 10, 10);
+		Box b = new Box(c1, 0, 0, 10, 10);
+		Box c = new Box(c2, 0, 0, 10, 10);
+		assertEquals(0, a.getId());
+		assertEquals(1, b.getId());
+		assertEquals(0, c.getId());
+		assertFalse(a.equals(c));
+	}
+	
+	@Test
+	public void testProperties()
+	{
+		PageContext c1 = new PageContext();
+		PageContext c2 = new PageContext();
+		Box a = new Box(c1, 0, 0, 10, 10);
+		Box c = new Box(c2, 0, 0, 10, 10);
+		assertSame(BoxProperty.get(a, X), BoxProperty.get(a, X));
+		assertFalse(BoxProperty.get(a, X).equals(BoxProperty.get(c, X)));
+	}
+	
+	@Test
+	public void testPropertySlots()
+	{
+		PageContext c = new PageContext();
+		Set<Integer> hashes = new HashSet<Integer>();
+		for (int i = 0; i < 100; i++)
+		{
+			Box b = new Box(c, 0, 0, 10, 10);
+			for (Property p : Property.values())
+			{
+				BoxProperty bp = BoxProperty.get(b, p);
+				assertSame(b, bp.getBox());
+				assertSame(p, bp.getProperty());
+				assertSame(bp, c.getProperty(b, p));
+				hashes.add(bp.hashCode());
+			}
+		}
+		assertEquals(800, hashes.size());
+	}
+	
+	@Test
+	public void testResetIds()
+	{
+		RandomBoxPicker rbp = RandomBoxPickerTest.getPicker(0);
+		Box b1 = rbp.pick();
+		assertSame(b1, BoxProperty.get(b1, X).getBox());
+		rbp.reset();
+		Box b2 = rbp.pick();
+		assertEquals(b1.getId(), b2.getId());
+		assertSame(b2, BoxProperty.get(b2, X).getBox());
+		BudgetedBoxPicker bbp = BudgetedBoxPickerTest.getPicker(50, 0);
+		Box b3 = bbp.pick();
+		assertSame(b3, BoxProperty.get(b3, X).getBox());
+		bbp.reset();
+		Box b4 = bbp.pick();
+		assertSame(b4, BoxProperty.get(b4, X).getBox());
+	}
+	
+	@Test
+	public void testPropertyViews()
+	{
+		ColumnarPage page = new ColumnarPage();
+		Box b = page.newBox(0, 0, 10, 10);
+		assertNotSame(b, page.getBox(b.getId()));
+		assertSame(BoxProperty.get(b, X), BoxProperty.get(page.getBox(b.getId()), X));
+	}
+}
@@ -0,0 +1,121 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ca.uqac.lif.synthia.random.PoissonInteger;
+import ca.uqac.lif.synthia.random.RandomBoolean;
+import ca.uqac.lif.synthia.random.RandomFloat;
+import ca.uqac.lif.synthia.random.RandomInteger;
+
+public class PageGeneratorTest
+{
+	@Test
+	public void testSameSeed()
+	{
+		PageGenerator gen = new PageGenerator();
+		Page p1 = gen.generate(PageGenerator.deriveSeed(42, 3));
+		Page p2 = gen.generate(PageGenerator.deriveSeed(42, 3));
+		assertEquals(render(p1.getRoot()), render(p2.getRoot()));
+	}
+	
+	@Test
+	public void testDuplicate()
+	{
+		RandomInteger depth = new RandomInteger(2, 4);
+		depth.setSeed(0);
+		PoissonInteger degree = new PoissonInteger(2.2f);
+		degree.setSeed(1);
+		RandomFloat size = new RandomFloat(5, 20);
+		size.setSeed(2);
+		RandomFloat float_source = new RandomFloat();
+		float_source.setSeed(3);
+		RandomBoolean misalignment = new RandomBoolean(0.5f);
+		misalignment.setSeed(4);
+		RandomInteger shift = new RandomInteger(2, 10);
+		shift.setSeed(5);
+		HorizontalFlowLayout hfl = new HorizontalFlowLayout();
+		hfl.setAlignmentFault(misalignment, shift);
+		VerticalFlowLayout vfl = new VerticalFlowLayout();
+		vfl.setAlignmentFault(misalignment, shift);
+		LayoutPicker layout = new LayoutPicker(float_source).addLayout(hfl, 0.5).addLayout(vfl, 0.5);
+		RandomBoxPicker rbp = new RandomBoxPicker(degree, depth, layout, size, size);
+		RandomBoxPicker copy = rbp.duplicate(true);
+		assertNotSame(rbp.getContext(), copy.getContext());
+		Box b1 = rbp.pick();
+		Box b2 = copy.pick();
+		assertEquals(render(b1), render(b2));
+		assertEquals(hfl.getMisalignmentCount() + vfl.getMisalignmentCount(), countMisalignments((LayoutPicker) copy.m_layout));
+	}
+	
+	protected static int countMisalignments(LayoutPicker lp)
+	{
+		int count = 0;
+		for (LayoutManager lm : lp.getLayouts())
+		{
+			count += ((FlowLayout) lm).getMisalignmentCount();
+		}
+		return count;
+	}
+	
+	@Test
+	public void testDeriveSeed()
+	{
+		assertTrue(PageGenerator.deriveSeed(0, 0) >= 0);
+		assertFalse(PageGenerator.deriveSeed(1, 0) == PageGenerator.deriveSeed(1, 1));
+		assertEquals(PageGenerator.deriveSeed(7, 5), PageGenerator.deriveSeed(7, 5));
+	}
+	
+	@Test
+	public void testStreamingDot()
+	{
+		PageGenerator gen = new PageGenerator();
+		String expected = render(gen.generate(11).getRoot());
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrintStream ps = new PrintStream(baos);
+		StreamingDotRenderer renderer = new StreamingDotRenderer(ps);
+		renderer.start();
+		Page p = gen.generate(11, renderer);
+		renderer.finish();
+		assertTrue(p.getRoot().getChildren().isEmpty());
+		assertEquals(sortLines(expected), sortLines(baos.toString()));
+	}
+	
+	protected static String sortLines(String s)
+	{
+		String[] lines = s.split("\n");
+		Arrays.sort(lines);
+		return Arrays.toString(lines);
+	}
+	
+	protected static String render(Box b)
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrintStream ps = new PrintStream(baos);
+		new DotRenderer().render(ps, b);
+		ps.flush();
+		return baos.toString();
+	}
+}
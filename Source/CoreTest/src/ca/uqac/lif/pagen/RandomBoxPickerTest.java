@@ -0,0 +1,171 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.synthia.Picker;
+import ca.uqac.lif.synthia.random.PoissonInteger;
+import ca.uqac.lif.synthia.random.RandomBoolean;
+import ca.uqac.lif.synthia.random.RandomFloat;
+import ca.uqac.lif.synthia.random.RandomInteger;
+import ca.uqac.lif.synthia.util.Constant;
+
+public class RandomBoxPickerTest
+{
+	@Test
+	public void testSameAsRecursive()
+	{
+		for (int seed = 0; seed < 10; seed++)
+		{
+			Box b1 = getPicker(seed).pick();
+			Box b2 = pickRecursive(getPicker(seed));
+			assertEquals(b2.toString(), b1.toString());
+		}
+	}
+	
+	@Test
+	public void testDeep()
+	{
+		RandomBoxPicker rbp = new RandomBoxPicker(new Constant<Integer>(1), new Constant<Integer>(10000), new Constant<LayoutManager>(new VerticalFlowLayout()), new Constant<Float>(5f), new Constant<Float>(5f));
+		Box b = rbp.pick();
+		assertEquals(10002, b.getDepth());
+		assertEquals(10002, b.getSize());
+	}
+	
+	@Test
+	public void testStreams()
+	{
+		for (int seed = 0; seed < 10; seed++)
+		{
+			Box root = getStreamPicker(seed).pick();
+			assertEquals(root.toString(), getStreamPicker(seed).pick().toString());
+			List<Box> children = root.getChildren();
+			for (int i = 0; i < children.size(); i++)
+			{
+				Box b = getStreamPicker(seed).pickSubtree(RandomStreams.getSeed(seed, i), -1);
+				assertEquals(getShape(children.get(i)), getShape(b));
+			}
+		}
+	}
+	
+	@Test
+	public void testStreamsDeep()
+	{
+		Box root = getStreamPicker(3).pick();
+		Box b = root;
+		int[] path = new int[2];
+		for (int i = 0; i < path.length; i++)
+		{
+			path[i] = b.getChildren().size() - 1;
+			b = b.getChildren().get(path[i]);
+		}
+		// The depth of the subtree below a box is fixed by the depth picked for its ancestor
+		Box copy = getStreamPicker(3).pickSubtree(RandomStreams.getSeed(3, path), b.getDepth() - 1);
+		assertEquals(getShape(b), getShape(copy));
+	}
+	
+	protected static RandomBoxPicker getStreamPicker(int seed)
+	{
+		RandomInteger depth = new RandomInteger(2, 4);
+		PoissonInteger degree = new PoissonInteger(2.2f);
+		RandomFloat width = new RandomFloat(5, 20);
+		RandomFloat height = new RandomFloat(5, 10);
+		RandomFloat float_source = new RandomFloat();
+		RandomBoolean misalignment = new RandomBoolean(0.3f);
+		RandomInteger shift = new RandomInteger(2, 10);
+		HorizontalFlowLayout hfl = new HorizontalFlowLayout();
+		hfl.setAlignmentFault(misalignment, shift);
+		VerticalFlowLayout vfl = new VerticalFlowLayout();
+		vfl.setOverflowFault(misalignment, shift);
+		LayoutPicker layout = new LayoutPicker(float_source).addLayout(hfl, 0.5).addLayout(vfl, 0.5);
+		RandomStreams streams = new RandomStreams().add(depth, degree, width, height, float_source, misalignment, shift);
+		return new RandomBoxPicker(degree, depth, layout, width, height).setStreams(streams, seed);
+	}
+	
+	/**
+	 * Prints the dimensions of a box and its descendants, and the position of
+	 * the descendants relative to their parent.
+	 */
+	protected static String getShape(Box b)
+	{
+		StringBuilder out = new StringBuilder();
+		out.append(b.getWidth()).append("x").append(b.getHeight()).append("[");
+		for (Box c : b.getChildren())
+		{
+			out.append(c.getRelativeX()).append(",").append(c.getRelativeY()).append(":").append(getShape(c));
+		}
+		out.append("]");
+		return out.toString();
+	}
+	
+	protected static RandomBoxPicker getPicker(int seed)
+	{
+		RandomInteger depth = new RandomInteger(2, 4);
+		depth.setSeed(seed);
+		PoissonInteger degree = new PoissonInteger(2.2f);
+		degree.setSeed(seed + 1);
+		RandomFloat width = new RandomFloat(5, 20);
+		width.setSeed(seed + 2);
+		RandomFloat height = new RandomFloat(5, 10);
+		height.setSeed(seed + 3);
+		RandomFloat float_source = new RandomFloat();
+		float_source.setSeed(seed + 4);
+		LayoutPicker layout = new LayoutPicker(float_source).addLayout(new HorizontalFlowLayout(), 0.5).addLayout(new VerticalFlowLayout(), 0.5);
+		return new RandomBoxPicker(degree, depth, layout, width, height);
+	}
+	
+	/**
+	 * Picks a tree the way the original recursive implementation of
+	 * {@link RandomBoxPicker#pick()} did.
+	 */
+	protected static Box pickRecursive(RandomBoxPicker rbp)
+	{
+		return pickRecursive(rbp, rbp.m_depth);
+	}
+	
+	protected static Box pickRecursive(RandomBoxPicker rbp, Picker<Integer> depth_picker)
+	{
+		int num_children = rbp.m_numChildren.pick();
+		List<Box> children = new ArrayList<Box>(num_children);
+		for (int i = 0; i < num_children; i++)
+		{
+			Box b = null;
+			int depth = depth_picker.pick();
+			if (depth == 0)
+			{
+				b = new Box(rbp.getContext(), 0f, 0f, rbp.m_width.pick(), rbp.m_height.pick());
+				b.setPadding(2);
+			}
+			else
+			{
+				b = pickRecursive(rbp, new Constant<Integer>(depth - 1));
+			}
+			children.add(b);
+		}
+		Box parent = new Box(rbp.getContext(), 0, 0, 0, 0);
+		parent.setPadding(2);
+		rbp.m_layout.pick().arrange(parent, children);
+		return parent;
+	}
+}
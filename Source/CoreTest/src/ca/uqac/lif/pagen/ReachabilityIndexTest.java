@@ -0,0 +1,113 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import org.junit.Test;
+
+import static ca.uqac.lif.pagen.BoxProperty.Property.W;
+import static ca.uqac.lif.pagen.BoxProperty.Property.X;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ReachabilityIndexTest
+{
+	@Test
+	public void testSameAsClosure()
+	{
+		for (int seed = 0; seed < 5; seed++)
+		{
+			Page page = new PageGenerator().setSize(200).generate(seed);
+			CompactDependencyGraph cg = CompactDependencyGraph.of(page.getLayouts());
+			ReachabilityIndex index = cg.getReachabilityIndex();
+			TransitiveClosure tc = index.getClosure();
+			for (int from = 0; from < cg.getNodeCount(); from++)
+			{
+				int[] reach = tc.getReach(from);
+				for (int to = 0; to < cg.getNodeCount(); to++)
+				{
+					assertEquals(Arrays.binarySearch(reach, to) >= 0, index.reaches(from, to));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCycle()
+	{
+		PageContext context = new PageContext();
+		Box a = new Box(context, 0, 0, 0, 0);
+		Box b = new Box(context, 0, 0, 0, 0);
+		Box c = new Box(context, 0, 0, 0, 0);
+		BoxDependencyGraph g = new BoxDependencyGraph();
+		g.add(a, X, b, X);
+		g.add(b, X, a, X);
+		g.add(c, X, b, X);
+		CompactDependencyGraph cg = CompactDependencyGraph.of(g);
+		ReachabilityIndex index = cg.getReachabilityIndex();
+		int n_a = cg.getNodeId(BoxProperty.get(a, X));
+		int n_b = cg.getNodeId(BoxProperty.get(b, X));
+		int n_c = cg.getNodeId(BoxProperty.get(c, X));
+		assertTrue(index.reaches(n_a, n_b));
+		assertTrue(index.reaches(n_b, n_a));
+		assertTrue(index.reaches(n_c, n_a));
+		assertFalse(index.reaches(n_a, n_c));
+		assertTrue(cg.influences(a, c));
+		assertFalse(cg.influences(c, a));
+	}
+
+	@Test
+	public void testInfluences()
+	{
+		Page page = new PageGenerator().setSize(120).generate(3);
+		BoxDependencyGraph g = new BoxDependencyGraph();
+		for (FlowLayout fl : page.getLayouts())
+		{
+			g.add(fl.getDependencies());
+		}
+		CompactDependencyGraph cg = CompactDependencyGraph.of(page.getLayouts());
+		List<Box> boxes = new ArrayList<Box>(page.getRoot().flatten().values());
+		for (Box b1 : boxes)
+		{
+			for (Box b2 : boxes)
+			{
+				assertEquals(g.influences(b1, b2), cg.influences(b1, b2));
+			}
+		}
+	}
+
+	@Test
+	public void testOwnBox()
+	{
+		// a influences c only through a.W, which the scan does not go through
+		PageContext context = new PageContext();
+		Box a = new Box(context, 0, 0, 0, 0);
+		Box b = new Box(context, 0, 0, 0, 0);
+		Box c = new Box(context, 0, 0, 0, 0);
+		BoxDependencyGraph g = new BoxDependencyGraph();
+		g.add(b, X, a, X);
+		g.add(a, W, b, X);
+		g.add(c, X, a, W);
+		CompactDependencyGraph cg = CompactDependencyGraph.of(g);
+		assertEquals(g.influences(a, c), cg.influences(a, c));
+		assertFalse(cg.influences(a, c));
+		assertTrue(cg.influences(a, b));
+	}
+}
@@ -0,0 +1,85 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ca.uqac.lif.pagen.LayoutConstraint.Disjoint;
+
+public class SpatialIndexTest
+{
+	@Test
+	public void testQuery()
+	{
+		Page page = new PageGenerator().setSize(1000).setOverlap(0.02f).setOverflow(0.02f).generate(6);
+		List<Box> boxes = new ArrayList<Box>(page.getRoot().flatten().values());
+		SpatialIndex index = SpatialIndex.of(page.getRoot());
+		assertEquals(boxes.size(), index.size());
+		Set<Box> expected = new HashSet<Box>();
+		for (Box b : boxes)
+		{
+			if (b.getX() < 250 && 100 < b.getX() + b.getWidth() && b.getY() < 120 && 20 < b.getY() + b.getHeight())
+			{
+				expected.add(b);
+			}
+		}
+		assertEquals(expected, new HashSet<Box>(index.query(100, 20, 150, 100)));
+		Box b = boxes.get(boxes.size() / 2);
+		assertFalse(index.query(b).contains(b));
+		assertTrue(index.query(b).contains(b.getParent()));
+	}
+
+	@Test
+	public void testOverlaps()
+	{
+		Page page = new PageGenerator().setSize(1000).setOverlap(0.02f).setOverflow(0.02f).generate(6);
+		List<Box> boxes = new ArrayList<Box>(page.getRoot().flatten().values());
+		Set<LayoutConstraint> expected = new HashSet<LayoutConstraint>();
+		for (int i = 0; i < boxes.size(); i++)
+		{
+			for (int j = i + 1; j < boxes.size(); j++)
+			{
+				Box b1 = boxes.get(i), b2 = boxes.get(j);
+				if (!SpatialIndex.isAncestor(b1, b2) && !SpatialIndex.isAncestor(b2, b1) && !new Disjoint(b1, b2).getVerdict())
+				{
+					expected.add(SpatialIndex.isBefore(b1, b2) ? new Disjoint(b1, b2) : new Disjoint(b2, b1));
+				}
+			}
+		}
+		List<LayoutConstraint> overlaps = SpatialIndex.of(page.getRoot()).getOverlaps();
+		assertFalse(expected.isEmpty());
+		assertEquals(expected.size(), overlaps.size());
+		assertEquals(expected, new HashSet<LayoutConstraint>(overlaps));
+		// Overlapping siblings are those of the family
+		ConstraintFamily family = Disjoint.getFamily(page.getRoot());
+		for (LayoutConstraint c : family)
+		{
+			if (!c.getVerdict())
+			{
+				assertTrue(overlaps.contains(c));
+			}
+		}
+	}
+}
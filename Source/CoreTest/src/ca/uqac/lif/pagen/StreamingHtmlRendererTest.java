@@ -0,0 +1,145 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import ca.uqac.lif.pagen.StreamingHtmlRenderer.PatchableOutputStream;
+import ca.uqac.lif.synthia.util.Constant;
+
+public class StreamingHtmlRendererTest
+{
+	/**
+	 * The pattern of an opening tag
+	 */
+	protected static final Pattern s_tag = Pattern.compile("<div class=\"box( altered)?\" title=\"([^\"]*)\" style=\"left:([^p]*)px;top:([^p]*)px;width:([^p]*)px;height:([^p]*)px;background-color:([^\"]*)\" *>");
+	
+	@Test
+	public void testStream() throws IOException
+	{
+		PageGenerator gen = new PageGenerator().setSize(2000);
+		File f = File.createTempFile("pagen", ".html");
+		f.deleteOnExit();
+		StreamingHtmlRenderer renderer = new StreamingHtmlRenderer(gen.getColorPicker(7), f);
+		renderer.start();
+		gen.generate(7, renderer);
+		renderer.finish();
+		// The tag of the root is patched once it is no longer in the buffer
+		assertTrue(f.length() > 1 << 16);
+		String streamed = new String(Files.readAllBytes(f.toPath()), Charset.defaultCharset());
+		Page page = gen.generate(7);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrintStream ps = new PrintStream(baos);
+		new HtmlNestedRenderer(gen.getColorPicker(7)).render(ps, page.getRoot());
+		ps.flush();
+		List<String[]> expected = parse(baos.toString());
+		List<String[]> actual = parse(streamed);
+		assertEquals(page.getRoot().getSize(), expected.size());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			String[] e = expected.get(i), a = actual.get(i);
+			assertEquals(e[0], a[0]);
+			assertEquals(e[1], a[1]);
+			for (int j = 2; j < 6; j++)
+			{
+				assertEquals(Float.parseFloat(e[j]), Float.parseFloat(a[j]), 0.001);
+			}
+			assertEquals(e[6], a[6]);
+		}
+	}
+	
+	@Test
+	public void testPatch() throws IOException
+	{
+		File f = File.createTempFile("pagen", ".txt");
+		f.deleteOnExit();
+		PatchableOutputStream out = new PatchableOutputStream(f);
+		out.writeSpaces(4);
+		long first = out.position();
+		out.writeSpaces(3);
+		// The second placeholder ends the buffer, the third starts the next one
+		out.writeSpaces((1 << 16) - 10);
+		long second = out.position();
+		out.writeSpaces(3);
+		long third = out.position();
+		out.writeSpaces(3);
+		out.patch(first, "abc".getBytes(Charset.defaultCharset()));
+		out.patch(second, "def".getBytes(Charset.defaultCharset()));
+		out.patch(third, "ghi".getBytes(Charset.defaultCharset()));
+		out.close();
+		byte[] bytes = Files.readAllBytes(f.toPath());
+		assertEquals(third + 3, bytes.length);
+		assertEquals("abc", new String(bytes, (int) first, 3, Charset.defaultCharset()));
+		assertEquals("def", new String(bytes, (int) second, 3, Charset.defaultCharset()));
+		assertEquals("ghi", new String(bytes, (int) third, 3, Charset.defaultCharset()));
+	}
+	
+	@Test
+	public void testLongestFloats() throws IOException
+	{
+		float[] values = {-1.17549435E-38f, -Float.MAX_VALUE, -Float.MIN_VALUE, Float.NEGATIVE_INFINITY, -0.0012345678f};
+		for (float v : values)
+		{
+			assertTrue(Float.toString(v).length() <= StreamingHtmlRenderer.s_maxFloatLength);
+		}
+		File f = File.createTempFile("pagen", ".html");
+		f.deleteOnExit();
+		StreamingHtmlRenderer renderer = new StreamingHtmlRenderer(new Constant<String>("#fff"), f);
+		renderer.beginBox(0);
+		Box b = new Box(new PageContext(), -1.17549435E-38f, -1.17549435E-38f, -1.17549435E-38f, -1.17549435E-38f);
+		b.alter();
+		renderer.endBox(b, 0);
+		renderer.finish();
+		String html = new String(Files.readAllBytes(f.toPath()), Charset.defaultCharset());
+		assertTrue(html.contains("left:-1.17549435E-38px"));
+	}
+	
+	/**
+	 * Reads the opening tags of an HTML file.
+	 * @param html The contents of the file
+	 * @return For each tag, the indentation and the title of the box,
+	 * followed by its position, its size and its color
+	 */
+	protected static List<String[]> parse(String html)
+	{
+		List<String[]> tags = new ArrayList<String[]>();
+		for (String line : html.split("\n"))
+		{
+			Matcher m = s_tag.matcher(line);
+			if (m.find())
+			{
+				tags.add(new String[] {line.substring(0, m.start()), m.group(2), m.group(3), m.group(4), m.group(5), m.group(6), m.group(7)});
+			}
+		}
+		return tags;
+	}
+}
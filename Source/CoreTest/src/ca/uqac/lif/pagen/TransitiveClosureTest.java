@@ -0,0 +1,127 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import org.junit.Test;
+
+import static ca.uqac.lif.pagen.BoxProperty.Property.W;
+import static ca.uqac.lif.pagen.BoxProperty.Property.X;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class TransitiveClosureTest
+{
+	@Test
+	public void testCycle()
+	{
+		PageContext context = new PageContext();
+		Box a = new Box(context, 0, 0, 0, 0);
+		Box b = new Box(context, 0, 0, 0, 0);
+		Box c = new Box(context, 0, 0, 0, 0);
+		Box d = new Box(context, 0, 0, 0, 0);
+		BoxDependencyGraph g = new BoxDependencyGraph();
+		g.add(a, X, b, X);
+		g.add(b, X, c, X);
+		g.add(c, X, a, X);
+		g.add(c, X, d, X);
+		TransitiveClosure tc = CompactDependencyGraph.of(g).getClosure();
+		assertEquals(2, tc.getComponentCount());
+		CompactDependencyGraph cg = tc.getGraph();
+		int n_a = cg.getNodeId(BoxProperty.get(a, X));
+		int n_b = cg.getNodeId(BoxProperty.get(b, X));
+		assertEquals(tc.getComponent(n_a), tc.getComponent(n_b));
+		assertSame(tc.getReach(n_a), tc.getReach(n_b));
+		assertEquals(4, tc.getReach(n_a).length);
+		assertEquals(g.scanTransitiveClosure(g.getNodes()), tc.getTransitiveClosure(g.getNodes()));
+	}
+
+	@Test
+	public void testOwnBox()
+	{
+		// The closure of a.X must not go through a.W
+		PageContext context = new PageContext();
+		Box a = new Box(context, 0, 0, 0, 0);
+		Box b = new Box(context, 0, 0, 0, 0);
+		Box c = new Box(context, 0, 0, 0, 0);
+		BoxDependencyGraph g = new BoxDependencyGraph();
+		g.add(a, X, b, X);
+		g.add(b, X, a, W);
+		g.add(a, W, c, X);
+		TransitiveClosure tc = CompactDependencyGraph.of(g).getClosure();
+		BoxProperty a_x = BoxProperty.get(a, X);
+		int n_a = tc.getGraph().getNodeId(a_x);
+		assertEquals(4, tc.getReach(n_a).length);
+		assertEquals(2, tc.getClosure(n_a).length);
+		Set<BoxProperty> deltas = tc.getDeltas(a_x);
+		assertEquals(2, deltas.size());
+		assertTrue(deltas.contains(BoxProperty.get(b, X).getDelta()));
+		assertEquals(g.scanTransitiveClosure(g.getNodes()), tc.getTransitiveClosure(g.getNodes()));
+	}
+
+	@Test
+	public void testPages()
+	{
+		for (int seed = 0; seed < 10; seed++)
+		{
+			Page page = new PageGenerator().setSize(300).generate(seed);
+			BoxDependencyGraph g = new BoxDependencyGraph();
+			for (FlowLayout fl : page.getLayouts())
+			{
+				g.add(fl.getDependencies());
+			}
+			TransitiveClosure tc = CompactDependencyGraph.of(page.getLayouts()).getClosure();
+			assertEquals(g.scanTransitiveClosure(g.getNodes()), tc.getTransitiveClosure(g.getNodes()));
+		}
+	}
+
+	@Test
+	public void testShared()
+	{
+		Page page = new PageGenerator().setSize(500).generate(3);
+		CompactDependencyGraph cg = CompactDependencyGraph.of(page.getLayouts());
+		TransitiveClosure tc = cg.getClosure();
+		for (int n = 0; n < cg.getNodeCount(); n++)
+		{
+			// No layout makes a property depend on another property of its box
+			assertSame(tc.getReach(n), tc.getClosure(n));
+			Set<BoxProperty> deltas = tc.getDeltas(cg.getNode(n));
+			Set<BoxProperty> copy = new HashSet<BoxProperty>(deltas);
+			assertEquals(copy.size(), deltas.size());
+			assertEquals(copy, deltas);
+			assertTrue(deltas.contains(cg.getNode(n).getDelta()));
+			assertFalse(deltas.contains(cg.getNode(n)));
+		}
+	}
+
+	@Test
+	public void testParallel()
+	{
+		Page page = new PageGenerator().setSize(2000).generate(4);
+		CompactDependencyGraph cg = CompactDependencyGraph.of(page.getLayouts());
+		Set<BoxProperty> nodes = cg.getNodes();
+		Map<BoxProperty,Set<BoxProperty>> expected = cg.getTransitiveClosure(nodes);
+		Map<BoxProperty,Set<BoxProperty>> actual = cg.getTransitiveClosure(nodes, 4);
+		assertEquals(expected, actual);
+		// Same iteration order as the sequential closure
+		assertEquals(new ArrayList<BoxProperty>(expected.keySet()), new ArrayList<BoxProperty>(actual.keySet()));
+	}
+}
@@ -0,0 +1,99 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import org.junit.Test;
+
+import static ca.uqac.lif.pagen.BoxProperty.Property.X;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class TreeInfluenceOracleTest
+{
+	@Test
+	public void testPages()
+	{
+		for (int seed = 0; seed < 4; seed++)
+		{
+			Page page = new PageGenerator().setSize(150).generate(seed);
+			BoxDependencyGraph g = new BoxDependencyGraph();
+			for (FlowLayout fl : page.getLayouts())
+			{
+				g.add(fl.getDependencies());
+			}
+			CompactDependencyGraph cg = CompactDependencyGraph.of(page.getLayouts());
+			TreeInfluenceOracle oracle = cg.getTreeOracle();
+			assertTrue(oracle.isExact());
+			List<Box> boxes = new ArrayList<Box>(page.getRoot().flatten().values());
+			for (Box b1 : boxes)
+			{
+				for (Box b2 : boxes)
+				{
+					assertEquals(g.influences(b1, b2), oracle.influences(b1, b2));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testExtraEdge()
+	{
+		Page page = new PageGenerator().setSize(80).generate(5);
+		List<Box> boxes = new ArrayList<Box>(page.getRoot().flatten().values());
+		Set<BoxDependency> deps = new HashSet<BoxDependency>();
+		for (FlowLayout fl : page.getLayouts())
+		{
+			deps.addAll(fl.getDependencies());
+		}
+		// An edge that does not come from a layout
+		Box last = boxes.get(boxes.size() - 1);
+		deps.add(new BoxDependency(BoxProperty.get(last, X), BoxProperty.get(boxes.get(1), X)));
+		BoxDependencyGraph g = new BoxDependencyGraph().add(deps);
+		CompactDependencyGraph cg = new CompactDependencyGraph(deps);
+		assertFalse(cg.getTreeOracle().isExact());
+		for (Box b1 : boxes)
+		{
+			for (Box b2 : boxes)
+			{
+				assertEquals(g.influences(b1, b2), cg.influences(b1, b2));
+			}
+		}
+	}
+
+	@Test
+	public void testMissingEdges()
+	{
+		Page page = new PageGenerator().setSize(80).generate(6);
+		List<Box> boxes = new ArrayList<Box>(page.getRoot().flatten().values());
+		// Only the dependencies of the first layout
+		Set<BoxDependency> deps = page.getLayouts().iterator().next().getDependencies();
+		BoxDependencyGraph g = new BoxDependencyGraph().add(deps);
+		CompactDependencyGraph cg = new CompactDependencyGraph(deps);
+		for (Box b1 : boxes)
+		{
+			for (Box b2 : boxes)
+			{
+				assertEquals(g.influences(b1, b2), cg.influences(b1, b2));
+			}
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/*
+    A random DOM tree generator
+    Copyright (C) 2020-2023 Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published
+    by the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.pagen;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class UnionFindTest
+{
+	@Test
+	public void testUnion()
+	{
+		UnionFind uf = new UnionFind(6);
+		assertEquals(6, uf.getSetCount());
+		assertTrue(uf.union(0, 1));
+		assertTrue(uf.union(2, 3));
+		assertTrue(uf.union(1, 3));
+		assertFalse(uf.union(0, 2));
+		assertEquals(3, uf.getSetCount());
+		assertEquals(uf.find(0), uf.find(3));
+		assertFalse(uf.find(0) == uf.find(4));
+		assertFalse(uf.find(4) == uf.find(5));
+		assertEquals(6, uf.size());
+	}
+}
@@ -18,17 +18,26 @@
 package ca.uqac.lif.pagen.opl;
 
 import static ca.uqac.lif.pagen.BoxProperty.Property.X;
+import static org.junit.Assert.*;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.junit.Test;
 
 import ca.uqac.lif.pagen.Box;
 import ca.uqac.lif.pagen.BoxDependencyGraph;
+import ca.uqac.lif.pagen.BoxProperty;
+import ca.uqac.lif.pagen.CompactDependencyGraph;
+import ca.uqac.lif.pagen.FlowLayout;
 import ca.uqac.lif.pagen.LayoutConstraint;
+import ca.uqac.lif.pagen.LayoutConstraint.Contained;
+import ca.uqac.lif.pagen.Page;
+import ca.uqac.lif.pagen.PageGenerator;
+import ca.uqac.lif.pagen.opl.OplRelativeRenderer.Component;
 
 import static ca.uqac.lif.pagen.LayoutConstraint.Disjoint;
 import static ca.uqac.lif.pagen.LayoutConstraint.SameX;
@@ -62,4 +71,40 @@ public class OplRelativeRendererTest
 		renderer.render(ps, A);
 		System.out.println(baos.toString());
 	}
+
+	@Test
+	public void testComponents()
+	{
+		Page page = new PageGenerator().setSize(2000).setMisalignment(0.005f).setOverlap(0.005f).setOverflow(0.005f).generate(3);
+		Set<LayoutConstraint> constraints = new HashSet<LayoutConstraint>();
+		for (FlowLayout fl : page.getLayouts())
+		{
+			constraints.addAll(fl.getConstraints());
+		}
+		constraints.addAll(Contained.addContainmentConstraints(page.getRoot()));
+		constraints.addAll(Disjoint.addContainmentConstraints(page.getRoot()));
+		OplRelativeRenderer whole = new OplRelativeRenderer(constraints);
+		whole.setDependencyGraph(CompactDependencyGraph.of(page.getLayouts()));
+		Set<LayoutConstraint> modeled = whole.fillFaultyBoxes();
+		OplRelativeRenderer renderer = new OplRelativeRenderer(constraints);
+		renderer.setDependencyGraph(CompactDependencyGraph.of(page.getLayouts()));
+		List<Component> components = renderer.getComponents();
+		assertTrue(components.size() > 1);
+		Set<LayoutConstraint> seen = new HashSet<LayoutConstraint>();
+		Set<BoxProperty> variables = new HashSet<BoxProperty>();
+		for (Component c : components)
+		{
+			for (BoxProperty v : c.getVariables())
+			{
+				// No variable is shared by two components
+				assertTrue(variables.add(v));
+			}
+			for (LayoutConstraint lc : c.getConstraints())
+			{
+				assertTrue(seen.add(lc));
+				assertTrue(c.getVariables().containsAll(renderer.getVariables(lc)));
+			}
+		}
+		assertEquals(modeled, seen);
+	}
 }